@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares lists of cons pairs with compact lists (see {@link CompactList}):
+ * the memory taken by a list of numbers before and after walking it, the time
+ * of walking it with car and cdr and the time of computing its length.
+ *
+ * Run with: ant bench
+ */
+public class CompactListBenchmark {
+
+    private static final int[] SIZES = { 1000000, 2000000, 4000000 };
+    private static final int RUNS = 5;
+
+    /**
+     * Keeps the elements reachable while the memory of a list is measured.
+     */
+    private static SExpr[] elements;
+
+    public static void main(String[] args) {
+        // warm-up
+        for (int i = 0; i < 3; ++i) {
+            measure(false, 100000);
+            measure(true, 100000);
+        }
+
+        System.out.println(String.format("%8s %7s %12s %12s %10s %12s", "size", "kind", "memory [MB]", "walked [MB]",
+                "walk [ms]", "length [ms]"));
+        for (int size : SIZES) {
+            for (boolean compact : new boolean[] { false, true }) {
+                double[] result = measure(compact, size);
+                System.out.println(String.format("%8d %7s %12.1f %12.1f %10.2f %12.3f", size,
+                        compact ? "compact" : "cons", result[0], result[1], result[2], result[3]));
+            }
+        }
+    }
+
+    /**
+     * @return The memory taken by a list of _size_ elements (not counting
+     *         the elements) in MB before and after walking it and the best
+     *         times of walking it and computing its length in milliseconds.
+     */
+    private static double[] measure(boolean compact, int size) {
+        usedMemory();
+        elements = new SExpr[size];
+        for (int i = 0; i < size; ++i) {
+            elements[i] = Number.valueOf(i);
+        }
+        long before = usedMemory();
+        SExpr list;
+        if (compact) {
+            list = CompactList.of(elements.clone());
+        } else {
+            list = Symbol.NIL;
+            for (int i = size - 1; i >= 0; --i) {
+                list = new Cons(elements[i], list);
+            }
+        }
+        long memory = usedMemory() - before;
+
+        long walk = Long.MAX_VALUE;
+        long length = Long.MAX_VALUE;
+        long sum = 0;
+        for (int run = 0; run < RUNS; ++run) {
+            long start = System.nanoTime();
+            for (SExpr curr = list; curr != Symbol.NIL; curr = curr.cdr()) {
+                sum += ((Number) curr.car()).getFixnum();
+            }
+            walk = Math.min(walk, System.nanoTime() - start);
+            start = System.nanoTime();
+            sum += CompactList.length(list);
+            length = Math.min(length, System.nanoTime() - start);
+        }
+        long walked = usedMemory() - before;
+        elements = null;
+        if (sum == 42) {
+            System.out.println(list);
+        }
+        return new double[] { memory / 1e6, walked / 1e6, walk / 1e6, length / 1e6 };
+    }
+
+    /**
+     * @return The used heap after collecting garbage until it does not
+     *         shrink any more.
+     */
+    private static long usedMemory() {
+        long used = Long.MAX_VALUE;
+        while (true) {
+            System.gc();
+            long curr = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            if (curr >= used) {
+                return curr;
+            }
+            used = curr;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures insertions, lookups and removals of integer keys in hash tables
+ * with millions of entries. java.util.HashMap with the same keys (which is
+ * possible now that numbers hash consistently with equals) serves as a
+ * baseline.
+ *
+ * Run with: ant bench
+ */
+public class HashTableBenchmark {
+
+    private static final int[] SIZES = { 100000, 1000000, 4000000 };
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) {
+        // warm-up
+        for (int i = 0; i < 3; ++i) {
+            measureTable(keys(100000));
+            measureMap(keys(100000));
+        }
+
+        System.out.println(String.format("%8s %10s %10s %10s %10s %10s %10s", "size", "put [ns]", "get [ns]",
+                "remove [ns]", "map put", "map get", "map remove"));
+        for (int size : SIZES) {
+            Number[] keys = keys(size);
+            double[] table = measureTable(keys);
+            double[] map = measureMap(keys);
+            System.out.println(String.format("%8d %10.1f %10.1f %11.1f %10.1f %10.1f %10.1f", size, table[0],
+                    table[1], table[2], map[0], map[1], map[2]));
+        }
+    }
+
+    /**
+     * @return _size_ distinct numbers, scattered like real-world keys.
+     */
+    private static Number[] keys(int size) {
+        Number[] keys = new Number[size];
+        for (int i = 0; i < size; ++i) {
+            keys[i] = Number.valueOf(i * 7919L);
+        }
+        return keys;
+    }
+
+    /**
+     * @return The best times per put, get and remove in nanoseconds.
+     */
+    private static double[] measureTable(Number[] keys) {
+        double[] best = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+        for (int run = 0; run < RUNS; ++run) {
+            HashTable table = new HashTable();
+            long start = System.nanoTime();
+            for (Number key : keys) {
+                table.put(key, key);
+            }
+            long put = System.nanoTime();
+            for (Number key : keys) {
+                if (table.get(key) != key) {
+                    throw new AssertionError();
+                }
+            }
+            long get = System.nanoTime();
+            for (Number key : keys) {
+                table.remove(key);
+            }
+            long remove = System.nanoTime();
+            best[0] = Math.min(best[0], (put - start) / (double) keys.length);
+            best[1] = Math.min(best[1], (get - put) / (double) keys.length);
+            best[2] = Math.min(best[2], (remove - get) / (double) keys.length);
+        }
+        return best;
+    }
+
+    private static double[] measureMap(Number[] keys) {
+        double[] best = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+        for (int run = 0; run < RUNS; ++run) {
+            Map<SExpr, SExpr> map = new HashMap<SExpr, SExpr>();
+            long start = System.nanoTime();
+            for (Number key : keys) {
+                map.put(key, key);
+            }
+            long put = System.nanoTime();
+            for (Number key : keys) {
+                if (map.get(key) != key) {
+                    throw new AssertionError();
+                }
+            }
+            long get = System.nanoTime();
+            for (Number key : keys) {
+                map.remove(key);
+            }
+            long remove = System.nanoTime();
+            best[0] = Math.min(best[0], (put - start) / (double) keys.length);
+            best[1] = Math.min(best[1], (get - put) / (double) keys.length);
+            best[2] = Math.min(best[2], (remove - get) / (double) keys.length);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.main;
+
+/**
+ * Compares the native list functions of the kernel with their former
+ * definitions in yale (see {@link #YALE_DEFINITIONS}), which are defined
+ * under the prefix "yale-".
+ *
+ * Run with: ant bench
+ */
+public class ListFunctionsBenchmark {
+
+    private static final int[] SIZES = { 1000, 10000, 50000 };
+    private static final int RUNS = 5;
+
+    private static final String[] CALLS = { "(length xs)", "(append xs xs)", "(reverse xs)",
+            "(map (lambda (x) (+ x 1)) xs)", "(reduce + 0 xs)", "(range 1 n)", "(tree-equal xs ys)" };
+
+    private static final String YALE_DEFINITIONS = "(define yale-length (lambda (list) (if (nullp list) 0 (+ 1 (yale-length (cdr list))))))"
+            + "(define yale-append (lambda (list1 list2) (if (nullp list1) list2 (cons (car list1) (yale-append (cdr list1) list2)))))"
+            + "(define yale-reverse (lambda (list) (letrec ((reverse-aux (lambda (list acc) (if (nullp list) acc (reverse-aux (cdr list) (cons (car list) acc)))))) (reverse-aux list nil))))"
+            + "(define yale-map (lambda (fun list) (if (nullp list) nil (cons (fun (car list)) (yale-map fun (cdr list))))))"
+            + "(define yale-reduce (lambda (fun acc list) (if (nullp list) acc (yale-reduce fun (fun acc (car list)) (cdr list)))))"
+            + "(define yale-range (lambda (l r) (if (eql l r) (cons r nil) (cons l (yale-range (+ l 1) r)))))"
+            + "(define yale-tree-equal (lambda (list1 list2) (if (and (atomp list1) (atomp list2)) (eql list1 list2)"
+            + " (if (or (and (atomp list1) (consp list2)) (and (consp list1) (atomp list2))) nil"
+            + " (if (and (nullp list1) (not (nullp list2))) nil (if (and (nullp list1) (nullp list2)) t"
+            + " (if (and (not (nullp list1)) (not (nullp list2))) (and (yale-tree-equal (car list1) (car list2))"
+            + " (yale-tree-equal (cdr list1) (cdr list2))) nil)))))))"
+            + "(define n 0) (define xs nil) (define ys nil)";
+
+    public static void main(String[] args) throws Exception {
+        Yale yale = new Yale(EvalMode.ANALYZE);
+        yale.feed(YALE_DEFINITIONS);
+        // warm-up
+        for (int i = 0; i < 3; ++i) {
+            for (String call : CALLS) {
+                measure(yale, call, 1000);
+                measure(yale, "(yale-" + call.substring(1), 1000);
+            }
+        }
+
+        System.out.println(String.format("%-32s %8s %12s %12s", "call", "size", "yale [ms]", "native [ms]"));
+        for (String call : CALLS) {
+            for (int size : SIZES) {
+                double interpreted = measure(yale, "(yale-" + call.substring(1), size);
+                System.out.println(String.format("%-32s %8d %12.2f %12.2f", call, size, interpreted,
+                        measure(yale, call, size)));
+            }
+        }
+    }
+
+    /**
+     * @return The best time of evaluating _call_ with lists of _size_
+     *         elements in milliseconds.
+     */
+    private static double measure(Yale yale, String call, int size) throws Exception {
+        yale.feed("(assign n " + size + ") (assign xs (range 1 n)) (assign ys (range 1 n))");
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; ++i) {
+            long start = System.nanoTime();
+            yale.feed(call);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+}
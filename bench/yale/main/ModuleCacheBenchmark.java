@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.main;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import yale.image.ModuleCache;
+
+/**
+ * Compares loading a file of function definitions from source with loading it
+ * from the module cache (see {@link yale.image.ModuleCache}).
+ *
+ * Run with: ant bench
+ */
+public class ModuleCacheBenchmark {
+
+    private static final int[] DEFINITIONS = { 500, 2000, 8000 };
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("yale-cache");
+        Path file = Files.createTempFile("yale", ".yl");
+        ModuleCache cache = new ModuleCache(dir);
+        try {
+            // warm-up
+            Files.write(file, generate(2000).getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < 3; ++i) {
+                measure(file, null);
+                measure(file, cache);
+            }
+
+            System.out.println(String.format("%11s %12s %12s", "definitions", "source [ms]", "cached [ms]"));
+            for (int definitions : DEFINITIONS) {
+                Files.write(file, generate(definitions).getBytes(StandardCharsets.UTF_8));
+                System.out.println(String.format("%11d %12.2f %12.2f", definitions, measure(file, null),
+                        measure(file, cache)));
+            }
+        } finally {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    Files.delete(entry);
+                }
+            }
+            Files.delete(dir);
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * @return The best time of loading _file_ in milliseconds. The first load
+     *         fills the cache and is not measured.
+     */
+    private static double measure(Path file, ModuleCache cache) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i <= RUNS; ++i) {
+            Yale yale = new Yale(EvalMode.ANALYZE);
+            yale.setModuleCache(cache);
+            long start = System.nanoTime();
+            yale.loadModule(file);
+            if (i > 0) {
+                best = Math.min(best, System.nanoTime() - start);
+            }
+        }
+        return best / 1e6;
+    }
+
+    private static String generate(int definitions) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < definitions; ++i) {
+            sb.append("(define f").append(i).append(" (lambda (xs acc)\n");
+            sb.append("  (if (nullp xs) acc (f").append(i).append(" (cdr xs) (+ acc (* (car xs) ").append(i)
+                    .append(") (mod (car xs) 7) ").append(i).append(")))))\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.main;
+
+/**
+ * Compares purely functional accumulation of a collection element by
+ * element: appending to a list (which copies the list every time) versus
+ * pushing onto a persistent vector and putting into a persistent map.
+ *
+ * Run with: ant bench
+ */
+public class PersistentBenchmark {
+
+    private static final int[] SIZES = { 1000, 2000, 4000, 8000 };
+    private static final int RUNS = 5;
+    private static final String[] KINDS = { "append", "pvector", "pmap" };
+
+    private static final String DEFINITIONS = "(define grow-append (lambda (acc i n) (if (> n i) (grow-append (append acc (cons i nil)) (+ i 1) n) acc)))"
+            + "(define grow-pvector (lambda (acc i n) (if (> n i) (grow-pvector (pvector-push acc i) (+ i 1) n) acc)))"
+            + "(define grow-pmap (lambda (acc i n) (if (> n i) (grow-pmap (pmap-put acc i i) (+ i 1) n) acc)))";
+
+    public static void main(String[] args) throws Exception {
+        Yale yale = new Yale(EvalMode.ANALYZE);
+        yale.feed(DEFINITIONS);
+        // warm-up
+        for (String kind : KINDS) {
+            measure(yale, kind, 1000);
+        }
+
+        System.out.println(String.format("%8s %12s %12s %12s", "size", "append [ms]", "pvector [ms]", "pmap [ms]"));
+        for (int size : SIZES) {
+            StringBuilder sb = new StringBuilder(String.format("%8d", size));
+            for (String kind : KINDS) {
+                sb.append(String.format(" %12.2f", measure(yale, kind, size)));
+            }
+            System.out.println(sb);
+        }
+    }
+
+    /**
+     * @return The best time of accumulating _size_ elements in a collection
+     *         of _kind_ in milliseconds.
+     */
+    private static double measure(Yale yale, String kind, int size) throws Exception {
+        String empty = kind.equals("append") ? "nil" : "(" + kind + ")";
+        String grow = "(grow-" + kind + " " + empty + " 0 " + size + ")";
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; ++i) {
+            long start = System.nanoTime();
+            yale.feed(grow);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+}
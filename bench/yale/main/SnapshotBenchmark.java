@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.main;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares restoring a snapshot (see {@link yale.image.Snapshot}) with
+ * evaluating the program that built the root environment. The program defines
+ * a growing number of globals, each a precomputed table or a closure.
+ *
+ * Run with: ant bench
+ */
+public class SnapshotBenchmark {
+
+    private static final int[] GLOBALS = { 1000, 4000, 16000 };
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        Path file = Files.createTempFile("yale", ".snapshot");
+        try {
+            // warm-up
+            run(generate(1000), file);
+
+            System.out.println(String.format("%8s %12s %12s %12s %12s", "globals", "eval [ms]", "save [ms]",
+                    "restore [ms]", "size [KB]"));
+            for (int globals : GLOBALS) {
+                double[] times = run(generate(globals), file);
+                System.out.println(String.format("%8d %12.1f %12.1f %12.1f %12d", globals, times[0], times[1],
+                        times[2], Files.size(file) / 1024));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * @return The best times of evaluating _program_, saving and restoring its
+     *         snapshot in milliseconds.
+     */
+    private static double[] run(String program, Path file) throws Exception {
+        long[] best = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE };
+        for (int i = 0; i < RUNS; ++i) {
+            long start = System.nanoTime();
+            Yale yale = new Yale(EvalMode.ANALYZE);
+            yale.feed(program);
+            long evaluated = System.nanoTime();
+            yale.saveSnapshot(file);
+            long saved = System.nanoTime();
+            Yale.restoreSnapshot(file, EvalMode.ANALYZE);
+            long restored = System.nanoTime();
+            best[0] = Math.min(best[0], evaluated - start);
+            best[1] = Math.min(best[1], saved - evaluated);
+            best[2] = Math.min(best[2], restored - saved);
+        }
+        return new double[] { best[0] / 1e6, best[1] / 1e6, best[2] / 1e6 };
+    }
+
+    private static String generate(int globals) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("(define table (lambda (n acc) (if (> n 0) (table (- n 1) (cons (* n n) acc)) acc)))\n");
+        sb.append("(define acc-gen (lambda (x) (lambda (y) (assign x (+ x y)) x)))\n");
+        for (int i = 0; i < globals; ++i) {
+            if (i % 2 == 0) {
+                sb.append("(define g").append(i).append(" (table 100 nil))\n");
+            } else {
+                sb.append("(define g").append(i).append(" (acc-gen ").append(i).append("))\n");
+            }
+        }
+        return sb.toString();
+    }
+}
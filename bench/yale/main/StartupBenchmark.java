@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.main;
+
+/**
+ * Measures how long it takes to create a yale instance, with the standard
+ * library loaded from its source or from the precompiled image (see
+ * {@link yale.image.StdlibImage}), and with its definitions evaluated eagerly
+ * or lazily (see {@link yale.eval.Environment#defineLazily}). Every
+ * combination is warmed up first, so the times do not include class loading.
+ *
+ * Run with: ant bench
+ */
+public class StartupBenchmark {
+
+    private static final int INSTANCES = 2000;
+    private static final String[][] CONFIGS = { { "false", "false" }, { "false", "true" }, { "true", "false" },
+            { "true", "true" } };
+
+    public static void main(String[] args) throws Exception {
+        // warm-up
+        for (String[] config : CONFIGS) {
+            for (EvalMode mode : EvalMode.values()) {
+                measure(config, mode);
+            }
+        }
+
+        System.out.println(String.format("%9s %10s %10s %10s %10s", "mode", "source", "source", "image", "image"));
+        System.out.println(String.format("%9s %10s %10s %10s %10s", "", "eager", "lazy", "eager", "lazy"));
+        System.out.println(String.format("%9s %10s %10s %10s %10s", "", "[us]", "[us]", "[us]", "[us]"));
+        for (EvalMode mode : EvalMode.values()) {
+            StringBuilder sb = new StringBuilder(String.format("%9s", mode.name().toLowerCase()));
+            for (String[] config : CONFIGS) {
+                sb.append(String.format(" %10.1f", measure(config, mode)));
+            }
+            System.out.println(sb);
+        }
+    }
+
+    /**
+     * @return The average time it takes to create an instance in
+     *         microseconds.
+     */
+    private static double measure(String[] config, EvalMode mode) throws Exception {
+        System.setProperty("yale.image", config[0]);
+        System.setProperty("yale.lazy", config[1]);
+        long start = System.nanoTime();
+        for (int i = 0; i < INSTANCES; ++i) {
+            new Yale(mode);
+        }
+        return (System.nanoTime() - start) / 1e3 / INSTANCES;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.main;
+
+/**
+ * Compares indexed access to the elements of a list (by walking the list with
+ * cdr, unlike the builtin nth, which skips the array of a compact list) with
+ * indexed access to generic and numeric vectors. Each run sums all elements
+ * of a sequence by index.
+ *
+ * Run with: ant bench
+ */
+public class VectorBenchmark {
+
+    private static final int[] SIZES = { 1000, 2000, 4000 };
+    private static final int RUNS = 5;
+    private static final String[] KINDS = { "list", "vector", "long-vector", "double-vector" };
+
+    private static final String DEFINITIONS = "(define list-ref (lambda (xs n) (if (> n 0) (list-ref (cdr xs) (- n 1)) (car xs))))"
+            + "(define list-sum (lambda (xs i n acc) (if (> n i) (list-sum xs (+ i 1) n (+ acc (list-ref xs i))) acc)))"
+            + "(define vector-sum (lambda (v i n acc) (if (> n i) (vector-sum v (+ i 1) n (+ acc (vector-ref v i))) acc)))"
+            + "(define seq nil)" + "(define fill (lambda (v i n) (if (> n i) (let ((x (vector-set! v i i))) (fill v (+ i 1) n)) v)))";
+
+    public static void main(String[] args) throws Exception {
+        Yale yale = new Yale(EvalMode.ANALYZE);
+        yale.feed(DEFINITIONS);
+        // warm-up
+        for (String kind : KINDS) {
+            measure(yale, kind, 1000);
+        }
+
+        System.out.println(String.format("%8s %12s %12s %12s %12s", "size", "list [ms]", "vector [ms]",
+                "long [ms]", "double [ms]"));
+        for (int size : SIZES) {
+            StringBuilder sb = new StringBuilder(String.format("%8d", size));
+            for (String kind : KINDS) {
+                sb.append(String.format(" %12.2f", measure(yale, kind, size)));
+            }
+            System.out.println(sb);
+        }
+    }
+
+    /**
+     * @return The best time of summing a sequence of _kind_ with _size_
+     *         elements in milliseconds.
+     */
+    private static double measure(Yale yale, String kind, int size) throws Exception {
+        if (kind.equals("list")) {
+            yale.feed("(assign seq (vector->list (fill (make-vector " + size + ") 0 " + size + ")))");
+        } else {
+            yale.feed("(assign seq (fill (make-" + kind + " " + size + ") 0 " + size + "))");
+        }
+        String sum = kind.equals("list") ? "(list-sum seq 0 " + size + " 0)" : "(vector-sum seq 0 " + size + " 0)";
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; ++i) {
+            long start = System.nanoTime();
+            yale.feed(sum);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+}
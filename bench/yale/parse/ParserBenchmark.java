@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.parse;
+
+import yale.exception.ParseError;
+
+/**
+ * Measures how long it takes to parse inputs of growing size. The first
+ * series of inputs consists of a single list whose elements are small nested
+ * lists, similar to generated data files. With a linear-time parser, the time
+ * per megabyte stays roughly constant as the input grows. The second series
+ * consists of many independent top-level s-expressions and compares
+ * sequential with parallel parsing.
+ * 
+ * Run with: ant bench
+ */
+public class ParserBenchmark {
+
+    private static final int[] SIZES_MB = { 1, 2, 4, 8 };
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws ParseError {
+        Parser sequential = new Parser(false);
+        Parser parallel = new Parser(true);
+        // warm-up
+        sequential.parse(generate(1 << 20));
+        parallel.parse(generateForms(1 << 20));
+
+        System.out.println("Single list:");
+        System.out.println(String.format("%8s %12s %12s", "size", "best [ms]", "ms per MB"));
+        for (int mb : SIZES_MB) {
+            double ms = measure(sequential, generate(mb << 20));
+            System.out.println(String.format("%6d MB %12.1f %12.1f", mb, ms, ms / mb));
+        }
+
+        System.out.println("Top-level forms:");
+        System.out.println(String.format("%8s %15s %15s", "size", "sequential [ms]", "parallel [ms]"));
+        for (int mb : SIZES_MB) {
+            String input = generateForms(mb << 20);
+            System.out.println(String.format("%6d MB %15.1f %15.1f", mb, measure(sequential, input),
+                    measure(parallel, input)));
+        }
+    }
+
+    /**
+     * @return The best time of {@link #RUNS} runs in milliseconds.
+     */
+    private static double measure(Parser parser, String input) throws ParseError {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; ++i) {
+            long start = System.nanoTime();
+            parser.parse(input);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+
+    /**
+     * Generate a list of roughly _size_ characters.
+     */
+    static String generate(int size) {
+        StringBuilder sb = new StringBuilder(size + 64);
+        sb.append('(');
+        for (int i = 0; sb.length() < size; ++i) {
+            appendElement(sb, i);
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
+    /**
+     * Generate top-level s-expressions of roughly _size_ characters in total.
+     */
+    static String generateForms(int size) {
+        StringBuilder sb = new StringBuilder(size + 64);
+        for (int i = 0; sb.length() < size; ++i) {
+            sb.append("(define x").append(i).append(" '(");
+            for (int j = 0; j < 8; ++j) {
+                appendElement(sb, i + j);
+            }
+            sb.append("))\n");
+        }
+        return sb.toString();
+    }
+
+    private static void appendElement(StringBuilder sb, int i) {
+        sb.append("(item-").append(i % 1000).append(' ').append(i).append(" 'tag (").append(i * 0.5)
+                .append(" nil)) ");
+    }
+}
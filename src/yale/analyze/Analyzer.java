@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import yale.eval.Cons;
+import yale.eval.Environment;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.main.Kernel;
+
+/**
+ * Converts s-expressions into trees of executable nodes. Special forms are
+ * recognized during analysis if the first element of a list is the symbol of
+ * one of the kernel's special forms (e.g. if), is not lexically bound and is
+ * still bound to that special form. Other symbols bound to a special form
+ * (e.g. after (define my-if if)) are analyzed as calls, which look up their
+ * binding whenever they are executed and apply the special form found there,
+ * so they see a later assign. Analysis never fails: if a special form is
+ * malformed (e.g. wrong number of parameters), a generic {@link CallNode} is
+ * created instead, so that the special form itself raises the usual error
+ * once the node is executed.
+ */
+public class Analyzer {
+
+    private Environment root;
+    private JitCompiler jit;
+    private ConstantFolder folder;
+    private SExpr quoteForm;
+    private SExpr lambdaForm;
+    private SExpr letForm;
+    private SExpr letrecForm;
+    private SExpr ifForm;
+    private SExpr defineForm;
+    private SExpr assignForm;
+    /** The special forms by the symbol the kernel binds them to. */
+    private Map<Symbol, SExpr> specialForms = new HashMap<Symbol, SExpr>();
+
+    /**
+     * Creates a new analyzer. The special forms are looked up in _root_ when
+     * the analyzer is created, i.e. before any user code could rebind them.
+     * 
+     * @param root
+     *            The root environment of a kernel.
+     * @param jit
+     *            Compiler for frequently called lambda forms or null if
+     *            analyzed code should never be compiled.
+     */
+    public Analyzer(Environment root, JitCompiler jit) {
+        this.root = root;
+        this.jit = jit;
+        this.folder = new ConstantFolder(root);
+        this.quoteForm = root.getBinding(Kernel.QUOTE);
+        this.lambdaForm = root.getBinding(Kernel.LAMBDA);
+        this.letForm = root.getBinding(Kernel.LET);
+        this.letrecForm = root.getBinding(Kernel.LETREC);
+        this.ifForm = root.getBinding(Kernel.IF);
+        this.defineForm = root.getBinding(Kernel.DEFINE);
+        this.assignForm = root.getBinding(Kernel.ASSIGN);
+        for (Symbol sym : new Symbol[] { Kernel.QUOTE, Kernel.LAMBDA, Kernel.LET, Kernel.LETREC, Kernel.IF,
+                Kernel.DEFINE, Kernel.ASSIGN }) {
+            this.specialForms.put(sym, root.getBinding(sym));
+        }
+    }
+
+    /**
+     * Analyze a top-level s-expression.
+     * 
+     * @param expr
+     *            S-expression as returned by the parser.
+     * @return Node which can be executed in the root environment.
+     */
+    public Node analyze(SExpr expr) {
+        return analyze(expr, null);
+    }
+
+    /**
+     * @return The number of calls of kernel functions that were replaced by
+     *         their values during analysis (see {@link ConstantFolder}).
+     */
+    public int getFoldCount() {
+        return this.folder.getFoldCount();
+    }
+
+    private Node analyze(SExpr expr, Scope scope) {
+        if (expr instanceof Symbol) {
+            return analyzeSymbol((Symbol) expr, scope);
+        } else if (expr.isCons()) {
+            return analyzeList(expr, scope);
+        } else {
+            return new ConstantNode(expr);
+        }
+    }
+
+    private Node analyzeList(SExpr expr, Scope scope) {
+        SExpr head = expr.car();
+        List<SExpr> operands = toList(expr.cdr());
+        if (operands == null) {
+            return new InterpretedNode(this.root, expr);
+        }
+        Node result = null;
+        if (head instanceof Symbol && Scope.lookup(scope, (Symbol) head) == null) {
+            SExpr form = this.root.findBinding((Symbol) head);
+            if (form == null || form != this.specialForms.get(head)) {
+                result = null;
+            } else if (form == this.quoteForm) {
+                result = analyzeQuote(operands);
+            } else if (form == this.ifForm) {
+                result = analyzeIf(operands, scope);
+            } else if (form == this.lambdaForm) {
+                result = analyzeLambda(operands, scope);
+            } else if (form == this.letForm) {
+                result = analyzeLet(false, operands, scope);
+            } else if (form == this.letrecForm) {
+                result = analyzeLet(true, operands, scope);
+            } else if (form == this.defineForm) {
+                result = analyzeDefine(operands, scope);
+            } else if (form == this.assignForm) {
+                result = analyzeAssign(operands, scope);
+            }
+        }
+        if (result == null) {
+            result = analyzeCall(head, operands, scope);
+        }
+        return result;
+    }
+
+    private Node analyzeSymbol(Symbol sym, Scope scope) {
+        int[] address = Scope.lookup(scope, sym);
+        if (address == null) {
+            return new GlobalNode(this.root, sym);
+        }
+        return new LocalNode(sym, address[0], address[1]);
+    }
+
+    private Node analyzeCall(SExpr head, List<SExpr> operands, Scope scope) {
+        Node[] operandNodes = new Node[operands.size()];
+        for (int i = 0; i < operandNodes.length; ++i) {
+            operandNodes[i] = analyze(operands.get(i), scope);
+        }
+        Node operator = analyze(head, scope);
+        CallNode call = new CallNode(this.root, operator, operandNodes, operands.toArray(new SExpr[operands.size()]));
+        return this.folder.fold(call, operator, operandNodes);
+    }
+
+    private Node analyzeQuote(List<SExpr> operands) {
+        if (operands.size() != 1) {
+            return null;
+        }
+        return new ConstantNode(Cons.markConstant(operands.get(0)));
+    }
+
+    private Node analyzeIf(List<SExpr> operands, Scope scope) {
+        if (operands.size() != 3) {
+            return null;
+        }
+        return new IfNode(analyze(operands.get(0), scope), analyze(operands.get(1), scope),
+                analyze(operands.get(2), scope));
+    }
+
+    private Node analyzeLambda(List<SExpr> operands, Scope scope) {
+        if (operands.size() < 2) {
+            return null;
+        }
+        Symbol[] variables = toVariables(toList(operands.get(0)));
+        if (variables == null) {
+            return null;
+        }
+        Scope subScope = Scope.extend(scope, variables);
+        return new LambdaNode(variables, analyzeBody(operands, subScope), this.jit);
+    }
+
+    private Node analyzeLet(boolean recursive, List<SExpr> operands, Scope scope) {
+        if (operands.size() < 2) {
+            return null;
+        }
+        List<SExpr> bindings = toList(operands.get(0));
+        if (bindings == null) {
+            return null;
+        }
+        List<SExpr> left = new ArrayList<SExpr>();
+        List<SExpr> right = new ArrayList<SExpr>();
+        for (SExpr binding : bindings) {
+            List<SExpr> tuple = toList(binding);
+            if (tuple == null || tuple.size() < 2) {
+                return null;
+            }
+            left.add(tuple.get(0));
+            right.add(tuple.get(1));
+        }
+        Symbol[] variables = toVariables(left);
+        if (variables == null) {
+            return null;
+        }
+        Scope subScope = Scope.extend(scope, variables);
+        Scope valueScope = recursive ? subScope : scope;
+        Node[] values = new Node[variables.length];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = analyze(right.get(i), valueScope);
+        }
+        return new LetNode(recursive, variables, values, analyzeBody(operands, subScope));
+    }
+
+    private Node analyzeDefine(List<SExpr> operands, Scope scope) {
+        if (operands.size() != 2 || !(operands.get(0) instanceof Symbol)) {
+            return null;
+        }
+        return new DefineNode(this.root, (Symbol) operands.get(0), analyze(operands.get(1), scope));
+    }
+
+    private Node analyzeAssign(List<SExpr> operands, Scope scope) {
+        if (operands.size() != 2 || !(operands.get(0) instanceof Symbol)) {
+            return null;
+        }
+        Symbol sym = (Symbol) operands.get(0);
+        Node value = analyze(operands.get(1), scope);
+        int[] address = Scope.lookup(scope, sym);
+        if (address == null) {
+            return new AssignNode(this.root, sym, value);
+        }
+        return new LocalAssignNode(sym, address[0], address[1], value);
+    }
+
+    /**
+     * Analyze all but the first operand of a lambda or let form.
+     */
+    private Node[] analyzeBody(List<SExpr> operands, Scope scope) {
+        Node[] body = new Node[operands.size() - 1];
+        for (int i = 0; i < body.length; ++i) {
+            body[i] = analyze(operands.get(i + 1), scope);
+        }
+        return body;
+    }
+
+    /**
+     * Converts a list of symbols into an array. Returns null if the list
+     * contains anything but symbols or if a symbol appears more than once.
+     */
+    private static Symbol[] toVariables(List<SExpr> list) {
+        if (list == null) {
+            return null;
+        }
+        Symbol[] variables = new Symbol[list.size()];
+        for (int i = 0; i < variables.length; ++i) {
+            SExpr var = list.get(i);
+            if (!(var instanceof Symbol) || list.subList(0, i).contains(var)) {
+                return null;
+            }
+            variables[i] = (Symbol) var;
+        }
+        return variables;
+    }
+
+    /**
+     * Converts a proper list into a java list. Returns null if _expr_ is not a
+     * proper list.
+     */
+    private static List<SExpr> toList(SExpr expr) {
+        List<SExpr> list = new ArrayList<SExpr>();
+        SExpr curr = expr;
+        while (curr.isCons()) {
+            list.add(curr.car());
+            curr = curr.cdr();
+        }
+        return curr == Symbol.NIL ? list : null;
+    }
+}
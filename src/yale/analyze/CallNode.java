@@ -0,0 +1,268 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import yale.eval.Environment;
+import yale.eval.Function;
+import yale.eval.SExpr;
+import yale.eval.TailCall;
+import yale.image.ImageInput;
+import yale.image.ImageOutput;
+import yale.jit.Code;
+import yale.jit.Label;
+
+/**
+ * Node for a list whose first element could not be resolved to a special form
+ * during analysis. Usually this is a function call, but since special forms
+ * are first-class objects, the operator may still turn out to be a special
+ * form at runtime. In that case, the special form is applied to the
+ * unevaluated operands just like in the interpreter.
+ */
+public class CallNode extends Node {
+
+    private Environment root;
+    private Node operator;
+    private Node[] operands;
+    private SExpr[] rawOperands;
+
+    public CallNode(Environment root, Node operator, Node[] operands, SExpr[] rawOperands) {
+        this.root = root;
+        this.operator = operator;
+        this.operands = operands;
+        this.rawOperands = rawOperands;
+    }
+
+    @Override
+    public SExpr exec(Frame frame) {
+        SExpr form = this.operator.exec(frame);
+        if (form.isFunction()) {
+            return call((Function) form, frame);
+        }
+        return applyNonFunction(form, frame, false);
+    }
+
+    /**
+     * In tail position, applications of functions which support tail calls
+     * are returned as {@link TailCall} (see {@link yale.eval.Cons#evalTail}).
+     */
+    @Override
+    public SExpr execTail(Frame frame) {
+        SExpr form = this.operator.exec(frame);
+        if (form.isFunction()) {
+            Function function = (Function) form;
+            if (function.supportsTailCalls()) {
+                return new TailCall(function, evalOperands(frame));
+            }
+            return call(function, frame);
+        }
+        return applyNonFunction(form, frame, true);
+    }
+
+    /**
+     * Apply an operator which turned out not to be a function, i.e. a special
+     * form (or an object which cannot be applied at all).
+     */
+    SExpr applyNonFunction(SExpr form, Frame frame, boolean tail) {
+        if (form.isSpecialForm()) {
+            List<SExpr> params = new LinkedList<SExpr>(Arrays.asList(this.rawOperands));
+            Environment env = FrameEnvironment.of(frame, this.root);
+            return tail ? form.applyTail(params, env) : form.apply(params, env);
+        }
+        return form.apply(null, this.root);
+    }
+
+    /**
+     * On a {@link Machine}, the operator is executed first (step 0), followed
+     * by the operands (step i for operand i). The values are collected in an
+     * array whose first element is the operator. Leaf nodes are executed
+     * right away.
+     */
+    @Override
+    SExpr start(Machine m, Frame frame) {
+        SExpr[] values = new SExpr[this.operands.length + 1];
+        if (this.operator.isLeaf()) {
+            return resume(m, frame, 0, values, this.operator.exec(frame));
+        }
+        m.push(this, frame, 0, values);
+        m.eval(this.operator, frame);
+        return null;
+    }
+
+    @Override
+    SExpr resume(Machine m, Frame frame, int step, Object stepData, SExpr value) {
+        SExpr[] values = (SExpr[]) stepData;
+        if (step == 0 && !value.isFunction()) {
+            return applyNonFunction(value, frame, false);
+        }
+        values[step] = value;
+        int next = step;
+        while (next < this.operands.length && this.operands[next].isLeaf()) {
+            values[next + 1] = this.operands[next].exec(frame);
+            ++next;
+        }
+        if (next < this.operands.length) {
+            m.push(this, frame, next + 1, values);
+            m.eval(this.operands[next], frame);
+            return null;
+        }
+        return m.apply((Function) values[0], Arrays.copyOfRange(values, 1, values.length));
+    }
+
+    /**
+     * Calls of inlinable kernel functions (see
+     * {@link JitCompiler#findIntrinsic}) are replaced by calls of static
+     * helpers, guarded by the root binding of the operator, so only
+     * reassigning the kernel function itself deoptimizes the body. In tail
+     * position, calls of the compiled lambda form itself become a jump to the
+     * start of the body.
+     */
+    @Override
+    void compile(CodeGen gen, boolean tail) {
+        Code code = gen.code();
+        Label end = new Label();
+        String intrinsic = null;
+        if (this.operator instanceof GlobalNode) {
+            intrinsic = gen.getCompiler().findIntrinsic(((GlobalNode) this.operator).getSymbol(),
+                    this.operands.length);
+        }
+        if (intrinsic != null) {
+            Label stale = new Label();
+            GlobalNode global = (GlobalNode) this.operator;
+            gen.checkBinding(global, gen.getRoot().findBinding(global.getSymbol()), stale);
+            StringBuilder desc = new StringBuilder("(");
+            for (Node operand : this.operands) {
+                operand.compile(gen, false);
+                desc.append(CodeGen.SEXPR_DESC);
+            }
+            desc.append(")").append(CodeGen.SEXPR_DESC);
+            code.invokestatic(CodeGen.RUNTIME, intrinsic, desc.toString());
+            code.jump(end);
+            code.mark(stale);
+            gen.pushConstant(gen.getLambda(), "yale/analyze/LambdaNode");
+            code.invokevirtual("yale/analyze/LambdaNode", "deoptimize", "()V");
+            gen.delegate(this, tail);
+            code.mark(end);
+            return;
+        }
+
+        Label nonFunction = new Label();
+        this.operator.compile(gen, false);
+        code.dup();
+        code.instanceOf(CodeGen.FUNCTION);
+        code.ifeq(nonFunction);
+        code.checkcast(CodeGen.FUNCTION);
+        if (tail) {
+            compileOperandArray(gen);
+            if (this.operands.length > 0 && this.operands.length == gen.getLambda().getVariables().length) {
+                compileSelfCall(gen);
+            }
+            code.invokestatic(CodeGen.RUNTIME, "tailCall",
+                    "(L" + CodeGen.FUNCTION + ";[" + CodeGen.SEXPR_DESC + ")" + CodeGen.SEXPR_DESC);
+        } else if (this.operands.length <= 3) {
+            StringBuilder desc = new StringBuilder("(");
+            for (Node operand : this.operands) {
+                operand.compile(gen, false);
+                desc.append(CodeGen.SEXPR_DESC);
+            }
+            desc.append(")").append(CodeGen.SEXPR_DESC);
+            code.invokevirtual(CodeGen.FUNCTION, "apply" + this.operands.length, desc.toString());
+        } else {
+            compileOperandArray(gen);
+            code.invokevirtual(CodeGen.FUNCTION, "apply", "([" + CodeGen.SEXPR_DESC + ")" + CodeGen.SEXPR_DESC);
+        }
+        code.jump(end);
+        code.mark(nonFunction);
+        gen.pushConstant(this, "yale/analyze/CallNode");
+        code.swap();
+        gen.loadFrame(0);
+        code.pushInt(tail ? 1 : 0);
+        code.invokevirtual("yale/analyze/CallNode", "applyNonFunction",
+                "(" + CodeGen.SEXPR_DESC + CodeGen.FRAME_DESC + "Z)" + CodeGen.SEXPR_DESC);
+        code.mark(end);
+    }
+
+    private void compileOperandArray(CodeGen gen) {
+        Code code = gen.code();
+        code.pushInt(this.operands.length);
+        code.anewarray(CodeGen.SEXPR);
+        for (int i = 0; i < this.operands.length; ++i) {
+            code.dup();
+            code.pushInt(i);
+            this.operands[i].compile(gen, false);
+            code.aastore();
+        }
+    }
+
+    /**
+     * With the function and its arguments on the stack, jump to the start of
+     * the body if the function is a closure of the compiled lambda form.
+     * Otherwise, the stack is left unchanged.
+     */
+    private void compileSelfCall(CodeGen gen) {
+        Code code = gen.code();
+        int function = code.newLocal();
+        int args = code.newLocal();
+        Label other = new Label();
+        code.astore(args);
+        code.astore(function);
+        code.aload(function);
+        code.aload(args);
+        gen.pushConstant(gen.getLambda(), "yale/analyze/LambdaNode");
+        code.invokestatic(CodeGen.RUNTIME, "selfCallFrame", "(L" + CodeGen.FUNCTION + ";[" + CodeGen.SEXPR_DESC
+                + "Lyale/analyze/LambdaNode;)" + CodeGen.FRAME_DESC);
+        code.dup();
+        code.ifnull(other);
+        code.astore(1);
+        gen.jumpToStart();
+        code.mark(other);
+        code.pop();
+        code.aload(function);
+        code.aload(args);
+    }
+
+    /**
+     * Call _function_ through the entry point matching the number of operands.
+     */
+    private SExpr call(Function function, Frame frame) {
+        Node[] ops = this.operands;
+        switch (ops.length) {
+        case 0:
+            return function.apply0();
+        case 1:
+            return function.apply1(ops[0].exec(frame));
+        case 2:
+            return function.apply2(ops[0].exec(frame), ops[1].exec(frame));
+        case 3:
+            return function.apply3(ops[0].exec(frame), ops[1].exec(frame), ops[2].exec(frame));
+        default:
+            return function.apply(evalOperands(frame));
+        }
+    }
+
+    private SExpr[] evalOperands(Frame frame) {
+        if (this.operands.length == 0) {
+            return Function.NO_ARGS;
+        }
+        SExpr[] args = new SExpr[this.operands.length];
+        for (int i = 0; i < args.length; ++i) {
+            args[i] = this.operands[i].exec(frame);
+        }
+        return args;
+    }
+
+    @Override
+    public void write(ImageOutput out) throws IOException {
+        out.writeByte(ImageInput.CALL_NODE);
+        out.writeNode(this.operator);
+        out.writeNodes(this.operands);
+        out.writeSExprs(this.rawOperands);
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import yale.eval.Function;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.eval.TailCall;
+
+/**
+ * A function created by executing a {@link LambdaNode}. It consists of the
+ * analyzed lambda form and the frame the lambda form was executed in.
+ */
+public class Closure extends Function {
+
+    final LambdaNode lambda;
+    final Frame defFrame;
+
+    public Closure(LambdaNode lambda, Frame defFrame) {
+        this.lambda = lambda;
+        this.defFrame = defFrame;
+    }
+
+    public LambdaNode getLambda() {
+        return this.lambda;
+    }
+
+    /**
+     * @return The frame the lambda form was executed in or null if it was
+     *         executed at top-level.
+     */
+    public Frame getDefFrame() {
+        return this.defFrame;
+    }
+
+    @Override
+    public SExpr apply(SExpr[] args) {
+        return TailCall.trampoline(applyTail(args));
+    }
+
+    /**
+     * The final node of the body is executed in tail position. _args_ becomes
+     * the storage of the new frame, so it is not copied.
+     */
+    @Override
+    public SExpr applyTail(SExpr[] args) {
+        Frame frame = bind(args);
+        CompiledBody compiled = this.lambda.enter();
+        if (compiled != null) {
+            return compiled.execTail(frame);
+        }
+        return Node.execBodyTail(this.lambda.getBody(), frame);
+    }
+
+    /**
+     * Create the frame the body is executed in when the closure is applied to
+     * _args_.
+     */
+    Frame bind(SExpr[] args) {
+        Symbol[] variables = this.lambda.getVariables();
+        if (args.length != variables.length) {
+            throw new RuntimeException(String.format("lambda form requires %d parameter(s), %d given",
+                    variables.length, args.length));
+        }
+        /*
+         * As in the interpreted lambda form, bindings are resolved lexically
+         * starting at _defFrame_. Lambda forms without parameters do not
+         * introduce a frame (see Scope).
+         */
+        if (variables.length == 0) {
+            return this.defFrame;
+        }
+        return new Frame(args, this.defFrame, variables);
+    }
+
+    @Override
+    public boolean supportsTailCalls() {
+        return true;
+    }
+}
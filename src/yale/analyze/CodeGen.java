@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import yale.eval.Environment;
+import yale.eval.SExpr;
+import yale.jit.Code;
+import yale.jit.Label;
+
+/**
+ * State of the compilation of a single lambda body (see {@link JitCompiler}).
+ * Nodes emit their bytecode through {@link Node#compile}, this class keeps
+ * track of the constants referenced by the generated code and of the local
+ * variables holding the frames of the lambda form and its enclosed let forms.
+ */
+class CodeGen {
+
+    static final String SEXPR = "yale/eval/SExpr";
+    static final String FRAME = "yale/analyze/Frame";
+    static final String NODE = "yale/analyze/Node";
+    static final String FUNCTION = "yale/eval/Function";
+    static final String SYMBOL = "yale/eval/Symbol";
+    static final String RUNTIME = "yale/analyze/JitRuntime";
+
+    static final String SEXPR_DESC = "L" + SEXPR + ";";
+    static final String FRAME_DESC = "L" + FRAME + ";";
+
+    /** Local variable holding the frame the body is executed in. */
+    private static final int ENTRY_FRAME = 1;
+
+    private JitCompiler jit;
+    private Code code;
+    private LambdaNode lambda;
+    private Environment root;
+    private Label start = new Label();
+    private List<Object> constants = new ArrayList<Object>();
+    private Map<Object, Integer> constantIndex = new IdentityHashMap<Object, Integer>();
+    /**
+     * Local variables holding the frames introduced inside the body, the
+     * innermost frame is the last element.
+     */
+    private List<Integer> frames = new ArrayList<Integer>();
+
+    CodeGen(JitCompiler jit, Code code, LambdaNode lambda, Environment root) {
+        this.jit = jit;
+        this.code = code;
+        this.lambda = lambda;
+        this.root = root;
+        this.frames.add(ENTRY_FRAME);
+    }
+
+    /**
+     * Emit the body of the lambda form. Like
+     * {@link Node#execBodyTail(Node[], Frame)}, the final node is compiled in
+     * tail position.
+     */
+    void compileLambdaBody() {
+        this.code.mark(this.start);
+        compileBody(this.lambda.getBody(), true);
+        this.code.areturn();
+    }
+
+    /**
+     * Emit a body, leaving the value of its final node on the stack.
+     */
+    void compileBody(Node[] body, boolean tail) {
+        int last = body.length - 1;
+        for (int i = 0; i < last; ++i) {
+            body[i].compile(this, false);
+            this.code.pop();
+        }
+        body[last].compile(this, tail);
+    }
+
+    Code code() {
+        return this.code;
+    }
+
+    JitCompiler getCompiler() {
+        return this.jit;
+    }
+
+    Environment getRoot() {
+        return this.root;
+    }
+
+    LambdaNode getLambda() {
+        return this.lambda;
+    }
+
+    /**
+     * Jump back to the start of the body. The entry frame must have been
+     * replaced and the operand stack must be empty.
+     */
+    void jumpToStart() {
+        this.code.jump(this.start);
+    }
+
+    /**
+     * Push _value_, which is kept in the constants of the generated class,
+     * cast to the internal type name _type_.
+     */
+    void pushConstant(Object value, String type) {
+        Integer index = this.constantIndex.get(value);
+        if (index == null) {
+            index = this.constants.size();
+            this.constants.add(value);
+            this.constantIndex.put(value, index);
+        }
+        this.code.aload(0);
+        this.code.getfield(JitCompiler.CLASS_NAME, JitCompiler.CONSTANTS, "[Ljava/lang/Object;");
+        this.code.pushInt(index);
+        this.code.aaload();
+        this.code.checkcast(type);
+    }
+
+    Object[] getConstants() {
+        return this.constants.toArray();
+    }
+
+    /**
+     * Push the frame _depth_ parent hops away from the innermost frame.
+     */
+    void loadFrame(int depth) {
+        int index = this.frames.size() - 1 - depth;
+        if (index >= 0) {
+            this.code.aload(this.frames.get(index));
+        } else {
+            this.code.aload(ENTRY_FRAME);
+            for (int i = index; i < 0; ++i) {
+                this.code.getfield(FRAME, "parent", FRAME_DESC);
+            }
+        }
+    }
+
+    void pushFrame(int local) {
+        this.frames.add(local);
+    }
+
+    void popFrame() {
+        this.frames.remove(this.frames.size() - 1);
+    }
+
+    /**
+     * Emit code which executes _node_ by calling its {@link Node#exec} or
+     * {@link Node#execTail} method.
+     */
+    void delegate(Node node, boolean tail) {
+        pushConstant(node, NODE);
+        loadFrame(0);
+        this.code.invokevirtual(NODE, tail ? "execTail" : "exec", "(" + FRAME_DESC + ")" + SEXPR_DESC);
+    }
+
+    /**
+     * Emit a jump to _stale_ which is taken if the value of _global_ is not
+     * _value_. Other root bindings may change without taking the jump.
+     */
+    void checkBinding(GlobalNode global, SExpr value, Label stale) {
+        global.compile(this, false);
+        pushConstant(value, SEXPR);
+        this.code.ifAcmpne(stale);
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import yale.eval.SExpr;
+
+/**
+ * The body of a lambda form compiled to JVM bytecode (see
+ * {@link JitCompiler}). Implementations are generated at runtime.
+ */
+interface CompiledBody {
+
+    /**
+     * Execute the body in _frame_ like
+     * {@link Node#execBodyTail(Node[], Frame)}.
+     */
+    SExpr execTail(Frame frame);
+}
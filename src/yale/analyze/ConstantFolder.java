@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import yale.eval.Cons;
+import yale.eval.Environment;
+import yale.eval.Function;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.main.Kernel;
+
+/**
+ * Optimization applied by the {@link Analyzer} to function calls: a call of a
+ * pure kernel function whose operands are all literals (or folded calls
+ * themselves) is executed during analysis and replaced by a
+ * {@link FoldedNode} holding its value.
+ *
+ * A call is only folded if the operator is not lexically bound and its root
+ * binding is still the kernel function. Cons pairs are only accepted as
+ * operands if they are constant (i.e. quoted data, see
+ * {@link Cons#isConstant()}), so e.g. (car '(1 2)) can be folded as well.
+ * Calls which raise an error (e.g. division by zero) are not folded, so the error is raised when the call is
+ * executed.
+ */
+class ConstantFolder {
+
+    private static final Symbol[] PURE_FUNCTIONS = { Kernel.ADD, Kernel.SUB, Kernel.MULT, Kernel.DIV, Kernel.MOD,
+            Kernel.GT, Kernel.EQL, Kernel.NOT, Kernel.NULLP, Kernel.CONSP, Kernel.ATOMP, Kernel.NUMBERP, Kernel.CAR,
+            Kernel.CDR };
+
+    private Environment root;
+    private Map<Symbol, SExpr> kernelFunctions = new HashMap<Symbol, SExpr>();
+    private int foldCount;
+
+    /**
+     * @param root
+     *            The root environment of a kernel. The kernel functions are
+     *            looked up when the folder is created.
+     */
+    ConstantFolder(Environment root) {
+        this.root = root;
+        for (Symbol sym : PURE_FUNCTIONS) {
+            this.kernelFunctions.put(sym, root.getBinding(sym));
+        }
+    }
+
+    /**
+     * Try to fold _call_.
+     *
+     * @return A {@link FoldedNode} or _call_ itself if it cannot be folded.
+     */
+    Node fold(CallNode call, Node operator, Node[] operands) {
+        if (!(operator instanceof GlobalNode)) {
+            return call;
+        }
+        Symbol sym = ((GlobalNode) operator).getSymbol();
+        SExpr function = this.kernelFunctions.get(sym);
+        if (function == null || this.root.findBinding(sym) != function) {
+            return call;
+        }
+        List<Symbol> dependencies = new ArrayList<Symbol>();
+        dependencies.add(sym);
+        SExpr[] args = new SExpr[operands.length];
+        for (int i = 0; i < args.length; ++i) {
+            if (operands[i] instanceof ConstantNode) {
+                args[i] = ((ConstantNode) operands[i]).getValue();
+                if (args[i].isCons() && !((Cons) args[i]).isConstant()) {
+                    return call;
+                }
+            } else if (operands[i] instanceof FoldedNode) {
+                FoldedNode folded = (FoldedNode) operands[i];
+                args[i] = folded.getValue();
+                for (Symbol dependency : folded.getDependencies()) {
+                    if (!dependencies.contains(dependency)) {
+                        dependencies.add(dependency);
+                    }
+                }
+            } else {
+                return call;
+            }
+        }
+        SExpr value;
+        try {
+            value = ((Function) function).apply(args);
+        } catch (RuntimeException e) {
+            return call;
+        }
+        Symbol[] symbols = dependencies.toArray(new Symbol[dependencies.size()]);
+        SExpr[] functions = new SExpr[symbols.length];
+        for (int i = 0; i < symbols.length; ++i) {
+            functions[i] = this.kernelFunctions.get(symbols[i]);
+        }
+        ++this.foldCount;
+        return new FoldedNode(this.root, value, symbols, functions, call);
+    }
+
+    /**
+     * @return The number of calls folded so far.
+     */
+    int getFoldCount() {
+        return this.foldCount;
+    }
+}
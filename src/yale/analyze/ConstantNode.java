@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.io.IOException;
+
+import yale.eval.SExpr;
+import yale.image.ImageInput;
+import yale.image.ImageOutput;
+
+/**
+ * Node for self-evaluating objects (e.g. numbers) and quoted data.
+ */
+public class ConstantNode extends Node {
+
+    private SExpr value;
+
+    public ConstantNode(SExpr value) {
+        this.value = value;
+    }
+
+    @Override
+    public SExpr exec(Frame frame) {
+        return this.value;
+    }
+
+    @Override
+    boolean isLeaf() {
+        return true;
+    }
+
+    SExpr getValue() {
+        return this.value;
+    }
+
+    @Override
+    void compile(CodeGen gen, boolean tail) {
+        gen.pushConstant(this.value, CodeGen.SEXPR);
+    }
+
+    @Override
+    public void write(ImageOutput out) throws IOException {
+        out.writeByte(ImageInput.CONSTANT_NODE);
+        out.writeSExpr(this.value);
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.io.IOException;
+
+import yale.eval.Environment;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.image.ImageInput;
+import yale.image.ImageOutput;
+
+/**
+ * Analyzed form of the special form _define_. Like its interpreted
+ * counterpart, it always introduces a binding in the root environment.
+ */
+public class DefineNode extends Node {
+
+    private Environment root;
+    private Symbol symbol;
+    private Node value;
+
+    public DefineNode(Environment root, Symbol symbol, Node value) {
+        this.root = root;
+        this.symbol = symbol;
+        this.value = value;
+    }
+
+    public Symbol getSymbol() {
+        return this.symbol;
+    }
+
+    @Override
+    public SExpr exec(Frame frame) {
+        this.root.defineBinding(this.symbol, this.value.exec(frame));
+        return this.symbol;
+    }
+
+    @Override
+    SExpr start(Machine m, Frame frame) {
+        m.push(this, frame, 0, null);
+        m.eval(this.value, frame);
+        return null;
+    }
+
+    @Override
+    SExpr resume(Machine m, Frame frame, int step, Object stepData, SExpr value) {
+        this.root.defineBinding(this.symbol, value);
+        return this.symbol;
+    }
+
+    @Override
+    public void write(ImageOutput out) throws IOException {
+        out.writeByte(ImageInput.DEFINE_NODE);
+        out.writeSymbol(this.symbol);
+        out.writeNode(this.value);
+    }
+}
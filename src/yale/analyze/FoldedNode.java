@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.io.IOException;
+
+import yale.eval.Environment;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.image.ImageInput;
+import yale.image.ImageOutput;
+import yale.jit.Code;
+import yale.jit.Label;
+
+/**
+ * A call of pure kernel functions whose value was computed during analysis
+ * (see {@link ConstantFolder}). The value is only valid as long as the
+ * kernel functions involved are still bound to their symbols in the root
+ * environment. If one of them has been reassigned, the original call is
+ * executed instead.
+ */
+public class FoldedNode extends Node {
+
+    private Environment root;
+    private SExpr value;
+    private Symbol[] dependencies;
+    private SExpr[] functions;
+    private CallNode call;
+    /**
+     * Root version for which _valid_ was determined last.
+     */
+    private int checkedVersion;
+    private boolean valid = true;
+
+    /**
+     * @param dependencies
+     *            The symbols of all kernel functions the value depends on.
+     * @param functions
+     *            The kernel functions bound to _dependencies_ at analysis
+     *            time.
+     * @param call
+     *            The call that was folded.
+     */
+    public FoldedNode(Environment root, SExpr value, Symbol[] dependencies, SExpr[] functions, CallNode call) {
+        this.root = root;
+        this.value = value;
+        this.dependencies = dependencies;
+        this.functions = functions;
+        this.call = call;
+        this.checkedVersion = root.getVersion();
+    }
+
+    @Override
+    public SExpr exec(Frame frame) {
+        if (isValid()) {
+            return this.value;
+        }
+        return this.call.exec(frame);
+    }
+
+    @Override
+    public SExpr execTail(Frame frame) {
+        if (isValid()) {
+            return this.value;
+        }
+        return this.call.execTail(frame);
+    }
+
+    /**
+     * The value is pushed as a constant as long as the kernel functions it
+     * depends on are still bound to their symbols.
+     */
+    @Override
+    void compile(CodeGen gen, boolean tail) {
+        Code code = gen.code();
+        Label stale = new Label();
+        Label end = new Label();
+        gen.pushConstant(this, "yale/analyze/FoldedNode");
+        code.invokevirtual("yale/analyze/FoldedNode", "isValid", "()Z");
+        code.ifeq(stale);
+        gen.pushConstant(this.value, CodeGen.SEXPR);
+        code.jump(end);
+        code.mark(stale);
+        gen.delegate(this, tail);
+        code.mark(end);
+    }
+
+    SExpr getValue() {
+        return this.value;
+    }
+
+    Symbol[] getDependencies() {
+        return this.dependencies;
+    }
+
+    /**
+     * @return True if the kernel functions involved are still bound to their
+     *         symbols. They are only looked up again after the root
+     *         environment has changed.
+     */
+    public boolean isValid() {
+        int version = this.root.getVersion();
+        if (version != this.checkedVersion) {
+            this.valid = true;
+            for (int i = 0; i < this.dependencies.length; ++i) {
+                if (this.root.findBinding(this.dependencies[i]) != this.functions[i]) {
+                    this.valid = false;
+                    break;
+                }
+            }
+            this.checkedVersion = version;
+        }
+        return this.valid;
+    }
+
+    @Override
+    public void write(ImageOutput out) throws IOException {
+        /* the functions are looked up again when the image is read */
+        out.writeByte(ImageInput.FOLDED_NODE);
+        out.writeSExpr(this.value);
+        out.writeSymbols(this.dependencies);
+        this.call.write(out);
+    }
+}
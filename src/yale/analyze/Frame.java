@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+
+/**
+ * Run-time storage for the local bindings introduced by a lambda or let form.
+ * Since the analyzer resolves every local variable to its position in the
+ * chain of frames (see {@link Scope}), bindings are not looked up by name, but
+ * by a number of parent hops and a slot index.
+ */
+public class Frame {
+
+    final SExpr[] slots;
+    final Frame parent;
+    /**
+     * The symbols bound in this frame (in slot order). These are only needed
+     * if a frame has to be accessed by name, e.g. by a special form which is
+     * passed around as a first-class object.
+     */
+    final Symbol[] variables;
+
+    public Frame(SExpr[] slots, Frame parent, Symbol[] variables) {
+        this.slots = slots;
+        this.parent = parent;
+        this.variables = variables;
+    }
+
+    /**
+     * @return The storage of this frame. Modifying the array changes the
+     *         bindings (used to fill frames restored from a snapshot).
+     */
+    public SExpr[] getSlots() {
+        return this.slots;
+    }
+
+    public Frame getParent() {
+        return this.parent;
+    }
+
+    public Symbol[] getVariables() {
+        return this.variables;
+    }
+
+    /**
+     * Find the slot index of _sym_ in this frame.
+     * 
+     * @return The slot index or -1 if _sym_ is not bound in this frame.
+     */
+    int indexOf(Symbol sym) {
+        for (int i = 0; i < this.variables.length; ++i) {
+            if (this.variables[i] == sym) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import yale.eval.Environment;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+
+/**
+ * Name-based view of a chain of frames. This is used whenever analyzed code
+ * hands control over to code which expects an {@link Environment}, e.g. a
+ * special form that was passed as a parameter and is therefore only known at
+ * runtime.
+ */
+public class FrameEnvironment extends Environment {
+
+    private Frame frame;
+
+    /**
+     * @param frame
+     *            The innermost frame of the chain.
+     * @param root
+     *            The root environment which is consulted if a symbol is not
+     *            bound in any frame.
+     */
+    public FrameEnvironment(Frame frame, Environment root) {
+        super(root);
+        this.frame = frame;
+    }
+
+    public Frame getFrame() {
+        return this.frame;
+    }
+
+    /**
+     * Create a name-based view of _frame_ or return _root_ itself if there is
+     * no frame.
+     */
+    static Environment of(Frame frame, Environment root) {
+        return frame == null ? root : new FrameEnvironment(frame, root);
+    }
+
+    @Override
+    public void updateBinding(Symbol sym, SExpr sexpr) {
+        for (Frame curr = this.frame; curr != null; curr = curr.parent) {
+            int slot = curr.indexOf(sym);
+            if (slot >= 0) {
+                curr.slots[slot] = sexpr;
+                return;
+            }
+        }
+        super.updateBinding(sym, sexpr);
+    }
+
+    @Override
+    public SExpr getBinding(Symbol sym) {
+        SExpr result = findInFrames(sym);
+        return result != null ? result : super.getBinding(sym);
+    }
+
+    @Override
+    public SExpr findBinding(Symbol sym) {
+        SExpr result = findInFrames(sym);
+        return result != null ? result : super.findBinding(sym);
+    }
+
+    private SExpr findInFrames(Symbol sym) {
+        for (Frame curr = this.frame; curr != null; curr = curr.parent) {
+            int slot = curr.indexOf(sym);
+            if (slot >= 0) {
+                return curr.slots[slot];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.io.IOException;
+
+import yale.eval.Environment;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.image.ImageInput;
+import yale.image.ImageOutput;
+
+/**
+ * Node which retrieves the value of a symbol that is not lexically bound, i.e.
+ * the value of its binding in the root environment.
+ * 
+ * The node caches the value it found together with the version of the root
+ * environment (see {@link Environment#getVersion()}). As long as no root
+ * binding is introduced or updated, the cached value is returned without a
+ * lookup. Since every call of a global function (such as map or nullp) has a
+ * global node as its operator, this acts as a monomorphic inline cache for
+ * these call sites.
+ */
+public class GlobalNode extends Node {
+
+    private Environment root;
+    private Symbol symbol;
+    private SExpr cachedValue;
+    private int cachedVersion;
+
+    public GlobalNode(Environment root, Symbol symbol) {
+        this.root = root;
+        this.symbol = symbol;
+    }
+
+    @Override
+    public SExpr exec(Frame frame) {
+        int version = this.root.getVersion();
+        if (this.cachedValue == null || this.cachedVersion != version) {
+            this.cachedValue = this.root.getBinding(this.symbol);
+            this.cachedVersion = version;
+        }
+        return this.cachedValue;
+    }
+
+    @Override
+    boolean isLeaf() {
+        return true;
+    }
+
+    Symbol getSymbol() {
+        return this.symbol;
+    }
+
+    @Override
+    public void write(ImageOutput out) throws IOException {
+        out.writeByte(ImageInput.GLOBAL_NODE);
+        out.writeSymbol(this.symbol);
+    }
+}
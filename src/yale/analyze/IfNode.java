@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.io.IOException;
+
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.image.ImageInput;
+import yale.image.ImageOutput;
+import yale.jit.Code;
+import yale.jit.Label;
+
+/**
+ * Analyzed form of the special form _if_.
+ */
+public class IfNode extends Node {
+
+    private Node condition;
+    private Node exprThen;
+    private Node exprElse;
+
+    public IfNode(Node condition, Node exprThen, Node exprElse) {
+        this.condition = condition;
+        this.exprThen = exprThen;
+        this.exprElse = exprElse;
+    }
+
+    @Override
+    public SExpr exec(Frame frame) {
+        if (this.condition.exec(frame) != Symbol.NIL) {
+            return this.exprThen.exec(frame);
+        } else {
+            return this.exprElse.exec(frame);
+        }
+    }
+
+    @Override
+    public SExpr execTail(Frame frame) {
+        if (this.condition.exec(frame) != Symbol.NIL) {
+            return this.exprThen.execTail(frame);
+        } else {
+            return this.exprElse.execTail(frame);
+        }
+    }
+
+    @Override
+    SExpr start(Machine m, Frame frame) {
+        if (this.condition.isLeaf()) {
+            return resume(m, frame, 0, null, this.condition.exec(frame));
+        }
+        m.push(this, frame, 0, null);
+        m.eval(this.condition, frame);
+        return null;
+    }
+
+    @Override
+    SExpr resume(Machine m, Frame frame, int step, Object stepData, SExpr value) {
+        m.eval(value != Symbol.NIL ? this.exprThen : this.exprElse, frame);
+        return null;
+    }
+
+    @Override
+    void compile(CodeGen gen, boolean tail) {
+        Code code = gen.code();
+        Label elseBranch = new Label();
+        Label end = new Label();
+        this.condition.compile(gen, false);
+        code.getstatic(CodeGen.SYMBOL, "NIL", "L" + CodeGen.SYMBOL + ";");
+        code.ifAcmpeq(elseBranch);
+        this.exprThen.compile(gen, tail);
+        code.jump(end);
+        code.mark(elseBranch);
+        this.exprElse.compile(gen, tail);
+        code.mark(end);
+    }
+
+    @Override
+    public void write(ImageOutput out) throws IOException {
+        out.writeByte(ImageInput.IF_NODE);
+        out.writeNode(this.condition);
+        out.writeNode(this.exprThen);
+        out.writeNode(this.exprElse);
+    }
+}
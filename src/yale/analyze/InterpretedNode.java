@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.io.IOException;
+
+import yale.eval.Environment;
+import yale.eval.SExpr;
+import yale.image.ImageInput;
+import yale.image.ImageOutput;
+
+/**
+ * Node which hands an s-expression over to the tree-walking interpreter. It
+ * is used for expressions the analyzer cannot handle, such as improper lists.
+ */
+public class InterpretedNode extends Node {
+
+    private Environment root;
+    private SExpr expr;
+
+    public InterpretedNode(Environment root, SExpr expr) {
+        this.root = root;
+        this.expr = expr;
+    }
+
+    @Override
+    public SExpr exec(Frame frame) {
+        return this.expr.eval(FrameEnvironment.of(frame, this.root));
+    }
+
+    @Override
+    public void write(ImageOutput out) throws IOException {
+        out.writeByte(ImageInput.INTERPRETED_NODE);
+        out.writeSExpr(this.expr);
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+
+import yale.eval.Environment;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.jit.ClassFile;
+import yale.jit.Code;
+import yale.main.Kernel;
+
+/**
+ * Compiles the bodies of frequently called lambda forms to JVM bytecode. Each
+ * body becomes a hidden class implementing {@link CompiledBody}, which is
+ * loaded into this package so that the generated code may access frames
+ * directly.
+ *
+ * Nodes the compiler has no special knowledge of are called through their
+ * {@link Node#exec} method, so every lambda body can be compiled. Calls of
+ * some kernel functions (e.g. + or car) are inlined as long as their root
+ * bindings have not been changed; if the root environment was modified, the
+ * compiled body is discarded (see {@link LambdaNode#deoptimize()}).
+ *
+ * The number of calls after which a lambda body is compiled can be set with
+ * the system property yale.jit.threshold.
+ */
+public class JitCompiler {
+
+    static final String CLASS_NAME = "yale/analyze/CompiledLambda";
+    static final String CONSTANTS = "k";
+
+    private static final int DEFAULT_THRESHOLD = 1000;
+
+    private Environment root;
+    private int threshold;
+    private int deoptimizations;
+    /**
+     * Kernel functions whose calls can be inlined, mapped to the name of the
+     * {@link JitRuntime} method implementing them. The key is the symbol and
+     * the number of operands (e.g. "+/2").
+     */
+    private Map<String, String> intrinsics = new HashMap<String, String>();
+    private Map<Symbol, SExpr> kernelFunctions = new HashMap<Symbol, SExpr>();
+
+    /**
+     * @param root
+     *            The root environment of a kernel. Like the special forms in
+     *            {@link Analyzer}, the kernel functions are looked up when the
+     *            compiler is created.
+     */
+    public JitCompiler(Environment root) {
+        this.root = root;
+        this.threshold = Math.max(1, Integer.getInteger("yale.jit.threshold", DEFAULT_THRESHOLD));
+        addIntrinsic(Kernel.ADD, 2, "add");
+        addIntrinsic(Kernel.SUB, 2, "subtract");
+        addIntrinsic(Kernel.MULT, 2, "multiply");
+        addIntrinsic(Kernel.GT, 2, "greater");
+        addIntrinsic(Kernel.EQL, 2, "eql");
+        addIntrinsic(Kernel.CONS, 2, "cons");
+        addIntrinsic(Kernel.CAR, 1, "car");
+        addIntrinsic(Kernel.CDR, 1, "cdr");
+        addIntrinsic(Kernel.NOT, 1, "not");
+        addIntrinsic(Kernel.NULLP, 1, "nullp");
+    }
+
+    private void addIntrinsic(Symbol sym, int operands, String method) {
+        this.intrinsics.put(sym.getName() + "/" + operands, method);
+        this.kernelFunctions.put(sym, this.root.getBinding(sym));
+    }
+
+    int getThreshold() {
+        return this.threshold;
+    }
+
+    /**
+     * Find the {@link JitRuntime} method which can replace a call of _sym_
+     * with _operands_ operands.
+     *
+     * @return The name of the method or null if the call cannot be inlined
+     *         (because there is no such method or the root binding of _sym_
+     *         is not the kernel function anymore).
+     */
+    String findIntrinsic(Symbol sym, int operands) {
+        String method = this.intrinsics.get(sym.getName() + "/" + operands);
+        if (method == null || this.root.findBinding(sym) != this.kernelFunctions.get(sym)) {
+            return null;
+        }
+        return method;
+    }
+
+    /**
+     * Needed by unit tests.
+     *
+     * @return The number of compiled bodies discarded so far (see
+     *         {@link LambdaNode#deoptimize()}).
+     */
+    public int getDeoptimizationCount() {
+        return this.deoptimizations;
+    }
+
+    void countDeoptimization() {
+        ++this.deoptimizations;
+    }
+
+    /**
+     * Compile the body of _lambda_.
+     *
+     * @return The compiled body or null if it could not be compiled (e.g.
+     *         because the bytecode would exceed the limits of a JVM method).
+     */
+    CompiledBody compile(LambdaNode lambda) {
+        ClassFile cf = new ClassFile(CLASS_NAME, "java/lang/Object", "yale/analyze/CompiledBody");
+        cf.addField(ClassFile.ACC_PRIVATE | ClassFile.ACC_FINAL, CONSTANTS, "[Ljava/lang/Object;");
+
+        Code init = cf.addMethod(ClassFile.ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", false);
+        init.aload(0);
+        init.invokespecial("java/lang/Object", "<init>", "()V");
+        init.aload(0);
+        init.aload(1);
+        init.putfield(CLASS_NAME, CONSTANTS, "[Ljava/lang/Object;");
+        init.vreturn();
+
+        Code code = cf.addMethod(ClassFile.ACC_PUBLIC, "execTail",
+                "(" + CodeGen.FRAME_DESC + ")" + CodeGen.SEXPR_DESC, false);
+        CodeGen gen = new CodeGen(this, code, lambda, this.root);
+        byte[] bytes;
+        try {
+            gen.compileLambdaBody();
+            bytes = cf.toByteArray();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+        try {
+            Class<?> cls = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+            return (CompiledBody) cls.getConstructor(Object[].class).newInstance((Object) gen.getConstants());
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Could not load compiled lambda form.", e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import yale.eval.Cons;
+import yale.eval.Function;
+import yale.eval.Number;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.eval.TailCall;
+import yale.main.Kernel;
+
+/**
+ * Static helpers called by compiled lambda bodies (see {@link JitCompiler}).
+ * The intrinsics behave exactly like the kernel functions they replace.
+ */
+final class JitRuntime {
+
+    private JitRuntime() {
+    }
+
+    static SExpr add(SExpr arg0, SExpr arg1) {
+        return Number.cast(arg0).add(Number.cast(arg1));
+    }
+
+    static SExpr subtract(SExpr arg0, SExpr arg1) {
+        return Number.cast(arg0).subtract(Number.cast(arg1));
+    }
+
+    static SExpr multiply(SExpr arg0, SExpr arg1) {
+        return Number.cast(arg0).multiply(Number.cast(arg1));
+    }
+
+    static SExpr greater(SExpr arg0, SExpr arg1) {
+        return Number.cast(arg0).compareTo(Number.cast(arg1)) > 0 ? Kernel.T : Symbol.NIL;
+    }
+
+    static SExpr eql(SExpr arg0, SExpr arg1) {
+        return arg0.equals(arg1) ? Kernel.T : Symbol.NIL;
+    }
+
+    static SExpr cons(SExpr arg0, SExpr arg1) {
+        return new Cons(arg0, arg1);
+    }
+
+    static SExpr car(SExpr arg0) {
+        return arg0.car();
+    }
+
+    static SExpr cdr(SExpr arg0) {
+        return arg0.cdr();
+    }
+
+    static SExpr not(SExpr arg0) {
+        return arg0 == Symbol.NIL ? Kernel.T : Symbol.NIL;
+    }
+
+    static SExpr nullp(SExpr arg0) {
+        return arg0 == Symbol.NIL ? Kernel.T : Symbol.NIL;
+    }
+
+    /**
+     * A call of _function_ in tail position (see {@link CallNode#execTail}).
+     */
+    static SExpr tailCall(Function function, SExpr[] args) {
+        if (function.supportsTailCalls()) {
+            return new TailCall(function, args);
+        }
+        return function.apply(args);
+    }
+
+    /**
+     * Check whether a call in tail position calls a closure of _lambda_ itself
+     * and can therefore be compiled into a jump to the start of the body.
+     *
+     * @return The frame for the next iteration or null if _function_ is not a
+     *         closure of _lambda_.
+     */
+    static Frame selfCallFrame(Function function, SExpr[] args, LambdaNode lambda) {
+        if (function instanceof Closure) {
+            Closure closure = (Closure) function;
+            if (closure.lambda == lambda) {
+                return new Frame(args, closure.defFrame, lambda.getVariables());
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.io.IOException;
+
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.image.ImageInput;
+import yale.image.ImageOutput;
+
+/**
+ * Analyzed form of the special form _lambda_. Executing this node creates a
+ * new closure over the current frame, the parameter list and the body are
+ * shared by all closures created from the same lambda form.
+ * 
+ * If a JIT compiler is available, the node counts how often closures created
+ * from it are invoked and has its body compiled once the compiler's threshold
+ * is reached.
+ */
+public class LambdaNode extends Node {
+
+    /**
+     * After this many deoptimizations, a lambda form is not compiled again.
+     */
+    private static final int MAX_DEOPTIMIZATIONS = 10;
+
+    private Symbol[] variables;
+    private Node[] body;
+    private JitCompiler jit;
+    private int invocations;
+    private int deoptimizations;
+    private CompiledBody compiled;
+
+    public LambdaNode(Symbol[] variables, Node[] body, JitCompiler jit) {
+        this.variables = variables;
+        this.body = body;
+        this.jit = jit;
+    }
+
+    @Override
+    public SExpr exec(Frame frame) {
+        return new Closure(this, frame);
+    }
+
+    @Override
+    boolean isLeaf() {
+        return true;
+    }
+
+    Symbol[] getVariables() {
+        return this.variables;
+    }
+
+    Node[] getBody() {
+        return this.body;
+    }
+
+    /**
+     * Called once per invocation of a closure created from this node.
+     * 
+     * @return The compiled body or null if the body should be executed by
+     *         the analyzed nodes.
+     */
+    CompiledBody enter() {
+        if (this.compiled == null && this.jit != null && ++this.invocations >= this.jit.getThreshold()) {
+            this.compiled = this.jit.compile(this);
+            if (this.compiled == null) {
+                this.jit = null; // not compilable, don't try again
+            }
+        }
+        return this.compiled;
+    }
+
+    /**
+     * Discard the compiled body because an assumption it was compiled under
+     * does not hold anymore. It may be compiled again later.
+     */
+    public void deoptimize() {
+        if (this.jit != null) {
+            this.jit.countDeoptimization();
+        }
+        this.compiled = null;
+        this.invocations = 0;
+        if (++this.deoptimizations >= MAX_DEOPTIMIZATIONS) {
+            this.jit = null;
+        }
+    }
+
+    @Override
+    public void write(ImageOutput out) throws IOException {
+        out.writeByte(ImageInput.LAMBDA_NODE);
+        out.writeSymbols(this.variables);
+        out.writeNodes(this.body);
+    }
+}
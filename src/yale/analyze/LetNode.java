@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.io.IOException;
+
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.image.ImageInput;
+import yale.image.ImageOutput;
+import yale.jit.Code;
+
+/**
+ * Analyzed form of the special forms _let_ and _letrec_.
+ */
+public class LetNode extends Node {
+
+    private boolean recursive;
+    private Symbol[] variables;
+    private Node[] values;
+    private Node[] body;
+
+    /**
+     * @param recursive
+     *            If true, the values are executed in the frame that contains
+     *            the new bindings (letrec semantics, see
+     *            {@link yale.eval.Let}).
+     */
+    public LetNode(boolean recursive, Symbol[] variables, Node[] values, Node[] body) {
+        this.recursive = recursive;
+        this.variables = variables;
+        this.values = values;
+        this.body = body;
+    }
+
+    @Override
+    public SExpr exec(Frame frame) {
+        return Node.execBody(this.body, bind(frame));
+    }
+
+    @Override
+    public SExpr execTail(Frame frame) {
+        return Node.execBodyTail(this.body, bind(frame));
+    }
+
+    /**
+     * The continuation is pushed with the new frame, the step is the index of
+     * the value being executed.
+     */
+    @Override
+    SExpr start(Machine m, Frame frame) {
+        if (this.variables.length == 0) {
+            m.evalBody(this.body, frame);
+            return null;
+        }
+        Frame subFrame = new Frame(new SExpr[this.variables.length], frame, this.variables);
+        m.push(this, subFrame, 0, null);
+        m.eval(this.values[0], this.recursive ? subFrame : frame);
+        return null;
+    }
+
+    @Override
+    SExpr resume(Machine m, Frame frame, int step, Object stepData, SExpr value) {
+        frame.slots[step] = value;
+        int next = step + 1;
+        if (next < this.values.length) {
+            m.push(this, frame, next, null);
+            m.eval(this.values[next], this.recursive ? frame : frame.parent);
+        } else {
+            m.evalBody(this.body, frame);
+        }
+        return null;
+    }
+
+    /**
+     * Like {@link #bind}, the new frame is stored in a local variable of the
+     * compiled method, so the body can access it without parent hops.
+     */
+    @Override
+    void compile(CodeGen gen, boolean tail) {
+        if (this.variables.length == 0) {
+            gen.compileBody(this.body, tail);
+            return;
+        }
+        Code code = gen.code();
+        int slots = code.newLocal();
+        int subFrame = code.newLocal();
+        code.pushInt(this.variables.length);
+        code.anewarray(CodeGen.SEXPR);
+        code.astore(slots);
+        code.anew(CodeGen.FRAME);
+        code.dup();
+        code.aload(slots);
+        gen.loadFrame(0);
+        gen.pushConstant(this.variables, "[L" + CodeGen.SYMBOL + ";");
+        code.invokespecial(CodeGen.FRAME, "<init>",
+                "([" + CodeGen.SEXPR_DESC + CodeGen.FRAME_DESC + "[L" + CodeGen.SYMBOL + ";)V");
+        code.astore(subFrame);
+        if (this.recursive) {
+            gen.pushFrame(subFrame);
+        }
+        for (int i = 0; i < this.values.length; ++i) {
+            code.aload(slots);
+            code.pushInt(i);
+            this.values[i].compile(gen, false);
+            code.aastore();
+        }
+        if (!this.recursive) {
+            gen.pushFrame(subFrame);
+        }
+        gen.compileBody(this.body, tail);
+        gen.popFrame();
+    }
+
+    /**
+     * Create the frame holding the bindings of this form.
+     */
+    private Frame bind(Frame frame) {
+        if (this.variables.length == 0) {
+            /* no bindings, no frame (see Scope) */
+            return frame;
+        }
+        SExpr[] slots = new SExpr[this.variables.length];
+        Frame subFrame = new Frame(slots, frame, this.variables);
+        Frame evaluateIn = this.recursive ? subFrame : frame;
+        for (int i = 0; i < slots.length; ++i) {
+            slots[i] = this.values[i].exec(evaluateIn);
+        }
+        return subFrame;
+    }
+
+    @Override
+    public void write(ImageOutput out) throws IOException {
+        out.writeByte(ImageInput.LET_NODE);
+        out.writeBoolean(this.recursive);
+        out.writeSymbols(this.variables);
+        out.writeNodes(this.values);
+        out.writeNodes(this.body);
+    }
+}
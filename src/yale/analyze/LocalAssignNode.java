@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.io.IOException;
+
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.image.ImageInput;
+import yale.image.ImageOutput;
+
+/**
+ * Analyzed form of the special form _assign_ for a lexically bound symbol.
+ */
+public class LocalAssignNode extends Node {
+
+    private Symbol symbol;
+    private int depth;
+    private int slot;
+    private Node value;
+
+    public LocalAssignNode(Symbol symbol, int depth, int slot, Node value) {
+        this.symbol = symbol;
+        this.depth = depth;
+        this.slot = slot;
+        this.value = value;
+    }
+
+    @Override
+    public SExpr exec(Frame frame) {
+        return store(frame, this.value.exec(frame));
+    }
+
+    @Override
+    SExpr start(Machine m, Frame frame) {
+        m.push(this, frame, 0, null);
+        m.eval(this.value, frame);
+        return null;
+    }
+
+    @Override
+    SExpr resume(Machine m, Frame frame, int step, Object stepData, SExpr value) {
+        return store(frame, value);
+    }
+
+    private SExpr store(Frame frame, SExpr result) {
+        Frame curr = frame;
+        for (int i = this.depth; i > 0; --i) {
+            curr = curr.parent;
+        }
+        curr.slots[this.slot] = result;
+        return this.symbol;
+    }
+
+    @Override
+    public void write(ImageOutput out) throws IOException {
+        out.writeByte(ImageInput.LOCAL_ASSIGN_NODE);
+        out.writeSymbol(this.symbol);
+        out.writeInt(this.depth);
+        out.writeInt(this.slot);
+        out.writeNode(this.value);
+    }
+}
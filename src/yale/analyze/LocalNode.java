@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.io.IOException;
+
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.image.ImageInput;
+import yale.image.ImageOutput;
+import yale.jit.Code;
+import yale.jit.Label;
+
+/**
+ * Node which retrieves the value of a lexically bound symbol from the frame
+ * identified by _depth_ (the number of parent hops) and _slot_.
+ */
+public class LocalNode extends Node {
+
+    private Symbol symbol;
+    private int depth;
+    private int slot;
+
+    public LocalNode(Symbol symbol, int depth, int slot) {
+        this.symbol = symbol;
+        this.depth = depth;
+        this.slot = slot;
+    }
+
+    @Override
+    public SExpr exec(Frame frame) {
+        Frame curr = frame;
+        for (int i = this.depth; i > 0; --i) {
+            curr = curr.parent;
+        }
+        SExpr result = curr.slots[this.slot];
+        if (result == null) {
+            /* only possible while the values of a letrec form are executed */
+            throw new RuntimeException("Symbol " + this.symbol + " is unbound.");
+        }
+        return result;
+    }
+
+    @Override
+    boolean isLeaf() {
+        return true;
+    }
+
+    /**
+     * The value is read from the frame directly; only if it is unbound, this
+     * node is executed to raise the error.
+     */
+    @Override
+    void compile(CodeGen gen, boolean tail) {
+        Code code = gen.code();
+        Label bound = new Label();
+        gen.loadFrame(this.depth);
+        code.getfield(CodeGen.FRAME, "slots", "[" + CodeGen.SEXPR_DESC);
+        code.pushInt(this.slot);
+        code.aaload();
+        code.dup();
+        code.ifnonnull(bound);
+        code.pop();
+        gen.delegate(this, false);
+        code.mark(bound);
+    }
+
+    @Override
+    public void write(ImageOutput out) throws IOException {
+        out.writeByte(ImageInput.LOCAL_NODE);
+        out.writeSymbol(this.symbol);
+        out.writeInt(this.depth);
+        out.writeInt(this.slot);
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import yale.eval.Function;
+import yale.eval.SExpr;
+
+/**
+ * Executes analyzed nodes with an explicit control stack kept on the heap
+ * instead of recursive calls of {@link Node#exec}. Hence, the recursion depth
+ * of a program (e.g. non-tail recursive functions walking a long list) is
+ * only limited by the available heap space.
+ *
+ * Every entry of the control stack is a continuation consisting of the node
+ * waiting for a value, the frame it is executed in, an integer telling the
+ * node how far it has got and an optional object with intermediate results
+ * (e.g. the arguments of a call evaluated so far). The entries are stored in
+ * parallel arrays, so a level of recursion costs a few words.
+ *
+ * Nodes take part through {@link Node#start} and {@link Node#resume}. Nodes
+ * which do not override these methods are executed by {@link Node#exec}.
+ */
+public class Machine {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private Node[] nodes = new Node[INITIAL_CAPACITY];
+    private Frame[] frames = new Frame[INITIAL_CAPACITY];
+    private int[] steps = new int[INITIAL_CAPACITY];
+    private Object[] data = new Object[INITIAL_CAPACITY];
+    private int sp;
+
+    /** The node to be executed next, set by {@link #eval}. */
+    private Node next;
+    private Frame nextFrame;
+
+    /**
+     * Execute _node_ in _frame_.
+     *
+     * @return The value of _node_.
+     */
+    public SExpr execute(Node node, Frame frame) {
+        int base = this.sp;
+        Node current = node;
+        Frame currentFrame = frame;
+        try {
+            while (true) {
+                SExpr value = current.start(this, currentFrame);
+                while (value != null) {
+                    if (this.sp == base) {
+                        return value;
+                    }
+                    int top = --this.sp;
+                    Node waiting = this.nodes[top];
+                    Frame waitingFrame = this.frames[top];
+                    Object waitingData = this.data[top];
+                    this.nodes[top] = null;
+                    this.frames[top] = null;
+                    this.data[top] = null;
+                    value = waiting.resume(this, waitingFrame, this.steps[top], waitingData, value);
+                }
+                current = this.next;
+                currentFrame = this.nextFrame;
+            }
+        } finally {
+            /* drop the continuations of an aborted execution */
+            while (this.sp > base) {
+                --this.sp;
+                this.nodes[this.sp] = null;
+                this.frames[this.sp] = null;
+                this.data[this.sp] = null;
+            }
+            this.next = null;
+            this.nextFrame = null;
+        }
+    }
+
+    /**
+     * Push a continuation: once the node passed to the next call of
+     * {@link #eval} has a value, {@link Node#resume} is called on _node_.
+     */
+    void push(Node node, Frame frame, int step, Object stepData) {
+        if (this.sp == this.nodes.length) {
+            grow();
+        }
+        this.nodes[this.sp] = node;
+        this.frames[this.sp] = frame;
+        this.steps[this.sp] = step;
+        this.data[this.sp] = stepData;
+        ++this.sp;
+    }
+
+    /**
+     * Make _node_ the next node to be executed. Called by {@link Node#start}
+     * and {@link Node#resume} right before they return null.
+     */
+    void eval(Node node, Frame frame) {
+        this.next = node;
+        this.nextFrame = frame;
+    }
+
+    /**
+     * Execute a body in _frame_, its final node without a continuation of its
+     * own (i.e. in tail position).
+     */
+    void evalBody(Node[] body, Frame frame) {
+        if (body.length > 1) {
+            push(Sequence.INSTANCE, frame, 1, body);
+        }
+        eval(body[0], frame);
+    }
+
+    /**
+     * Apply _function_ to _args_. Closures are applied by executing their
+     * body on this machine.
+     *
+     * @return The value of the application or null if the body of a closure
+     *         is executed next.
+     */
+    SExpr apply(Function function, SExpr[] args) {
+        if (function instanceof Closure) {
+            Closure closure = (Closure) function;
+            evalBody(closure.lambda.getBody(), closure.bind(args));
+            return null;
+        }
+        return function.apply(args);
+    }
+
+    /**
+     * Apply _function_ to _args_ from outside of a node (e.g. a kernel
+     * function calling back a function passed to it). The body of a closure
+     * is executed on this machine, so its recursion depth is not limited by
+     * the Java stack.
+     *
+     * @return The value of the application.
+     */
+    public SExpr call(Function function, SExpr[] args) {
+        if (!(function instanceof Closure)) {
+            return function.apply(args);
+        }
+        Closure closure = (Closure) function;
+        Node[] body = closure.lambda.getBody();
+        Frame frame = closure.bind(args);
+        for (int i = 0; i < body.length - 1; ++i) {
+            execute(body[i], frame);
+        }
+        return execute(body[body.length - 1], frame);
+    }
+
+    private void grow() {
+        int capacity = this.nodes.length * 2;
+        Node[] newNodes = new Node[capacity];
+        Frame[] newFrames = new Frame[capacity];
+        int[] newSteps = new int[capacity];
+        Object[] newData = new Object[capacity];
+        System.arraycopy(this.nodes, 0, newNodes, 0, this.sp);
+        System.arraycopy(this.frames, 0, newFrames, 0, this.sp);
+        System.arraycopy(this.steps, 0, newSteps, 0, this.sp);
+        System.arraycopy(this.data, 0, newData, 0, this.sp);
+        this.nodes = newNodes;
+        this.frames = newFrames;
+        this.steps = newSteps;
+        this.data = newData;
+    }
+
+    /**
+     * Continuation of a body with more than one node. The step is the index of
+     * the next node of the body.
+     */
+    private static class Sequence extends Node {
+
+        static final Sequence INSTANCE = new Sequence();
+
+        @Override
+        public SExpr exec(Frame frame) {
+            throw new IllegalStateException();
+        }
+
+        @Override
+        SExpr resume(Machine m, Frame frame, int step, Object stepData, SExpr value) {
+            Node[] body = (Node[]) stepData;
+            if (step + 1 < body.length) {
+                m.push(this, frame, step + 1, body);
+            }
+            m.eval(body[step], frame);
+            return null;
+        }
+    }
+}
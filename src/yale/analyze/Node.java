@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import java.io.IOException;
+
+import yale.eval.SExpr;
+import yale.image.ImageOutput;
+
+/**
+ * Base class of all executable nodes. A tree of nodes is the result of
+ * analyzing an s-expression (see {@link Analyzer}): all decisions that only
+ * depend on the shape of the expression (e.g. whether a list denotes a special
+ * form or a function call) are made once during analysis and are not repeated
+ * every time the node is executed.
+ */
+public abstract class Node {
+
+    /**
+     * Execute this node with local variable bindings stored in _frame_.
+     * 
+     * @param frame
+     *            The innermost frame of the context in which the node is
+     *            executed or null if the node is executed at top-level.
+     * @return The value of the analyzed s-expression.
+     * @throws java.lang.RuntimeException
+     *             in case there are any errors (such as unbound symbols, an
+     *             operation on a value is not supported etc.)
+     */
+    public abstract SExpr exec(Frame frame);
+
+    /**
+     * Execute this node in tail position. Like
+     * {@link SExpr#evalTail(yale.eval.Environment)}, this method may return an
+     * unfinished {@link yale.eval.TailCall} instead of a final value.
+     */
+    public SExpr execTail(Frame frame) {
+        return exec(frame);
+    }
+
+    /**
+     * Start executing this node on _m_ (see {@link Machine}). A node whose
+     * value depends on other nodes pushes a continuation for itself, selects
+     * the next node with {@link Machine#eval} and returns null. By default,
+     * the node is executed by {@link #exec}.
+     * 
+     * @return The value of this node or null if it is not known yet.
+     */
+    SExpr start(Machine m, Frame frame) {
+        return exec(frame);
+    }
+
+    /**
+     * @return True if executing this node never executes other nodes (or
+     *         user code), so a {@link Machine} may execute it by calling
+     *         {@link #exec} directly instead of scheduling it.
+     */
+    boolean isLeaf() {
+        return false;
+    }
+
+    /**
+     * Continue executing this node on _m_ after the node selected in the last
+     * step has produced _value_.
+     * 
+     * @param step
+     *            The step passed to {@link Machine#push}.
+     * @param stepData
+     *            The intermediate results passed to {@link Machine#push}.
+     * @return The value of this node or null if it is not known yet.
+     */
+    SExpr resume(Machine m, Frame frame, int step, Object stepData, SExpr value) {
+        throw new IllegalStateException("Unexpected continuation.");
+    }
+
+    /**
+     * Emit bytecode which leaves the value of this node on the operand stack
+     * (see {@link JitCompiler}). By default, the generated code simply calls
+     * {@link #exec} or {@link #execTail} on this node.
+     * 
+     * @param tail
+     *            True if the node is in tail position of the compiled lambda
+     *            body, i.e. the generated code may produce a
+     *            {@link yale.eval.TailCall}.
+     */
+    void compile(CodeGen gen, boolean tail) {
+        gen.delegate(this, tail);
+    }
+
+    /**
+     * Write this node to an image (see {@link yale.image.StdlibImage}), so it
+     * can be read by {@link yale.image.ImageInput#readNode} without analyzing
+     * its s-expression again.
+     * 
+     * @throws IOException
+     *             if the node cannot be written (e.g. because it refers to
+     *             values other than symbols, numbers and lists).
+     */
+    public void write(ImageOutput out) throws IOException {
+        throw new IOException("Cannot write " + getClass().getSimpleName() + ".");
+    }
+
+    /**
+     * Execute a body (of a lambda or let form) in _frame_. All but the final node
+     * are executed for their side-effects only.
+     * 
+     * @return The value of the final node of the body.
+     */
+    static SExpr execBody(Node[] body, Frame frame) {
+        int last = body.length - 1;
+        for (int i = 0; i < last; ++i) {
+            body[i].exec(frame);
+        }
+        return body[last].exec(frame);
+    }
+
+    /**
+     * Like {@link #execBody}, but the final node is executed in tail position.
+     */
+    static SExpr execBodyTail(Node[] body, Frame frame) {
+        int last = body.length - 1;
+        for (int i = 0; i < last; ++i) {
+            body[i].exec(frame);
+        }
+        return body[last].execTail(frame);
+    }
+}
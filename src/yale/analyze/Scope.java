@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.analyze;
+
+import yale.eval.Symbol;
+
+/**
+ * Compile-time counterpart of a {@link Frame}: records which symbols are bound
+ * by the enclosing lambda and let forms of an expression that is being
+ * analyzed. Forms which do not bind any symbols do not introduce a scope, and
+ * consequently no frame at runtime.
+ */
+class Scope {
+
+    private Symbol[] variables;
+    private Scope parent;
+
+    private Scope(Symbol[] variables, Scope parent) {
+        this.variables = variables;
+        this.parent = parent;
+    }
+
+    /**
+     * Create the scope for a form binding _variables_ inside _parent_.
+     * 
+     * @return The new scope or _parent_ if _variables_ is empty.
+     */
+    static Scope extend(Scope parent, Symbol[] variables) {
+        return variables.length == 0 ? parent : new Scope(variables, parent);
+    }
+
+    /**
+     * Determine the lexical address of _sym_.
+     * 
+     * @return Array containing depth (number of parent hops) and slot index or
+     *         null if _sym_ is not lexically bound.
+     */
+    static int[] lookup(Scope scope, Symbol sym) {
+        int depth = 0;
+        for (Scope curr = scope; curr != null; curr = curr.parent) {
+            for (int slot = 0; slot < curr.variables.length; ++slot) {
+                if (curr.variables[slot] == sym) {
+                    return new int[] { depth, slot };
+                }
+            }
+            ++depth;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+/**
+ * A cdr-coded list: the elements of a list are stored in one array instead
+ * of one cons pair each, which takes a sixth of the memory of cons pairs and
+ * keeps the elements next to each other. Long lists created in bulk (e.g. by
+ * the parser) use this representation (see {@link #of}).
+ *
+ * A compact list is a cons pair whose car is the element at its offset into
+ * the array. Its cdr is a new compact list for the next offset (or the tail
+ * after the last element), which is created on demand and not kept, so
+ * walking the list with cdr allocates short-lived objects only and the list
+ * takes no more memory afterwards. Since there may be several objects for the
+ * same position, compact lists are compared by their array and offset rather
+ * than by identity. Functions that know about compact lists
+ * ({@link #length}, {@link #nthCdr}, {@link #toArray}) skip the elements of
+ * an array in constant time.
+ */
+public class CompactList extends Cons {
+
+    /**
+     * Lists with fewer elements are built from cons pairs.
+     */
+    public static final int MIN_LENGTH = 16;
+
+    private final SExpr[] elements;
+    private final int offset;
+
+    /**
+     * The cdr of the cons pair holds the tail of the list (the object after
+     * the last element).
+     */
+    private CompactList(SExpr[] elements, int offset, SExpr tail, boolean constant) {
+        super(elements[offset], tail, constant);
+        this.elements = elements;
+        this.offset = offset;
+    }
+
+    /**
+     * Create the list of _elements_ followed by _tail_ (nil for a proper
+     * list). The array is not copied, so the caller must not modify it
+     * afterwards.
+     */
+    public static SExpr of(SExpr[] elements, SExpr tail, boolean constant) {
+        if (elements.length >= MIN_LENGTH) {
+            return new CompactList(elements, 0, tail, constant);
+        }
+        SExpr list = tail;
+        for (int i = elements.length - 1; i >= 0; --i) {
+            list = new Cons(elements[i], list, constant);
+        }
+        return list;
+    }
+
+    public static SExpr of(SExpr[] elements) {
+        return of(elements, Symbol.NIL, false);
+    }
+
+    /**
+     * @return The object after the last element of the array (nil for a
+     *         proper list).
+     */
+    public SExpr tail() {
+        return super.cdr();
+    }
+
+    /**
+     * @return The array shared by all objects of this list. It must not be
+     *         modified.
+     */
+    public SExpr[] getElements() {
+        return this.elements;
+    }
+
+    /**
+     * @return The index of the car of this list into {@link #getElements()}.
+     */
+    public int getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * @return The number of elements stored in the array from this list on.
+     */
+    private int size() {
+        return this.elements.length - this.offset;
+    }
+
+    @Override
+    public SExpr cdr() {
+        if (this.offset + 1 < this.elements.length) {
+            return new CompactList(this.elements, this.offset + 1, tail(), isConstant());
+        }
+        return tail();
+    }
+
+    @Override
+    protected SExpr markElementsConstant() {
+        for (int i = this.offset; i < this.elements.length; ++i) {
+            markConstant(this.elements[i]);
+        }
+        return tail();
+    }
+
+    /**
+     * @return The number of elements of _list_.
+     * @throws RuntimeException
+     *             If _list_ is not a proper list.
+     */
+    public static int length(SExpr list) {
+        int length = 0;
+        SExpr curr = list;
+        while (curr instanceof Cons) {
+            if (curr instanceof CompactList) {
+                CompactList compact = (CompactList) curr;
+                length += compact.size();
+                curr = compact.tail();
+            } else {
+                ++length;
+                curr = curr.cdr();
+            }
+        }
+        if (curr != Symbol.NIL) {
+            throw new RuntimeException("Object " + list + " is not a list.");
+        }
+        return length;
+    }
+
+    /**
+     * @return The rest of _list_ after its first _n_ elements or the atom
+     *         ending _list_ (nil for a proper list) if it is shorter.
+     */
+    public static SExpr nthCdr(SExpr list, long n) {
+        SExpr curr = list;
+        while (n > 0 && curr instanceof Cons) {
+            if (curr instanceof CompactList) {
+                CompactList compact = (CompactList) curr;
+                if (n < compact.size()) {
+                    return new CompactList(compact.elements, compact.offset + (int) n, compact.tail(),
+                            compact.isConstant());
+                }
+                n -= compact.size();
+                curr = compact.tail();
+            } else {
+                curr = curr.cdr();
+                --n;
+            }
+        }
+        return curr;
+    }
+
+    /**
+     * @return The elements of _list_.
+     * @throws RuntimeException
+     *             If _list_ is not a proper list.
+     */
+    public static SExpr[] toArray(SExpr list) {
+        SExpr[] result = new SExpr[length(list)];
+        int i = 0;
+        SExpr curr = list;
+        while (curr != Symbol.NIL) {
+            if (curr instanceof CompactList) {
+                CompactList compact = (CompactList) curr;
+                System.arraycopy(compact.elements, compact.offset, result, i, compact.size());
+                i += compact.size();
+                curr = compact.tail();
+            } else {
+                result[i++] = curr.car();
+                curr = curr.cdr();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof CompactList)) {
+            return false;
+        }
+        CompactList other = (CompactList) obj;
+        return this.elements == other.elements && this.offset == other.offset;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(this.elements) + this.offset;
+    }
+}
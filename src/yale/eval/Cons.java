@@ -18,10 +18,52 @@ public class Cons extends SExpr {
 
     private SExpr car;
     private SExpr cdr;
+    /**
+     * True if this cons pair is part of quoted data. Such data is never
+     * modified, so it may be shared safely (e.g. by the constant folder).
+     */
+    private boolean constant;
 
     public Cons(SExpr car, SExpr cdr) {
+        this(car, cdr, false);
+    }
+
+    public Cons(SExpr car, SExpr cdr, boolean constant) {
         this.car = car;
         this.cdr = cdr;
+        this.constant = constant;
+    }
+
+    public boolean isConstant() {
+        return this.constant;
+    }
+
+    /**
+     * Mark all cons pairs reachable from _expr_ as constant (see
+     * {@link #isConstant()}). Cons pairs which are already constant are
+     * assumed to be the root of constant data and are not traversed.
+     * 
+     * @return _expr_
+     */
+    public static SExpr markConstant(SExpr expr) {
+        SExpr curr = expr;
+        while (curr instanceof Cons && !((Cons) curr).constant) {
+            Cons cons = (Cons) curr;
+            cons.constant = true;
+            curr = cons.markElementsConstant();
+        }
+        return expr;
+    }
+
+    /**
+     * Mark the elements stored in this object constant (see
+     * {@link #markConstant}).
+     * 
+     * @return The rest of the list after these elements.
+     */
+    protected SExpr markElementsConstant() {
+        markConstant(this.car);
+        return this.cdr;
     }
 
     /**
@@ -32,10 +74,9 @@ public class Cons extends SExpr {
     @Override
     public SExpr eval(Environment env) {
         SExpr form = this.car.eval(env);
-        List<SExpr> params = null;
         if (form.isFunction()) { // If the form is a function, evaluate all of
                                  // its parameters.
-            params = getParameters(true, env);
+            return ((Function) form).apply(getArguments(env));
         }
         /*
          * The parameters passed to a special form are not evaluated. If some
@@ -43,9 +84,29 @@ public class Cons extends SExpr {
          * it.
          */
         else if (form.isSpecialForm()) {
-            params = getParameters(false, env);
+            return form.apply(getParameters(), env);
         }
-        return form.apply(params, env);
+        return form.apply(null, env);
+    }
+
+    /**
+     * In tail position, function applications are not carried out but
+     * returned as {@link TailCall}. Special forms are applied in tail position
+     * themselves.
+     */
+    @Override
+    public SExpr evalTail(Environment env) {
+        SExpr form = this.car.eval(env);
+        if (form.isFunction()) {
+            Function function = (Function) form;
+            if (function.supportsTailCalls()) {
+                return new TailCall(function, getArguments(env));
+            }
+            return function.apply(getArguments(env));
+        } else if (form.isSpecialForm()) {
+            return form.applyTail(getParameters(), env);
+        }
+        return form.apply(null, env);
     }
 
     @Override
@@ -63,22 +124,42 @@ public class Cons extends SExpr {
         return true;
     }
 
-    private List<SExpr> getParameters(boolean evaluate, Environment env) {
-        SExpr currCdr = cdr;
+    private List<SExpr> getParameters() {
+        SExpr currCdr = cdr();
         List<SExpr> parameters = new LinkedList<SExpr>();
-        while (!currCdr.equals(Symbol.NIL)) {
-            parameters.add(evaluate ? currCdr.car().eval(env) : currCdr.car());
+        while (currCdr != Symbol.NIL) {
+            parameters.add(currCdr.car());
             currCdr = currCdr.cdr();
         }
         return parameters;
     }
 
+    /**
+     * Evaluate the parameters of a function application.
+     */
+    private SExpr[] getArguments(Environment env) {
+        int size = 0;
+        for (SExpr currCdr = cdr(); currCdr != Symbol.NIL; currCdr = currCdr.cdr()) {
+            ++size;
+        }
+        if (size == 0) {
+            return Function.NO_ARGS;
+        }
+        SExpr[] args = new SExpr[size];
+        SExpr currCdr = cdr();
+        for (int i = 0; i < size; ++i) {
+            args[i] = currCdr.car().eval(env);
+            currCdr = currCdr.cdr();
+        }
+        return args;
+    }
+
     @Override
     public String toString() {
         StringBuffer sb = new StringBuffer();
         SExpr iter = this;
         sb.append(Token.PARENS_OPEN);
-        while (!iter.equals(Symbol.NIL)) {
+        while (iter != Symbol.NIL) {
             sb.append(iter.car().toString() + " ");
             iter = iter.cdr();
         }
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * A vector of numbers stored as primitive doubles. Unlike all other numbers in
+ * yale, the elements of such a vector are inexact: a number is rounded to the
+ * nearest double when it is stored and read back as the shortest decimal that
+ * rounds to the same double (e.g. 0.1 is read back as 0.1 and 3 as 3.0).
+ */
+public class DoubleVector extends Vector {
+
+    private double[] elements;
+
+    /**
+     * Create a vector of _length_ elements, all set to _fill_.
+     */
+    public DoubleVector(int length, double fill) {
+        this.elements = new double[length];
+        Arrays.fill(this.elements, fill);
+    }
+
+    @Override
+    public int length() {
+        return this.elements.length;
+    }
+
+    public double getDouble(int index) {
+        return this.elements[index];
+    }
+
+    public void setDouble(int index, double value) {
+        this.elements[index] = value;
+    }
+
+    @Override
+    public SExpr get(int index) {
+        return Number.valueOf(BigDecimal.valueOf(this.elements[index]));
+    }
+
+    @Override
+    public void set(int index, SExpr value) {
+        this.elements[index] = toDouble(value);
+    }
+
+    /**
+     * @throws RuntimeException
+     *             If _value_ is not a number within the range of doubles.
+     */
+    public static double toDouble(SExpr value) {
+        Number num = Number.cast(value);
+        double result = num.isFixnum() ? (double) num.getFixnum() : num.getNumericValue().doubleValue();
+        if (Double.isInfinite(result)) {
+            throw new RuntimeException(String.format("%s cannot be stored in a double vector.", value));
+        }
+        return result;
+    }
+}
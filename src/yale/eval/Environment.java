@@ -5,7 +5,9 @@
  */
 package yale.eval;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * This class represents a set of bindings between symbols and s-expresions. An
@@ -17,6 +19,17 @@ public class Environment {
 
     private Environment parent;
     private HashMap<Symbol, SExpr> bindings;
+    /**
+     * Incremented whenever a binding of this environment is introduced or
+     * updated. Compiled code uses the version of the root environment to
+     * detect that the bindings it was specialized on might have changed.
+     */
+    private int version;
+    /**
+     * Definitions which are loaded the first time their symbol is looked up
+     * (see {@link #defineLazily}), null if there are none.
+     */
+    private HashMap<Symbol, LazyDefinition> lazyDefinitions;
 
     public Environment() {
         this(null);
@@ -39,10 +52,71 @@ public class Environment {
      *             If a binding for _sym_ already exists in this environment.
      */
     public void defineBinding(Symbol sym, SExpr sexpr) {
-        if (this.bindings.containsKey(sym)) {
+        if (this.bindings.containsKey(sym) || isLazilyDefined(sym)) {
             throw new RuntimeException("Binding for " + sym + " already exists.");
         }
         this.bindings.put(sym, sexpr);
+        ++this.version;
+    }
+
+    /**
+     * Register a definition of _sym_ which is loaded the first time _sym_ is
+     * looked up in this environment, i.e. _definition_ is expected to create
+     * the binding with {@link #defineBinding}. Until then, _sym_ counts as
+     * bound (e.g. it cannot be defined again).
+     * 
+     * @throws RuntimeException
+     *             If a binding for _sym_ already exists in this environment.
+     */
+    public void defineLazily(Symbol sym, LazyDefinition definition) {
+        if (this.bindings.containsKey(sym) || isLazilyDefined(sym)) {
+            throw new RuntimeException("Binding for " + sym + " already exists.");
+        }
+        if (this.lazyDefinitions == null) {
+            this.lazyDefinitions = new HashMap<Symbol, LazyDefinition>();
+        }
+        this.lazyDefinitions.put(sym, definition);
+    }
+
+    private boolean isLazilyDefined(Symbol sym) {
+        return this.lazyDefinitions != null && this.lazyDefinitions.containsKey(sym);
+    }
+
+    /**
+     * Load the lazy definition of _sym_ if there is one. The definition is
+     * removed while it is loaded, so that it can define _sym_. If loading
+     * fails, it is kept for the next lookup.
+     * 
+     * @return The value _sym_ is bound to afterwards or null.
+     */
+    private SExpr loadLazily(Symbol sym) {
+        if (this.lazyDefinitions == null) {
+            return null;
+        }
+        LazyDefinition definition = this.lazyDefinitions.remove(sym);
+        if (definition == null) {
+            return null;
+        }
+        boolean loaded = false;
+        try {
+            definition.load();
+            loaded = true;
+        } finally {
+            if (!loaded && !this.bindings.containsKey(sym)) {
+                this.lazyDefinitions.put(sym, definition);
+            }
+        }
+        return this.bindings.get(sym);
+    }
+
+    /**
+     * Load all lazy definitions of this environment that have not been loaded
+     * yet, e.g. before all bindings are saved.
+     */
+    public void loadLazyDefinitions() {
+        while (this.lazyDefinitions != null && !this.lazyDefinitions.isEmpty()) {
+            loadLazily(this.lazyDefinitions.keySet().iterator().next());
+        }
     }
 
     /**
@@ -58,8 +132,9 @@ public class Environment {
      *             If no existing binding for _sym_ can be retrieved.
      */
     public void updateBinding(Symbol sym, SExpr sexpr) {
-        if (this.bindings.containsKey(sym)) {
+        if (this.bindings.containsKey(sym) || loadLazily(sym) != null) {
             this.bindings.put(sym, sexpr);
+            ++this.version;
         } else if (this.parent != null) {
             parent.updateBinding(sym, sexpr);
         } else {
@@ -67,6 +142,21 @@ public class Environment {
         }
     }
 
+    /**
+     * @return The parent environment or null if this is a root environment.
+     */
+    public Environment getParent() {
+        return this.parent;
+    }
+
+    /**
+     * @return A read-only view of the bindings of this environment (without
+     *         those of its parents).
+     */
+    public Map<Symbol, SExpr> getBindings() {
+        return Collections.unmodifiableMap(this.bindings);
+    }
+
     /**
      * Get value of binding identified by _sym_ and look in parent environment
      * if _sym_ is unbound in the current environment.
@@ -80,6 +170,10 @@ public class Environment {
     public SExpr getBinding(Symbol sym) {
         SExpr result = this.bindings.get(sym);
         if (result == null && parent == null) {
+            result = loadLazily(sym);
+            if (result != null) {
+                return result;
+            }
             throw new RuntimeException("Symbol " + sym + " is unbound.");
         } else if (result == null && parent != null) {
             return parent.getBinding(sym);
@@ -87,4 +181,29 @@ public class Environment {
             return result;
         }
     }
+
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Get value of binding identified by _sym_ like {@link #getBinding}, but
+     * return null instead of raising an exception if _sym_ is unbound.
+     * 
+     * @param sym
+     *            Symbol for which a binding should be retrieved.
+     * @return The value that _sym_ is bound to or null if _sym_ is unbound.
+     */
+    public SExpr findBinding(Symbol sym) {
+        for (Environment curr = this; curr != null; curr = curr.parent) {
+            SExpr result = curr.bindings.get(sym);
+            if (result == null && curr.parent == null) {
+                result = curr.loadLazily(sym);
+            }
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
 }
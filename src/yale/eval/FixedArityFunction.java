@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+import yale.main.Kernel;
+
+/**
+ * Base class for built-in functions that take a fixed number (at most three)
+ * of parameters. Subclasses implement the entry point matching their arity,
+ * e.g. {@link #apply1} for a function of one parameter, calls with any other
+ * number of parameters are rejected.
+ */
+public abstract class FixedArityFunction extends Function {
+
+    private int arity;
+    private Symbol sym;
+
+    /**
+     * @param arity
+     *            Number of parameters (0 to 3).
+     * @param sym
+     *            Symbol under which this function is available (needed in case
+     *            an incorrect number of parameters is passed).
+     */
+    public FixedArityFunction(int arity, Symbol sym) {
+        this.arity = arity;
+        this.sym = sym;
+    }
+
+    @Override
+    public SExpr apply(SExpr[] args) {
+        Kernel.validateParameters(args.length, this.arity, false, this.sym);
+        switch (this.arity) {
+        case 0:
+            return apply0();
+        case 1:
+            return apply1(args[0]);
+        case 2:
+            return apply2(args[0], args[1]);
+        default:
+            return apply3(args[0], args[1], args[2]);
+        }
+    }
+}
@@ -5,8 +5,78 @@
  */
 package yale.eval;
 
+import java.util.List;
+
+/**
+ * Base class of all functions. Functions receive their (already evaluated)
+ * parameters as an array (see {@link #apply(SExpr[])}). Since most calls pass
+ * only a few parameters, there are additional entry points for up to three
+ * parameters which do not require an array. By default they delegate to
+ * {@link #apply(SExpr[])}, but functions can override them to avoid the
+ * allocation. Functions do not have access to the environment of their caller.
+ */
 public abstract class Function extends SExpr {
 
+    public static final SExpr[] NO_ARGS = new SExpr[0];
+
+    /**
+     * Apply this function to an arbitrary number of parameters. The function
+     * may keep a reference to _args_, i.e. callers must not modify the array
+     * afterwards.
+     * 
+     * @param args
+     *            The parameters of this call.
+     * @return The result of this application.
+     */
+    public abstract SExpr apply(SExpr[] args);
+
+    public SExpr apply0() {
+        return apply(NO_ARGS);
+    }
+
+    public SExpr apply1(SExpr arg0) {
+        return apply(new SExpr[] { arg0 });
+    }
+
+    public SExpr apply2(SExpr arg0, SExpr arg1) {
+        return apply(new SExpr[] { arg0, arg1 });
+    }
+
+    public SExpr apply3(SExpr arg0, SExpr arg1, SExpr arg2) {
+        return apply(new SExpr[] { arg0, arg1, arg2 });
+    }
+
+    /**
+     * Apply this function in tail position. Functions which support tail calls
+     * (see {@link #supportsTailCalls}) may return an unfinished
+     * {@link TailCall} from here.
+     */
+    public SExpr applyTail(SExpr[] args) {
+        return apply(args);
+    }
+
+    /**
+     * Checks if this function evaluates Yale code in tail position. Only calls
+     * to such functions are deferred as {@link TailCall} when made from tail
+     * position, all others are carried out immediately.
+     */
+    public boolean supportsTailCalls() {
+        return false;
+    }
+
+    /**
+     * Adapter for the generic calling convention of s-expressions.
+     */
+    @Override
+    public final SExpr apply(List<SExpr> parameters, Environment env) {
+        return apply(parameters.toArray(new SExpr[parameters.size()]));
+    }
+
+    @Override
+    public final SExpr applyTail(List<SExpr> parameters, Environment env) {
+        return applyTail(parameters.toArray(new SExpr[parameters.size()]));
+    }
+
     @Override
     public SExpr eval(Environment env) {
         return this;
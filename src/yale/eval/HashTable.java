@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+/**
+ * A mutable map from s-expressions to s-expressions. Keys are compared like
+ * tree-equal compares them: numbers by value regardless of their scale (2
+ * equals 2.0), cons pairs by structure and everything else (symbols, vectors,
+ * functions, ...) by identity.
+ *
+ * The table uses open addressing with linear probing in parallel arrays, so
+ * an entry costs no allocation besides the arrays themselves. The hash of
+ * every key is stored next to it, so cons pairs are hashed only once and
+ * probing compares hashes before keys. Entries are removed by shifting the
+ * following entries of their probe sequence back instead of leaving
+ * tombstones, hence lookups do not degrade after many removals.
+ */
+public class HashTable extends Atom {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private SExpr[] keys;
+    private SExpr[] values;
+    private int[] hashes;
+    private int size;
+    /**
+     * 32 - log2(capacity), used to take the upper bits of the mixed hash.
+     */
+    private int shift;
+
+    public HashTable() {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * Get the hash table behind _expr_.
+     * 
+     * @throws RuntimeException
+     *             If _expr_ is not a hash table.
+     */
+    public static HashTable cast(SExpr expr) {
+        if (expr instanceof HashTable) {
+            return (HashTable) expr;
+        }
+        throw new RuntimeException("Object " + expr + " is not a hash table.");
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new SExpr[capacity];
+        this.values = new SExpr[capacity];
+        this.hashes = new int[capacity];
+        this.shift = Integer.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    /**
+     * Get the hash of _key_, consistent with {@link #keyEquals}.
+     */
+    public static int hash(SExpr key) {
+        int hash = 1;
+        SExpr curr = key;
+        while (curr instanceof Cons) {
+            hash = 31 * hash + hash(curr.car());
+            curr = curr.cdr();
+        }
+        int tail;
+        if (curr instanceof Number) {
+            tail = curr.hashCode();
+        } else if (curr instanceof Symbol) {
+            tail = ((Symbol) curr).getName().hashCode();
+        } else {
+            tail = System.identityHashCode(curr);
+        }
+        return curr == key ? tail : 31 * hash + tail;
+    }
+
+    /**
+     * @return True if _a_ and _b_ denote the same key.
+     */
+    public static boolean keyEquals(SExpr a, SExpr b) {
+        while (a instanceof Cons && b instanceof Cons) {
+            if (a == b) {
+                return true;
+            }
+            if (!keyEquals(a.car(), b.car())) {
+                return false;
+            }
+            a = a.cdr();
+            b = b.cdr();
+        }
+        if (a == b) {
+            return true;
+        }
+        return a instanceof Number && b instanceof Number && a.equals(b);
+    }
+
+    /**
+     * @return The first slot of the probe sequence of _hash_.
+     */
+    private int slot(int hash) {
+        /* Fibonacci hashing spreads similar hashes (e.g. small integers) */
+        return (hash * 0x9E3779B9) >>> this.shift;
+    }
+
+    /**
+     * @return The slot of _key_ or -1 if this table does not contain it.
+     */
+    private int find(SExpr key, int hash) {
+        int mask = this.keys.length - 1;
+        for (int i = slot(hash); this.keys[i] != null; i = (i + 1) & mask) {
+            if (this.hashes[i] == hash && keyEquals(this.keys[i], key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return The value of _key_ or null if this table does not contain it.
+     */
+    public SExpr get(SExpr key) {
+        int i = find(key, hash(key));
+        return i < 0 ? null : this.values[i];
+    }
+
+    public void put(SExpr key, SExpr value) {
+        int hash = hash(key);
+        int mask = this.keys.length - 1;
+        int i = slot(hash);
+        for (; this.keys[i] != null; i = (i + 1) & mask) {
+            if (this.hashes[i] == hash && keyEquals(this.keys[i], key)) {
+                this.values[i] = value;
+                return;
+            }
+        }
+        this.keys[i] = key;
+        this.values[i] = value;
+        this.hashes[i] = hash;
+        /* keep the load factor at most 3/4 */
+        if (++this.size * 4 > this.keys.length * 3) {
+            resize(this.keys.length * 2);
+        }
+    }
+
+    /**
+     * @return True if this table contained _key_.
+     */
+    public boolean remove(SExpr key) {
+        int i = find(key, hash(key));
+        if (i < 0) {
+            return false;
+        }
+        int mask = this.keys.length - 1;
+        /*
+         * move every following entry of the probe sequence whose first slot is
+         * not between the free slot and itself into the free slot
+         */
+        int free = i;
+        for (int j = (i + 1) & mask; this.keys[j] != null; j = (j + 1) & mask) {
+            int first = slot(this.hashes[j]);
+            if (((j - first) & mask) >= ((j - free) & mask)) {
+                this.keys[free] = this.keys[j];
+                this.values[free] = this.values[j];
+                this.hashes[free] = this.hashes[j];
+                free = j;
+            }
+        }
+        this.keys[free] = null;
+        this.values[free] = null;
+        --this.size;
+        return true;
+    }
+
+    private void resize(int capacity) {
+        SExpr[] oldKeys = this.keys;
+        SExpr[] oldValues = this.values;
+        int[] oldHashes = this.hashes;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; ++j) {
+            if (oldKeys[j] != null) {
+                int i = slot(oldHashes[j]);
+                while (this.keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                this.keys[i] = oldKeys[j];
+                this.values[i] = oldValues[j];
+                this.hashes[i] = oldHashes[j];
+            }
+        }
+    }
+
+    /**
+     * @return The list of all keys (_keys_ is true) or values of this table,
+     *         in no particular order. As long as this table is not modified,
+     *         keys and values are listed in the same order.
+     */
+    public SExpr toList(boolean keys) {
+        SExpr result = Symbol.NIL;
+        for (int i = 0; i < this.keys.length; ++i) {
+            if (this.keys[i] != null) {
+                result = new Cons(keys ? this.keys[i] : this.values[i], result);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public SExpr eval(Environment env) {
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("<hash-table %d>", this.size);
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+import java.util.List;
+
+/**
+ * A function created by the special form _lambda_. It consists of a list of
+ * parameter names, a body and the environment in which the lambda form was
+ * evaluated.
+ */
+public class Lambda extends Function {
+
+    private List<Symbol> variables;
+    private List<SExpr> body;
+    private Environment defEnv;
+
+    public Lambda(List<Symbol> variables, List<SExpr> body, Environment defEnv) {
+        this.variables = variables;
+        this.body = body;
+        this.defEnv = defEnv;
+    }
+
+    public List<Symbol> getVariables() {
+        return this.variables;
+    }
+
+    public List<SExpr> getBody() {
+        return this.body;
+    }
+
+    public Environment getDefEnv() {
+        return this.defEnv;
+    }
+
+    @Override
+    public SExpr apply(SExpr[] args) {
+        return TailCall.trampoline(applyTail(args));
+    }
+
+    /**
+     * The final expression of the body is evaluated in tail position, i.e. a
+     * function application there is returned as {@link TailCall}.
+     */
+    @Override
+    public SExpr applyTail(SExpr[] args) {
+        if (args.length != variables.size()) {
+            throw new RuntimeException(String.format("lambda form requires %d parameter(s), %d given",
+                    variables.size(), args.length));
+        }
+        /*
+         * It is important to use _defEnv_ here and NOT the environment of the
+         * caller: _defEnv_ is the environment where lambda was defined whereas
+         * the caller's environment is the one where it is executed. Therefore,
+         * by using _defEnv_, bindings are resolved lexically whereas by using
+         * the caller's environment they would be resolved dynamically (cf.
+         * lexical vs dynamic scoping).
+         */
+        Environment subEnv = new Environment(defEnv);
+        int i = 0;
+        for (Symbol variable : variables) {
+            subEnv.defineBinding(variable, args[i++]);
+        }
+        for (int j = 0; j < body.size() - 1; ++j) {
+            /*
+             * Evaluate all but the last expression of the lambda body. These
+             * are evaluated for side-effects only.
+             */
+            body.get(j).eval(subEnv);
+        }
+        /* return the value of the final expression */
+        return body.get(body.size() - 1).evalTail(subEnv);
+    }
+
+    @Override
+    public boolean supportsTailCalls() {
+        return true;
+    }
+}
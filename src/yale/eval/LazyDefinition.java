@@ -0,0 +1,18 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+/**
+ * A definition whose evaluation is deferred until its symbol is needed (see
+ * {@link Environment#defineLazily}).
+ */
+public interface LazyDefinition {
+
+    /**
+     * Evaluate the definition, i.e. create the binding of its symbol.
+     */
+    void load();
+}
@@ -37,11 +37,19 @@ public class Let extends SpecialForm {
 
     @Override
     public SExpr apply(List<SExpr> parameters, Environment env) {
+        return TailCall.trampoline(applyTail(parameters, env));
+    }
+
+    /**
+     * The final expression of the body is in tail position.
+     */
+    @Override
+    public SExpr applyTail(List<SExpr> parameters, Environment env) {
         Kernel.validateParameters(parameters, 1, true, this.symbol);
         Environment subEnv = new Environment(env);
         SExpr bindings = parameters.get(0);
         SExpr curr = bindings;
-        while (!curr.equals(Symbol.NIL)) {
+        while (curr != Symbol.NIL) {
             SExpr currTuple = curr.car();
             SExpr left = currTuple.car();
             SExpr right = currTuple.cdr().car();
@@ -76,6 +84,6 @@ public class Let extends SpecialForm {
             parameters.get(i).eval(subEnv);
         }
         /* Evaluate final parameter and return its value. */
-        return parameters.get(parameters.size() - 1).eval(subEnv);
+        return parameters.get(parameters.size() - 1).evalTail(subEnv);
     }
 }
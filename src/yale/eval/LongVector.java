@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+import java.util.Arrays;
+
+/**
+ * A vector of integers that fit into a long (fixnums, see
+ * {@link Number#isFixnum}), stored as primitive longs.
+ */
+public class LongVector extends Vector {
+
+    private long[] elements;
+
+    /**
+     * Create a vector of _length_ elements, all set to _fill_.
+     */
+    public LongVector(int length, long fill) {
+        this.elements = new long[length];
+        Arrays.fill(this.elements, fill);
+    }
+
+    @Override
+    public int length() {
+        return this.elements.length;
+    }
+
+    public long getLong(int index) {
+        return this.elements[index];
+    }
+
+    public void setLong(int index, long value) {
+        this.elements[index] = value;
+    }
+
+    @Override
+    public SExpr get(int index) {
+        return Number.valueOf(this.elements[index]);
+    }
+
+    @Override
+    public void set(int index, SExpr value) {
+        this.elements[index] = toLong(value);
+    }
+
+    /**
+     * @throws RuntimeException
+     *             If _value_ is not a fixnum.
+     */
+    public static long toLong(SExpr value) {
+        Number num = Number.cast(value);
+        if (!num.isFixnum()) {
+            throw new RuntimeException(String.format("%s cannot be stored in a long vector.", value));
+        }
+        return num.getFixnum();
+    }
+}
@@ -7,14 +7,152 @@ package yale.eval;
 
 import java.math.BigDecimal;
 
+/**
+ * Numbers have two representations: integers that fit into a long (fixnums)
+ * are stored as a primitive long, all other numbers as BigDecimal. Arithmetic
+ * on two fixnums is carried out on longs and only promoted to BigDecimal if
+ * the result overflows. Instances are created by {@link #valueOf}, which
+ * returns preallocated instances for small integers.
+ */
 public class Number extends Atom {
 
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final Number[] CACHE = new Number[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; ++i) {
+            CACHE[i] = new Number(i + CACHE_LOW);
+        }
+    }
+
+    private static final BigDecimal MIN_FIXNUM = BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal MAX_FIXNUM = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    public static final Number ZERO = valueOf(0);
+    public static final Number ONE = valueOf(1);
+
+    private long fixnum;
+    /**
+     * null if this number is a fixnum.
+     */
     private BigDecimal number;
-    
-    public Number(BigDecimal number) {
+
+    private Number(long fixnum) {
+        this.fixnum = fixnum;
+        this.number = null;
+    }
+
+    private Number(BigDecimal number) {
         this.number = number;
     }
-    
+
+    public static Number valueOf(long value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return CACHE[(int) value - CACHE_LOW];
+        }
+        return new Number(value);
+    }
+
+    /**
+     * Integers with a scale of zero that fit into a long are stored as
+     * fixnums, all other values keep their BigDecimal representation (and
+     * thus their scale, e.g. 2.0 is printed as 2.0).
+     */
+    public static Number valueOf(BigDecimal value) {
+        if (value.scale() == 0 && value.unscaledValue().bitLength() < Long.SIZE) {
+            return valueOf(value.longValueExact());
+        }
+        return new Number(value);
+    }
+
+    /**
+     * Get the number behind _expr_.
+     * 
+     * @throws RuntimeException
+     *             If _expr_ is not a number.
+     */
+    public static Number cast(SExpr expr) {
+        if (expr instanceof Number) {
+            return (Number) expr;
+        }
+        throw new RuntimeException("Object " + expr + " is not a number.");
+    }
+
+    public boolean isFixnum() {
+        return this.number == null;
+    }
+
+    /**
+     * Only defined for fixnums (see {@link #isFixnum}).
+     */
+    public long getFixnum() {
+        return this.fixnum;
+    }
+
+    public Number add(Number other) {
+        if (this.number == null && other.number == null) {
+            long result = this.fixnum + other.fixnum;
+            /* overflow iff both summands have a sign different from the result */
+            if (((this.fixnum ^ result) & (other.fixnum ^ result)) >= 0) {
+                return valueOf(result);
+            }
+        }
+        return valueOf(getNumericValue().add(other.getNumericValue()));
+    }
+
+    public Number subtract(Number other) {
+        if (this.number == null && other.number == null) {
+            long result = this.fixnum - other.fixnum;
+            /* overflow iff the operands' signs differ and the result's sign differs from the minuend */
+            if (((this.fixnum ^ other.fixnum) & (this.fixnum ^ result)) >= 0) {
+                return valueOf(result);
+            }
+        }
+        return valueOf(getNumericValue().subtract(other.getNumericValue()));
+    }
+
+    public Number multiply(Number other) {
+        if (this.number == null && other.number == null) {
+            try {
+                return valueOf(Math.multiplyExact(this.fixnum, other.fixnum));
+            } catch (ArithmeticException e) {
+                /* overflow, fall back to BigDecimal */
+            }
+        }
+        return valueOf(getNumericValue().multiply(other.getNumericValue()));
+    }
+
+    /**
+     * Exact division. Raises an ArithmeticException if the quotient has no
+     * finite decimal representation or if _other_ is zero.
+     */
+    public Number divide(Number other) {
+        if (this.number == null && other.number == null && other.fixnum != 0
+                && this.fixnum % other.fixnum == 0 && !(this.fixnum == Long.MIN_VALUE && other.fixnum == -1)) {
+            return valueOf(this.fixnum / other.fixnum);
+        }
+        return valueOf(getNumericValue().divide(other.getNumericValue()));
+    }
+
+    /**
+     * Remainder of the division by _other_. Like
+     * {@link BigDecimal#remainder}, the result has the sign of this number.
+     */
+    public Number remainder(Number other) {
+        if (this.number == null && other.number == null && other.fixnum != 0) {
+            return valueOf(this.fixnum % other.fixnum);
+        }
+        return valueOf(getNumericValue().remainder(other.getNumericValue()));
+    }
+
+    public int compareTo(Number other) {
+        if (this.number == null && other.number == null) {
+            return Long.compare(this.fixnum, other.fixnum);
+        }
+        return getNumericValue().compareTo(other.getNumericValue());
+    }
+
     @Override
     public SExpr eval(Environment env) {
         return this;
@@ -22,7 +160,7 @@ public class Number extends Atom {
     
     @Override
     public BigDecimal getNumericValue() {
-        return this.number;
+        return this.number != null ? this.number : BigDecimal.valueOf(this.fixnum);
     }
     
     @Override
@@ -30,16 +168,36 @@ public class Number extends Atom {
         return true;
     }
     
+    /**
+     * Numbers are equal if they have the same value, regardless of their
+     * representation and scale, i.e. 2 equals 2.0.
+     */
     public boolean equals(Object obj) {
         if (obj instanceof Number) {
-            Number num = (Number) obj;
-            return num.getNumericValue().equals(this.getNumericValue());
+            return compareTo((Number) obj) == 0;
         } else {
             return false;
         }
     }
     
+    /**
+     * Consistent with {@link #equals}: the hash of a BigDecimal that equals a
+     * fixnum (e.g. 2.0) is that of the fixnum, all other BigDecimals are
+     * hashed without their trailing zeros.
+     */
+    @Override
+    public int hashCode() {
+        if (this.number == null) {
+            return Long.hashCode(this.fixnum);
+        }
+        BigDecimal stripped = this.number.stripTrailingZeros();
+        if (stripped.scale() <= 0 && stripped.compareTo(MIN_FIXNUM) >= 0 && stripped.compareTo(MAX_FIXNUM) <= 0) {
+            return Long.hashCode(stripped.longValue());
+        }
+        return stripped.hashCode();
+    }
+
     public String toString () {
-        return this.number.toString();
+        return this.number != null ? this.number.toString() : Long.toString(this.fixnum);
     }
 }
@@ -0,0 +1,345 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+/**
+ * An immutable map from s-expressions to s-expressions, implemented as a
+ * hash array mapped trie. Keys are compared and hashed like the keys of a
+ * {@link HashTable}. Updates ({@link #put}, {@link #remove}) return a new
+ * map that shares all but the O(log32 n) nodes on the path to the changed
+ * entry with the old one.
+ *
+ * Every level of the trie consumes 5 bits of the hash of a key. A node only
+ * allocates slots for the entries it contains: a bitmap records which of its
+ * 32 possible slots are used and the position of a slot in the node's array
+ * is the number of used slots below it. Keys whose hashes are equal end up in
+ * a collision node, which is searched linearly.
+ */
+public class PersistentMap extends Atom {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    public static final PersistentMap EMPTY = new PersistentMap(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Get the persistent map behind _expr_.
+     * 
+     * @throws RuntimeException
+     *             If _expr_ is not a persistent map.
+     */
+    public static PersistentMap cast(SExpr expr) {
+        if (expr instanceof PersistentMap) {
+            return (PersistentMap) expr;
+        }
+        throw new RuntimeException("Object " + expr + " is not a persistent map.");
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return The value of _key_ or null if this map does not contain it.
+     */
+    public SExpr get(SExpr key) {
+        return this.root == null ? null : this.root.find(0, HashTable.hash(key), key);
+    }
+
+    /**
+     * @return A map like this one, but with _key_ bound to _value_.
+     */
+    public PersistentMap put(SExpr key, SExpr value) {
+        boolean[] added = { false };
+        Node base = this.root != null ? this.root : BitmapNode.EMPTY;
+        Node newRoot = base.put(0, HashTable.hash(key), key, value, added);
+        if (newRoot == this.root) {
+            return this;
+        }
+        return new PersistentMap(newRoot, added[0] ? this.size + 1 : this.size);
+    }
+
+    /**
+     * @return A map like this one, but without _key_.
+     */
+    public PersistentMap remove(SExpr key) {
+        if (this.root == null) {
+            return this;
+        }
+        Node newRoot = this.root.remove(0, HashTable.hash(key), key);
+        if (newRoot == this.root) {
+            return this;
+        }
+        return newRoot == null ? EMPTY : new PersistentMap(newRoot, this.size - 1);
+    }
+
+    /**
+     * @return The list of all keys (_keys_ is true) or values of this map, in
+     *         no particular order. Keys and values are listed in the same
+     *         order.
+     */
+    public SExpr toList(boolean keys) {
+        return this.root == null ? Symbol.NIL : this.root.toList(keys, Symbol.NIL);
+    }
+
+    @Override
+    public SExpr eval(Environment env) {
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("<persistent-map %d>", this.size);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * @return A copy of _array_ with _value_ at _index_.
+     */
+    private static Object[] copySet(Object[] array, int index, Object value) {
+        Object[] result = array.clone();
+        result[index] = value;
+        return result;
+    }
+
+    private interface Node {
+
+        /**
+         * @return The value of _key_ or null if this node does not contain it.
+         */
+        SExpr find(int shift, int hash, SExpr key);
+
+        /**
+         * @param added
+         *            Its first element is set to true if a new entry was
+         *            added (rather than an existing one replaced).
+         * @return This node if it already binds _key_ to _value_, otherwise
+         *         the updated copy.
+         */
+        Node put(int shift, int hash, SExpr key, SExpr value, boolean[] added);
+
+        /**
+         * @return This node if it does not contain _key_, null if nothing
+         *         remains after removing _key_, otherwise the updated copy.
+         */
+        Node remove(int shift, int hash, SExpr key);
+
+        /**
+         * @return The keys or values of this node consed onto _tail_.
+         */
+        SExpr toList(boolean keys, SExpr tail);
+    }
+
+    /**
+     * Holds the entries whose hashes match at all previous levels. The array
+     * holds a pair of elements per used slot: key and value of an entry or
+     * null and the node of the next level.
+     */
+    private static class BitmapNode implements Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(this.bitmap & (bit - 1));
+        }
+
+        @Override
+        public SExpr find(int shift, int hash, SExpr key) {
+            int bit = bit(hash, shift);
+            if ((this.bitmap & bit) == 0) {
+                return null;
+            }
+            int i = 2 * index(bit);
+            Object k = this.array[i];
+            if (k == null) {
+                return ((Node) this.array[i + 1]).find(shift + BITS, hash, key);
+            }
+            return HashTable.keyEquals((SExpr) k, key) ? (SExpr) this.array[i + 1] : null;
+        }
+
+        @Override
+        public Node put(int shift, int hash, SExpr key, SExpr value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int i = 2 * index(bit);
+            if ((this.bitmap & bit) == 0) {
+                Object[] newArray = new Object[this.array.length + 2];
+                System.arraycopy(this.array, 0, newArray, 0, i);
+                newArray[i] = key;
+                newArray[i + 1] = value;
+                System.arraycopy(this.array, i, newArray, i + 2, this.array.length - i);
+                added[0] = true;
+                return new BitmapNode(this.bitmap | bit, newArray);
+            }
+            Object k = this.array[i];
+            Object v = this.array[i + 1];
+            if (k == null) {
+                Node node = ((Node) v).put(shift + BITS, hash, key, value, added);
+                return node == v ? this : new BitmapNode(this.bitmap, copySet(this.array, i + 1, node));
+            }
+            if (HashTable.keyEquals((SExpr) k, key)) {
+                return v == value ? this : new BitmapNode(this.bitmap, copySet(this.array, i + 1, value));
+            }
+            /* both entries move to a node of the next level */
+            added[0] = true;
+            Object[] newArray = copySet(this.array, i, null);
+            newArray[i + 1] = createNode(shift + BITS, (SExpr) k, (SExpr) v, hash, key, value);
+            return new BitmapNode(this.bitmap, newArray);
+        }
+
+        private static Node createNode(int shift, SExpr key1, SExpr value1, int hash2, SExpr key2, SExpr value2) {
+            int hash1 = HashTable.hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new SExpr[] { key1, value1, key2, value2 });
+            }
+            boolean[] added = { false };
+            return EMPTY.put(shift, hash1, key1, value1, added).put(shift, hash2, key2, value2, added);
+        }
+
+        @Override
+        public Node remove(int shift, int hash, SExpr key) {
+            int bit = bit(hash, shift);
+            if ((this.bitmap & bit) == 0) {
+                return this;
+            }
+            int i = 2 * index(bit);
+            Object k = this.array[i];
+            if (k == null) {
+                Node node = ((Node) this.array[i + 1]).remove(shift + BITS, hash, key);
+                if (node == this.array[i + 1]) {
+                    return this;
+                }
+                if (node != null) {
+                    return new BitmapNode(this.bitmap, copySet(this.array, i + 1, node));
+                }
+            } else if (!HashTable.keyEquals((SExpr) k, key)) {
+                return this;
+            }
+            if (this.bitmap == bit) {
+                return null;
+            }
+            Object[] newArray = new Object[this.array.length - 2];
+            System.arraycopy(this.array, 0, newArray, 0, i);
+            System.arraycopy(this.array, i + 2, newArray, i, newArray.length - i);
+            return new BitmapNode(this.bitmap ^ bit, newArray);
+        }
+
+        @Override
+        public SExpr toList(boolean keys, SExpr tail) {
+            SExpr result = tail;
+            for (int i = 0; i < this.array.length; i += 2) {
+                if (this.array[i] == null) {
+                    result = ((Node) this.array[i + 1]).toList(keys, result);
+                } else {
+                    result = new Cons((SExpr) this.array[keys ? i : i + 1], result);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Holds the entries of keys with the same hash as alternating keys and
+     * values.
+     */
+    private static class CollisionNode implements Node {
+
+        private final int hash;
+        private final SExpr[] entries;
+
+        CollisionNode(int hash, SExpr[] entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+
+        /**
+         * @return The index of _key_ in the entries or -1.
+         */
+        private int indexOf(SExpr key) {
+            for (int i = 0; i < this.entries.length; i += 2) {
+                if (HashTable.keyEquals(this.entries[i], key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public SExpr find(int shift, int hash, SExpr key) {
+            if (hash != this.hash) {
+                return null;
+            }
+            int i = indexOf(key);
+            return i < 0 ? null : this.entries[i + 1];
+        }
+
+        @Override
+        public Node put(int shift, int hash, SExpr key, SExpr value, boolean[] added) {
+            if (hash != this.hash) {
+                /* nest this node into a bitmap node to tell the hashes apart */
+                Node parent = new BitmapNode(bit(this.hash, shift), new Object[] { null, this });
+                return parent.put(shift, hash, key, value, added);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                if (this.entries[i + 1] == value) {
+                    return this;
+                }
+                SExpr[] newEntries = this.entries.clone();
+                newEntries[i + 1] = value;
+                return new CollisionNode(hash, newEntries);
+            }
+            SExpr[] newEntries = new SExpr[this.entries.length + 2];
+            System.arraycopy(this.entries, 0, newEntries, 0, this.entries.length);
+            newEntries[this.entries.length] = key;
+            newEntries[this.entries.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, newEntries);
+        }
+
+        @Override
+        public Node remove(int shift, int hash, SExpr key) {
+            int i = hash == this.hash ? indexOf(key) : -1;
+            if (i < 0) {
+                return this;
+            }
+            if (this.entries.length == 2) {
+                return null;
+            }
+            SExpr[] newEntries = new SExpr[this.entries.length - 2];
+            System.arraycopy(this.entries, 0, newEntries, 0, i);
+            System.arraycopy(this.entries, i + 2, newEntries, i, newEntries.length - i);
+            return new CollisionNode(hash, newEntries);
+        }
+
+        @Override
+        public SExpr toList(boolean keys, SExpr tail) {
+            SExpr result = tail;
+            for (int i = 0; i < this.entries.length; i += 2) {
+                result = new Cons(this.entries[keys ? i : i + 1], result);
+            }
+            return result;
+        }
+    }
+}
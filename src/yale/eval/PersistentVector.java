@@ -0,0 +1,256 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+import java.util.Arrays;
+
+/**
+ * An immutable vector. Updates ({@link #set}, {@link #push}, {@link #pop})
+ * return a new vector that shares all but O(log32 n) of its nodes with the
+ * old one, so functional code can grow a vector element by element without
+ * copying it (as append does with lists).
+ *
+ * The elements are stored in a trie of arrays with 32 entries each: interior
+ * nodes are Object arrays, leaves are SExpr arrays. The last (up to 32)
+ * elements are kept in a separate tail array, so pushing an element usually
+ * only copies the tail and touches the trie once every 32 pushes.
+ */
+public class PersistentVector extends Atom {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final Object[] EMPTY_NODE = new Object[WIDTH];
+    public static final PersistentVector EMPTY = new PersistentVector(0, BITS, EMPTY_NODE, new SExpr[0]);
+
+    private final int count;
+    /**
+     * Number of bits of an index consumed by the levels below the root.
+     */
+    private final int shift;
+    private final Object[] root;
+    private final SExpr[] tail;
+
+    private PersistentVector(int count, int shift, Object[] root, SExpr[] tail) {
+        this.count = count;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * Get the persistent vector behind _expr_.
+     * 
+     * @throws RuntimeException
+     *             If _expr_ is not a persistent vector.
+     */
+    public static PersistentVector cast(SExpr expr) {
+        if (expr instanceof PersistentVector) {
+            return (PersistentVector) expr;
+        }
+        throw new RuntimeException("Object " + expr + " is not a persistent vector.");
+    }
+
+    public static PersistentVector of(SExpr[] elements) {
+        PersistentVector result = EMPTY;
+        for (SExpr element : elements) {
+            result = result.push(element);
+        }
+        return result;
+    }
+
+    public int length() {
+        return this.count;
+    }
+
+    /**
+     * Get the index of this vector denoted by _index_.
+     * 
+     * @throws RuntimeException
+     *             If _index_ is not an integer between 0 and the length of
+     *             this vector (exclusive).
+     */
+    public int checkIndex(SExpr index) {
+        Number num = Number.cast(index);
+        if (!num.isFixnum() || num.getFixnum() < 0 || num.getFixnum() >= this.count) {
+            throw new RuntimeException(String.format("Index %s out of bounds for vector of length %d.", index,
+                    this.count));
+        }
+        return (int) num.getFixnum();
+    }
+
+    /**
+     * @return The index of the first element stored in the tail.
+     */
+    private int tailOffset() {
+        return this.count < WIDTH ? 0 : ((this.count - 1) >>> BITS) << BITS;
+    }
+
+    /**
+     * @return The leaf (or tail) holding the element at _index_.
+     */
+    private SExpr[] leafFor(int index) {
+        if (index >= tailOffset()) {
+            return this.tail;
+        }
+        Object[] node = this.root;
+        for (int level = this.shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return (SExpr[]) node;
+    }
+
+    public SExpr get(int index) {
+        return leafFor(index)[index & MASK];
+    }
+
+    /**
+     * @return A vector like this one, but with _value_ at _index_.
+     */
+    public PersistentVector set(int index, SExpr value) {
+        if (index >= tailOffset()) {
+            SExpr[] newTail = this.tail.clone();
+            newTail[index & MASK] = value;
+            return new PersistentVector(this.count, this.shift, this.root, newTail);
+        }
+        return new PersistentVector(this.count, this.shift, set(this.shift, this.root, index, value), this.tail);
+    }
+
+    private static Object[] set(int level, Object[] node, int index, SExpr value) {
+        Object[] result = node.clone();
+        if (level == 0) {
+            result[index & MASK] = value;
+        } else {
+            int sub = (index >>> level) & MASK;
+            result[sub] = set(level - BITS, (Object[]) node[sub], index, value);
+        }
+        return result;
+    }
+
+    /**
+     * @return A vector like this one, but with _value_ appended.
+     */
+    public PersistentVector push(SExpr value) {
+        if (this.count - tailOffset() < WIDTH) {
+            SExpr[] newTail = Arrays.copyOf(this.tail, this.tail.length + 1);
+            newTail[this.tail.length] = value;
+            return new PersistentVector(this.count + 1, this.shift, this.root, newTail);
+        }
+        /* the tail is full: move it into the trie */
+        Object[] newRoot;
+        int newShift = this.shift;
+        if ((this.count >>> BITS) > (1 << this.shift)) {
+            /* the trie is full: add a level */
+            newRoot = new Object[WIDTH];
+            newRoot[0] = this.root;
+            newRoot[1] = newPath(this.shift, this.tail);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(this.shift, this.root, this.tail);
+        }
+        return new PersistentVector(this.count + 1, newShift, newRoot, new SExpr[] { value });
+    }
+
+    private Object[] pushTail(int level, Object[] parent, SExpr[] leaf) {
+        int sub = ((this.count - 1) >>> level) & MASK;
+        Object[] result = parent.clone();
+        if (level == BITS) {
+            result[sub] = leaf;
+        } else {
+            Object[] child = (Object[]) parent[sub];
+            result[sub] = child != null ? pushTail(level - BITS, child, leaf) : newPath(level - BITS, leaf);
+        }
+        return result;
+    }
+
+    private static Object[] newPath(int level, Object[] node) {
+        if (level == 0) {
+            return node;
+        }
+        Object[] result = new Object[WIDTH];
+        result[0] = newPath(level - BITS, node);
+        return result;
+    }
+
+    /**
+     * @return A vector like this one, but without its last element.
+     * @throws RuntimeException
+     *             If this vector is empty.
+     */
+    public PersistentVector pop() {
+        if (this.count == 0) {
+            throw new RuntimeException("Cannot pop from an empty vector.");
+        }
+        if (this.count == 1) {
+            return EMPTY;
+        }
+        if (this.count - tailOffset() > 1) {
+            return new PersistentVector(this.count - 1, this.shift, this.root,
+                    Arrays.copyOf(this.tail, this.tail.length - 1));
+        }
+        /* the tail becomes empty: the last leaf of the trie is the new tail */
+        SExpr[] newTail = leafFor(this.count - 2);
+        Object[] newRoot = popTail(this.shift, this.root);
+        int newShift = this.shift;
+        if (newRoot == null) {
+            newRoot = EMPTY_NODE;
+        }
+        if (this.shift > BITS && newRoot[1] == null) {
+            /* the root has a single child: remove a level */
+            newRoot = (Object[]) newRoot[0];
+            newShift -= BITS;
+        }
+        return new PersistentVector(this.count - 1, newShift, newRoot, newTail);
+    }
+
+    /**
+     * @return _node_ without the path to the last leaf or null if nothing
+     *         remains of _node_.
+     */
+    private Object[] popTail(int level, Object[] node) {
+        int sub = ((this.count - 2) >>> level) & MASK;
+        if (level > BITS) {
+            Object[] child = popTail(level - BITS, (Object[]) node[sub]);
+            if (child == null && sub == 0) {
+                return null;
+            }
+            Object[] result = node.clone();
+            result[sub] = child;
+            return result;
+        } else if (sub == 0) {
+            return null;
+        }
+        Object[] result = node.clone();
+        result[sub] = null;
+        return result;
+    }
+
+    public SExpr toList() {
+        SExpr[] elements = new SExpr[this.count];
+        for (int i = 0; i < this.count; ++i) {
+            elements[i] = get(i);
+        }
+        return CompactList.of(elements);
+    }
+
+    @Override
+    public SExpr eval(Environment env) {
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("#[");
+        for (int i = 0; i < this.count; ++i) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(get(i));
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -5,14 +5,9 @@
  */
 package yale.eval;
 
-import java.util.List;
-
-import yale.main.Kernel;
-
-public class Printer extends Function {
+public class Printer extends FixedArityFunction {
 
     private boolean newline;
-    private Symbol sym;
 
     /**
      * Creates a new printer.
@@ -24,16 +19,16 @@ public class Printer extends Function {
      *            an incorrect number of parameters is passed).
      */
     public Printer(boolean newline, Symbol sym) {
+        super(1, sym);
         this.newline = newline;
     }
 
     @Override
-    public SExpr apply(List<SExpr> parameters, Environment env) {
-        Kernel.validateParameters(parameters, 1, false, this.sym);
+    public SExpr apply1(SExpr arg0) {
         if (!this.newline) {
-            System.out.print(parameters.get(0));
+            System.out.print(arg0);
         } else {
-            System.out.println(parameters.get(0));
+            System.out.println(arg0);
         }
         return Symbol.NIL;
     }
@@ -32,6 +32,20 @@ public abstract class SExpr {
      */
     public abstract SExpr eval(Environment env);
 
+    /**
+     * Evaluate this s-expression in tail position, i.e. as the final
+     * expression of a lambda body, an _if_ branch or a _let_ body. Unlike
+     * {@link #eval}, this method may return an unfinished {@link TailCall},
+     * which the caller must complete with {@link TailCall#trampoline}.
+     * 
+     * @param env
+     *            Context in which the expression is evaluated.
+     * @return The value of this s-expression or a pending tail call.
+     */
+    public SExpr evalTail(Environment env) {
+        return eval(env);
+    }
+
     /**
      * Checks if this s-expression is a function.
      * 
@@ -115,6 +129,15 @@ public abstract class SExpr {
         throw new RuntimeException("Object " + this + " is not callable.");
     }
 
+    /**
+     * Apply this s-expression in tail position. Like {@link #evalTail}, this
+     * method may return an unfinished {@link TailCall}. By default, it is the
+     * same as {@link #apply}.
+     */
+    public SExpr applyTail(List<SExpr> parameters, Environment env) {
+        return apply(parameters, env);
+    }
+
     /**
      * Get the actual number (i.e. BigDecimal) representing this s-expression.
      * This method is only defined for numbers.
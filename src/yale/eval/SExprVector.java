@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+import java.util.Arrays;
+
+/**
+ * A vector that holds arbitrary s-expressions.
+ */
+public class SExprVector extends Vector {
+
+    private SExpr[] elements;
+
+    /**
+     * Create a vector of _length_ elements, all set to _fill_.
+     */
+    public SExprVector(int length, SExpr fill) {
+        this.elements = new SExpr[length];
+        Arrays.fill(this.elements, fill);
+    }
+
+    /**
+     * Create a vector of _elements_. The array is not copied.
+     */
+    public SExprVector(SExpr[] elements) {
+        this.elements = elements;
+    }
+
+    @Override
+    public int length() {
+        return this.elements.length;
+    }
+
+    @Override
+    public SExpr get(int index) {
+        return this.elements[index];
+    }
+
+    @Override
+    public void set(int index, SExpr value) {
+        this.elements[index] = value;
+    }
+}
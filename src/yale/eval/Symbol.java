@@ -5,15 +5,44 @@
  */
 package yale.eval;
 
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Symbols are interned: there is exactly one instance per name (see
+ * {@link #intern}). Therefore, symbols are compared by reference and
+ * {@link Object#equals} and {@link Object#hashCode} are not overridden.
+ */
 public class Symbol extends Atom {
 
-    public static final Symbol NIL = new Symbol("nil");
+    /**
+     * Global symbol table mapping names to their unique symbol. It needs to be
+     * initialized before any of the constants below.
+     */
+    private static final ConcurrentHashMap<String, Symbol> TABLE = new ConcurrentHashMap<String, Symbol>();
+
+    public static final Symbol NIL = Symbol.intern("nil");
 
     private String name;
 
-    public Symbol(String name) {
+    private Symbol(String name) {
         this.name = name;
     }
+
+    /**
+     * Get the symbol named _name_. It is created if no such symbol exists yet.
+     * This method is thread-safe.
+     * 
+     * @param name
+     *            Name of the symbol.
+     * @return The unique symbol with the given name.
+     */
+    public static Symbol intern(String name) {
+        Symbol sym = TABLE.get(name);
+        if (sym == null) {
+            sym = TABLE.computeIfAbsent(name, Symbol::new);
+        }
+        return sym;
+    }
     
     public String getName() {
         return this.name;
@@ -27,17 +56,4 @@ public class Symbol extends Atom {
     public String toString() {
         return this.name;
     }
-    
-    public boolean equals(Object obj) {
-        if (obj instanceof Symbol) {
-            Symbol sym = (Symbol) obj;
-            return sym.getName().equals(this.getName());
-        } else {
-            return false;
-        }
-    }
-    
-    public int hashCode() {
-        return this.name.hashCode();
-    }
 }
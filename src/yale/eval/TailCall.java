@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+/**
+ * A function application in tail position that has not been carried out yet.
+ * Instead of calling a function from tail position (and thus growing the Java
+ * stack), lambda bodies, _if_ and _let_ forms return an instance of this class
+ * to the function application they are part of, which then performs the call
+ * in a loop (see {@link #trampoline}). Thereby, tail calls run in constant
+ * stack space.
+ */
+public class TailCall extends SExpr {
+
+    private Function function;
+    private SExpr[] args;
+
+    public TailCall(Function function, SExpr[] args) {
+        this.function = function;
+        this.args = args;
+    }
+
+    /**
+     * Evaluating a tail call carries it out.
+     */
+    @Override
+    public SExpr eval(Environment env) {
+        return trampoline(this);
+    }
+
+    /**
+     * Carry out pending tail calls until a final value is available.
+     * 
+     * @param result
+     *            The result of {@link SExpr#evalTail} or
+     *            {@link SExpr#applyTail}, which might be a tail call.
+     * @return The value of _result_ once all tail calls have been carried out.
+     */
+    public static SExpr trampoline(SExpr result) {
+        while (result instanceof TailCall) {
+            TailCall tailCall = (TailCall) result;
+            result = tailCall.function.applyTail(tailCall.args);
+        }
+        return result;
+    }
+
+    public String toString() {
+        return String.format("<tail call %d>", System.identityHashCode(this));
+    }
+}
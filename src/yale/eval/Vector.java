@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+/**
+ * A fixed-size sequence of s-expressions with constant-time access to each
+ * element, unlike lists whose n-th element is reached by n cdr operations.
+ * Generic vectors ({@link SExprVector}) hold arbitrary s-expressions, numeric
+ * vectors ({@link LongVector}, {@link DoubleVector}) store their elements
+ * unboxed and only create {@link Number} objects when an element is read by
+ * {@link #get}.
+ */
+public abstract class Vector extends Atom {
+
+    /**
+     * Get the vector behind _expr_.
+     * 
+     * @throws RuntimeException
+     *             If _expr_ is not a vector.
+     */
+    public static Vector cast(SExpr expr) {
+        if (expr instanceof Vector) {
+            return (Vector) expr;
+        }
+        throw new RuntimeException("Object " + expr + " is not a vector.");
+    }
+
+    public abstract int length();
+
+    public abstract SExpr get(int index);
+
+    /**
+     * @throws RuntimeException
+     *             If _value_ cannot be stored in this vector.
+     */
+    public abstract void set(int index, SExpr value);
+
+    /**
+     * Get the index of this vector denoted by _index_.
+     * 
+     * @throws RuntimeException
+     *             If _index_ is not an integer between 0 and the length of
+     *             this vector (exclusive).
+     */
+    public int checkIndex(SExpr index) {
+        Number num = Number.cast(index);
+        if (!num.isFixnum() || num.getFixnum() < 0 || num.getFixnum() >= length()) {
+            throw new RuntimeException(String.format("Index %s out of bounds for vector of length %d.", index,
+                    length()));
+        }
+        return (int) num.getFixnum();
+    }
+
+    @Override
+    public SExpr eval(Environment env) {
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("#(");
+        for (int i = 0; i < length(); ++i) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(get(i));
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -0,0 +1,318 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.image;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import yale.analyze.AssignNode;
+import yale.analyze.CallNode;
+import yale.analyze.ConstantNode;
+import yale.analyze.DefineNode;
+import yale.analyze.FoldedNode;
+import yale.analyze.GlobalNode;
+import yale.analyze.IfNode;
+import yale.analyze.InterpretedNode;
+import yale.analyze.JitCompiler;
+import yale.analyze.LambdaNode;
+import yale.analyze.LetNode;
+import yale.analyze.LocalAssignNode;
+import yale.analyze.LocalNode;
+import yale.analyze.Node;
+import yale.eval.CompactList;
+import yale.eval.Environment;
+import yale.eval.Number;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+
+/**
+ * Reads s-expressions and analyzed nodes written by {@link ImageOutput} from a
+ * buffer or a channel. Nodes refer to the root environment and the compiler
+ * passed to the constructor, so an image written by one yale instance can be
+ * loaded into any other.
+ */
+public class ImageInput {
+
+    /* tags of s-expressions */
+    public static final int SYMBOL = 1;
+    public static final int SYMBOL_REF = 2;
+    public static final int FIXNUM = 3;
+    public static final int NEGATIVE_FIXNUM = 4;
+    public static final int DECIMAL = 5;
+    public static final int LIST = 6;
+    public static final int CONSTANT_LIST = 7;
+
+    /* tags of nodes */
+    public static final int CONSTANT_NODE = 16;
+    public static final int LOCAL_NODE = 17;
+    public static final int GLOBAL_NODE = 18;
+    public static final int IF_NODE = 19;
+    public static final int LAMBDA_NODE = 20;
+    public static final int LET_NODE = 21;
+    public static final int DEFINE_NODE = 22;
+    public static final int ASSIGN_NODE = 23;
+    public static final int LOCAL_ASSIGN_NODE = 24;
+    public static final int CALL_NODE = 25;
+    public static final int INTERPRETED_NODE = 26;
+    public static final int FOLDED_NODE = 27;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private ByteBuffer in;
+    /** The channel _in_ is refilled from or null if _in_ holds everything. */
+    private ReadableByteChannel channel;
+    private Environment root;
+    private JitCompiler jit;
+    private List<Symbol> symbols = new ArrayList<Symbol>();
+
+    /**
+     * @param root
+     *            The root environment referred to by the nodes read.
+     * @param jit
+     *            Compiler passed to the lambda nodes read or null.
+     */
+    public ImageInput(ByteBuffer in, Environment root, JitCompiler jit) {
+        this.in = in;
+        this.root = root;
+        this.jit = jit;
+    }
+
+    /**
+     * Read from _channel_ through a buffer, so the image does not have to fit
+     * into memory.
+     */
+    public ImageInput(ReadableByteChannel channel, Environment root, JitCompiler jit) {
+        this(ByteBuffer.allocate(BUFFER_SIZE).flip(), root, jit);
+        this.channel = channel;
+    }
+
+    protected Environment getRoot() {
+        return this.root;
+    }
+
+    protected JitCompiler getCompiler() {
+        return this.jit;
+    }
+
+    /**
+     * Make sure that at least _count_ bytes can be read from the buffer.
+     */
+    private void require(int count) throws IOException {
+        if (this.in.remaining() >= count) {
+            return;
+        }
+        if (this.channel == null) {
+            throw new IOException("Unexpected end of image.");
+        }
+        if (count > this.in.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(count, this.in.capacity() * 2));
+            larger.put(this.in);
+            this.in = larger;
+        } else {
+            this.in.compact();
+        }
+        while (this.in.position() < count) {
+            if (this.channel.read(this.in) < 0) {
+                throw new IOException("Unexpected end of image.");
+            }
+        }
+        this.in.flip();
+    }
+
+    public int readByte() throws IOException {
+        if (!this.in.hasRemaining()) {
+            require(1);
+        }
+        return this.in.get() & 0xff;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public int readInt() throws IOException {
+        long value = readLong();
+        if (value > Integer.MAX_VALUE) {
+            throw new IOException("Integer out of range.");
+        }
+        return (int) value;
+    }
+
+    public long readLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed integer.");
+    }
+
+    public String readString() throws IOException {
+        int length = readInt();
+        require(length);
+        if (!this.in.hasArray()) {
+            byte[] bytes = new byte[length];
+            this.in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String value = new String(this.in.array(), this.in.arrayOffset() + this.in.position(), length,
+                StandardCharsets.UTF_8);
+        this.in.position(this.in.position() + length);
+        return value;
+    }
+
+    /**
+     * Read bytes written by {@link ImageOutput#writeBytes}.
+     * 
+     * @return A buffer containing the bytes. If this input reads from a
+     *         buffer, the bytes are not copied.
+     */
+    public ByteBuffer readBytes() throws IOException {
+        int length = readInt();
+        require(length);
+        ByteBuffer bytes;
+        if (this.channel == null) {
+            bytes = this.in.slice();
+            bytes.limit(length);
+        } else {
+            bytes = ByteBuffer.allocate(length);
+            bytes.put(this.in.array(), this.in.arrayOffset() + this.in.position(), length);
+            bytes.flip();
+        }
+        this.in.position(this.in.position() + length);
+        return bytes;
+    }
+
+    public Symbol readSymbol() throws IOException {
+        SExpr expr = readSExpr();
+        if (!(expr instanceof Symbol)) {
+            throw new IOException("Symbol expected.");
+        }
+        return (Symbol) expr;
+    }
+
+    public Symbol[] readSymbols() throws IOException {
+        Symbol[] syms = new Symbol[readInt()];
+        for (int i = 0; i < syms.length; ++i) {
+            syms[i] = readSymbol();
+        }
+        return syms;
+    }
+
+    public SExpr readSExpr() throws IOException {
+        return readSExpr(readByte());
+    }
+
+    /**
+     * Read the s-expression that starts with _tag_. Subclasses may support
+     * further tags.
+     */
+    protected SExpr readSExpr(int tag) throws IOException {
+        switch (tag) {
+        case SYMBOL:
+            Symbol sym = Symbol.intern(readString());
+            this.symbols.add(sym);
+            return sym;
+        case SYMBOL_REF:
+            int index = readInt();
+            if (index >= this.symbols.size()) {
+                throw new IOException("Undefined symbol reference.");
+            }
+            return this.symbols.get(index);
+        case FIXNUM:
+            return Number.valueOf(readLong());
+        case NEGATIVE_FIXNUM:
+            return Number.valueOf(-readLong() - 1);
+        case DECIMAL:
+            return Number.valueOf(new BigDecimal(readString()));
+        case LIST:
+        case CONSTANT_LIST:
+            SExpr[] elems = new SExpr[readInt()];
+            for (int i = 0; i < elems.length; ++i) {
+                elems[i] = readSExpr();
+            }
+            return CompactList.of(elems, readSExpr(), tag == CONSTANT_LIST);
+        default:
+            throw new IOException("Unknown s-expression tag " + tag + ".");
+        }
+    }
+
+    public SExpr[] readSExprs() throws IOException {
+        SExpr[] exprs = new SExpr[readInt()];
+        for (int i = 0; i < exprs.length; ++i) {
+            exprs[i] = readSExpr();
+        }
+        return exprs;
+    }
+
+    public Node readNode() throws IOException {
+        return readNode(readByte());
+    }
+
+    /**
+     * Read the node that starts with _tag_. Subclasses may support further
+     * tags.
+     */
+    protected Node readNode(int tag) throws IOException {
+        switch (tag) {
+        case CONSTANT_NODE:
+            return new ConstantNode(readSExpr());
+        case LOCAL_NODE:
+            return new LocalNode(readSymbol(), readInt(), readInt());
+        case GLOBAL_NODE:
+            return new GlobalNode(this.root, readSymbol());
+        case IF_NODE:
+            return new IfNode(readNode(), readNode(), readNode());
+        case LAMBDA_NODE:
+            return new LambdaNode(readSymbols(), readNodes(), this.jit);
+        case LET_NODE:
+            return new LetNode(readBoolean(), readSymbols(), readNodes(), readNodes());
+        case DEFINE_NODE:
+            return new DefineNode(this.root, readSymbol(), readNode());
+        case ASSIGN_NODE:
+            return new AssignNode(this.root, readSymbol(), readNode());
+        case LOCAL_ASSIGN_NODE:
+            return new LocalAssignNode(readSymbol(), readInt(), readInt(), readNode());
+        case CALL_NODE:
+            return readCall();
+        case INTERPRETED_NODE:
+            return new InterpretedNode(this.root, readSExpr());
+        case FOLDED_NODE:
+            SExpr value = readSExpr();
+            Symbol[] dependencies = readSymbols();
+            SExpr[] functions = new SExpr[dependencies.length];
+            for (int i = 0; i < dependencies.length; ++i) {
+                functions[i] = this.root.getBinding(dependencies[i]);
+            }
+            if (readByte() != CALL_NODE) {
+                throw new IOException("Call expected.");
+            }
+            return new FoldedNode(this.root, value, dependencies, functions, readCall());
+        default:
+            throw new IOException("Unknown node tag " + tag + ".");
+        }
+    }
+
+    public Node[] readNodes() throws IOException {
+        Node[] nodes = new Node[readInt()];
+        for (int i = 0; i < nodes.length; ++i) {
+            nodes[i] = readNode();
+        }
+        return nodes;
+    }
+
+    private CallNode readCall() throws IOException {
+        return new CallNode(this.root, readNode(), readNodes(), readSExprs());
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.image;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import yale.analyze.Node;
+import yale.eval.Cons;
+import yale.eval.Number;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+
+/**
+ * Writes s-expressions and analyzed nodes in the binary format read by
+ * {@link ImageInput}. Integers are written as variable-length quantities (7
+ * bits per byte), so small numbers such as slots or lengths take a single
+ * byte. The name of a symbol is written once, every further occurrence of the
+ * symbol refers to the index of its first occurrence.
+ */
+public class ImageOutput {
+
+    private static final int BUFFER_SIZE = 1 << 13;
+    /** The longest variable-length quantity, see {@link #writeLong(long)}. */
+    private static final int MAX_VARLONG_BYTES = 10;
+
+    private OutputStream out;
+    /**
+     * Bytes not yet passed to _out_. Most values are written a byte at a
+     * time, which would be slow on a (synchronized) buffered stream.
+     */
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int count;
+    private Map<Symbol, Integer> symbols = new IdentityHashMap<Symbol, Integer>();
+
+    /**
+     * @param out
+     *            Stream the image is written to. Written bytes are buffered
+     *            until {@link #flush()} is called.
+     */
+    public ImageOutput(OutputStream out) {
+        this.out = out;
+    }
+
+    public void writeByte(int value) throws IOException {
+        if (this.count == this.buffer.length) {
+            flushBuffer();
+        }
+        this.buffer[this.count++] = (byte) value;
+    }
+
+    public void writeBoolean(boolean value) throws IOException {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Write a non-negative integer.
+     */
+    public void writeInt(int value) throws IOException {
+        writeLong(value);
+    }
+
+    /**
+     * Write a non-negative long.
+     */
+    public void writeLong(long value) throws IOException {
+        if (this.count > this.buffer.length - MAX_VARLONG_BYTES) {
+            flushBuffer();
+        }
+        while ((value & ~0x7fL) != 0) {
+            this.buffer[this.count++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        this.buffer[this.count++] = (byte) value;
+    }
+
+    public void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        write(bytes);
+    }
+
+    /**
+     * Write _bytes_ preceded by their number, see
+     * {@link ImageInput#readBytes()}.
+     */
+    public void writeBytes(byte[] bytes) throws IOException {
+        writeInt(bytes.length);
+        write(bytes);
+    }
+
+    public void writeSymbol(Symbol sym) throws IOException {
+        Integer index = this.symbols.get(sym);
+        if (index != null) {
+            writeByte(ImageInput.SYMBOL_REF);
+            writeInt(index);
+        } else {
+            this.symbols.put(sym, this.symbols.size());
+            writeByte(ImageInput.SYMBOL);
+            writeString(sym.getName());
+        }
+    }
+
+    public void writeSymbols(Symbol[] syms) throws IOException {
+        writeInt(syms.length);
+        for (Symbol sym : syms) {
+            writeSymbol(sym);
+        }
+    }
+
+    /**
+     * Write _expr_, which may consist of symbols, numbers and cons pairs only.
+     * Lists are written iteratively, so long lists do not exhaust the stack.
+     *
+     * @throws IOException
+     *             if _expr_ contains any other s-expression (e.g. a function).
+     */
+    public void writeSExpr(SExpr expr) throws IOException {
+        if (expr instanceof Symbol) {
+            writeSymbol((Symbol) expr);
+        } else if (expr instanceof Number) {
+            Number num = (Number) expr;
+            if (num.isFixnum()) {
+                long value = num.getFixnum();
+                writeByte(value < 0 ? ImageInput.NEGATIVE_FIXNUM : ImageInput.FIXNUM);
+                writeLong(value < 0 ? -(value + 1) : value);
+            } else {
+                writeByte(ImageInput.DECIMAL);
+                writeString(num.getNumericValue().toString());
+            }
+        } else if (expr instanceof Cons) {
+            boolean constant = ((Cons) expr).isConstant();
+            int length = 0;
+            SExpr tail = expr;
+            while (tail instanceof Cons && ((Cons) tail).isConstant() == constant) {
+                ++length;
+                tail = tail.cdr();
+            }
+            writeByte(constant ? ImageInput.CONSTANT_LIST : ImageInput.LIST);
+            writeInt(length);
+            SExpr elem = expr;
+            for (int i = 0; i < length; ++i) {
+                writeSExpr(elem.car());
+                elem = elem.cdr();
+            }
+            writeSExpr(tail);
+        } else {
+            throw new IOException("Cannot write s-expression: " + expr);
+        }
+    }
+
+    public void writeSExprs(SExpr[] exprs) throws IOException {
+        writeInt(exprs.length);
+        for (SExpr expr : exprs) {
+            writeSExpr(expr);
+        }
+    }
+
+    public void writeNode(Node node) throws IOException {
+        node.write(this);
+    }
+
+    public void writeNodes(Node[] nodes) throws IOException {
+        writeInt(nodes.length);
+        for (Node node : nodes) {
+            writeNode(node);
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        if (bytes.length > this.buffer.length - this.count) {
+            flushBuffer();
+            if (bytes.length > this.buffer.length) {
+                this.out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, this.buffer, this.count, bytes.length);
+        this.count += bytes.length;
+    }
+
+    private void flushBuffer() throws IOException {
+        this.out.write(this.buffer, 0, this.count);
+        this.count = 0;
+    }
+
+    /**
+     * Pass all written bytes to the underlying stream and flush it.
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        this.out.flush();
+    }
+}
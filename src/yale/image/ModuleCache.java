@@ -0,0 +1,391 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.image;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+import yale.analyze.CallNode;
+import yale.analyze.FoldedNode;
+import yale.analyze.JitCompiler;
+import yale.analyze.Node;
+import yale.eval.Environment;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.main.Kernel;
+
+/**
+ * On-disk cache for the parsed and analyzed s-expressions of files loaded by
+ * the kernel function load. An entry is named after a CRC-32C hash of the
+ * source and the build of yale (see {@link #getBuildId()}), so a changed
+ * source or a rebuilt yale simply misses the cache. Since a hash may collide,
+ * every entry also contains the build id and the source it was built from,
+ * which are compared with those of the load.
+ *
+ * Analyzed nodes only depend on the bindings of the kernel's special forms
+ * (see {@link #canUseNodes}) and on the kernel functions of folded calls,
+ * which are checked when a folded call is read. Other symbols, e.g. aliases
+ * of special forms, are analyzed as calls which look up their binding when
+ * they are executed.
+ *
+ * An entry consists of a header (magic, version, build id, source and CRC-32
+ * of the payload) and the payload, which holds the s-expressions and, optionally,
+ * their analyzed nodes as separately encoded blocks. Entries are mapped into
+ * memory when read. An entry whose header or checksum does not match or that
+ * cannot be decoded is deleted and reported as a miss, so it is rebuilt by
+ * the next load.
+ */
+public class ModuleCache {
+
+    private static final byte[] MAGIC = { 'Y', 'M', 'O', 'D' };
+    /**
+     * Must be incremented whenever the format of entries or the analysis of
+     * s-expressions changes.
+     */
+    private static final int VERSION = 3;
+    private static final String EXTENSION = ".ymod";
+    /**
+     * Location of the build id on the classpath, written by the build target
+     * of build.xml.
+     */
+    private static final String BUILD_ID_LOCATION = "/build.id";
+
+    /** See {@link #getBuildId()}. */
+    private static String buildId;
+
+    /**
+     * Analyzed nodes are only valid if these symbols are bound to the special
+     * forms of the kernel, as they were when the nodes were analyzed.
+     */
+    private static final Symbol[] SPECIAL_FORMS = { Kernel.QUOTE, Kernel.LAMBDA, Kernel.LET, Kernel.LETREC,
+            Kernel.IF, Kernel.DEFINE, Kernel.ASSIGN };
+
+    private Path directory;
+
+    public ModuleCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return The cache in the directory given by the system property
+     *         yale.cache.dir (default: .yale/cache in the user's home) or
+     *         null if the system property yale.cache is set to false.
+     */
+    public static ModuleCache getDefault() {
+        if ("false".equals(System.getProperty("yale.cache"))) {
+            return null;
+        }
+        String dir = System.getProperty("yale.cache.dir");
+        if (dir == null) {
+            return new ModuleCache(Paths.get(System.getProperty("user.home"), ".yale", "cache"));
+        }
+        return new ModuleCache(Paths.get(dir));
+    }
+
+    /**
+     * @return The file of the entry for _source_.
+     */
+    Path getPath(ByteBuffer source) {
+        CRC32C hash = new CRC32C();
+        hash.update(ByteBuffer.allocate(8).putInt(VERSION).putInt(StdlibImage.VERSION).array());
+        hash.update(getBuildId().getBytes(StandardCharsets.UTF_8));
+        hash.update(source.duplicate());
+        String name = String.format("%08x-%x%s", hash.getValue(), source.remaining(), EXTENSION);
+        return this.directory.resolve(name);
+    }
+
+    /**
+     * @return An id which changes whenever the classes of yale change: the
+     *         checksum of the classes written by the build (see build.xml).
+     *         If it is missing (e.g. when running from classes compiled
+     *         otherwise), the classes on the classpath are hashed instead. If
+     *         they cannot be read either, the id is random, so entries are
+     *         only reused within this process.
+     */
+    static synchronized String getBuildId() {
+        if (buildId == null) {
+            try (InputStream in = ModuleCache.class.getResourceAsStream(BUILD_ID_LOCATION)) {
+                if (in != null) {
+                    buildId = new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+                }
+            } catch (IOException e) {
+                /* hash the classes instead */
+            }
+        }
+        if (buildId == null || buildId.isEmpty()) {
+            try {
+                Path location = Paths.get(ModuleCache.class.getProtectionDomain().getCodeSource().getLocation()
+                        .toURI());
+                CRC32C hash = new CRC32C();
+                hashClasses(location, location, hash);
+                buildId = Long.toHexString(hash.getValue());
+            } catch (IOException | URISyntaxException | RuntimeException e) {
+                buildId = UUID.randomUUID().toString();
+            }
+        }
+        return buildId;
+    }
+
+    /**
+     * Add the class files below _path_ (or the jar file _path_) to _hash_,
+     * in the order of their names.
+     */
+    private static void hashClasses(Path root, Path path, CRC32C hash) throws IOException {
+        if (!Files.isDirectory(path)) {
+            if (path == root || path.toString().endsWith(".class")) {
+                hash.update(root.relativize(path).toString().getBytes(StandardCharsets.UTF_8));
+                hash.update(Files.readAllBytes(path));
+            }
+            return;
+        }
+        List<Path> children = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            for (Path child : stream) {
+                children.add(child);
+            }
+        }
+        Collections.sort(children);
+        for (Path child : children) {
+            hashClasses(root, child, hash);
+        }
+    }
+
+    /**
+     * @return True if analyzed nodes can be read into and written from the
+     *         root environment of _kernel_.
+     */
+    public static boolean canUseNodes(Kernel kernel) {
+        Environment root = kernel.getRootEnvironment();
+        for (Symbol sym : SPECIAL_FORMS) {
+            if (root.findBinding(sym) != kernel.getBuiltin(sym)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The s-expressions of the entry for _source_ or null if
+     *         there is no valid entry.
+     */
+    public SExpr[] readForms(ByteBuffer source) {
+        ByteBuffer[] payload = readPayload(source);
+        if (payload == null) {
+            return null;
+        }
+        try {
+            ImageInput in = new ImageInput(payload[0], null, null);
+            return in.readSExprs();
+        } catch (IOException | RuntimeException e) {
+            invalidate(source);
+            return null;
+        }
+    }
+
+    /**
+     * @param kernel
+     *            The kernel whose root environment the nodes refer to (see
+     *            {@link #canUseNodes}).
+     * @param jit
+     *            Compiler for lambda forms or null.
+     * @return The analyzed s-expressions of the entry for _source_ or
+     *         null if there is no valid entry or it contains no nodes.
+     */
+    public Node[] readNodes(ByteBuffer source, Kernel kernel, JitCompiler jit) {
+        ByteBuffer[] payload = readPayload(source);
+        if (payload == null || payload[1] == null) {
+            return null;
+        }
+        try {
+            ImageInput in = new ModuleInput(payload[1], kernel, jit);
+            return in.readNodes();
+        } catch (IOException | RuntimeException e) {
+            invalidate(source);
+            return null;
+        }
+    }
+
+    /**
+     * Map the entry for _source_ and verify its header and checksum.
+     *
+     * @return The blocks of s-expressions and nodes (null if the entry has no
+     *         nodes) or null if there is no valid entry.
+     */
+    private ByteBuffer[] readPayload(ByteBuffer source) {
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(getPath(source))) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            invalidate(source);
+            return null;
+        }
+        try {
+            ImageInput in = new ImageInput(mapped, null, null);
+            for (byte b : MAGIC) {
+                if (in.readByte() != b) {
+                    throw new IOException("Not a yale module.");
+                }
+            }
+            if (in.readInt() != VERSION || !in.readBytes().equals(buildIdBytes())) {
+                throw new IOException("Stale module.");
+            }
+            if (!in.readBytes().equals(source)) {
+                throw new IOException("Source mismatch.");
+            }
+            long crc = in.readLong();
+            ByteBuffer payload = in.readBytes();
+            CRC32 checksum = new CRC32();
+            checksum.update(payload.duplicate());
+            if (checksum.getValue() != crc) {
+                throw new IOException("Checksum mismatch.");
+            }
+            in = new ImageInput(payload, null, null);
+            ByteBuffer forms = in.readBytes();
+            ByteBuffer nodes = in.readBoolean() ? in.readBytes() : null;
+            return new ByteBuffer[] { forms, nodes };
+        } catch (IOException | RuntimeException e) {
+            invalidate(source);
+            return null;
+        }
+    }
+
+    /**
+     * Write the entry for _source_. The entry is written to a temporary
+     * file first, so concurrent loads never see a partially written entry.
+     *
+     * @param nodes
+     *            The analyzed _forms_ or null.
+     */
+    public void write(ByteBuffer source, List<SExpr> forms, Node[] nodes) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        ImageOutput out = new ImageOutput(payload);
+        out.writeBytes(encodeForms(forms));
+        out.writeBoolean(nodes != null);
+        if (nodes != null) {
+            out.writeBytes(encodeNodes(nodes));
+        }
+        out.flush();
+        byte[] bytes = payload.toByteArray();
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes);
+
+        Files.createDirectories(this.directory);
+        Path tmp = Files.createTempFile(this.directory, "module", ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(tmp)) {
+                ImageOutput entry = new ImageOutput(stream);
+                for (byte b : MAGIC) {
+                    entry.writeByte(b);
+                }
+                entry.writeInt(VERSION);
+                entry.writeBytes(buildIdBytes().array());
+                byte[] text = new byte[source.remaining()];
+                source.duplicate().get(text);
+                entry.writeBytes(text);
+                entry.writeLong(checksum.getValue());
+                entry.writeBytes(bytes);
+                entry.flush();
+            }
+            Path path = getPath(source);
+            try {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static ByteBuffer buildIdBytes() {
+        return ByteBuffer.wrap(getBuildId().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] encodeForms(List<SExpr> forms) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageOutput out = new ImageOutput(bytes);
+        out.writeSExprs(forms.toArray(new SExpr[forms.size()]));
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeNodes(Node[] nodes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageOutput out = new ImageOutput(bytes);
+        out.writeNodes(nodes);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Delete the entry for _source_, e.g. because it is corrupt.
+     */
+    private void invalidate(ByteBuffer source) {
+        try {
+            Files.deleteIfExists(getPath(source));
+        } catch (IOException e) {
+            /* the entry stays invalid and is replaced by the next write */
+        }
+    }
+
+    /**
+     * Unlike the standard library, a module may be loaded after kernel
+     * functions have been redefined. A folded call is only restored if the
+     * functions it depends on are still those of the kernel, otherwise the
+     * call itself is restored.
+     */
+    private static class ModuleInput extends ImageInput {
+
+        private Kernel kernel;
+
+        ModuleInput(ByteBuffer in, Kernel kernel, JitCompiler jit) {
+            super(in, kernel.getRootEnvironment(), jit);
+            this.kernel = kernel;
+        }
+
+        @Override
+        protected Node readNode(int tag) throws IOException {
+            if (tag != FOLDED_NODE) {
+                return super.readNode(tag);
+            }
+            SExpr value = readSExpr();
+            Symbol[] dependencies = readSymbols();
+            Node call = readNode();
+            if (!(call instanceof CallNode)) {
+                throw new IOException("Call expected.");
+            }
+            SExpr[] functions = new SExpr[dependencies.length];
+            for (int i = 0; i < dependencies.length; ++i) {
+                functions[i] = getRoot().findBinding(dependencies[i]);
+                if (functions[i] != this.kernel.getBuiltin(dependencies[i])) {
+                    return call;
+                }
+            }
+            return new FoldedNode(getRoot(), value, dependencies, functions, (CallNode) call);
+        }
+    }
+}
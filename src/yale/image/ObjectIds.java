@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.image;
+
+import java.util.Arrays;
+
+/**
+ * Numbers of the objects written by a {@link SnapshotOutput}, keyed by their
+ * identity. Objects are numbered consecutively in the order they are added.
+ * A snapshot numbers every cons pair it writes, so an object is looked up and
+ * numbered with a single probe sequence (see {@link #add(Object)}) and a slot
+ * of the hash table holds the hash code and the number of its object in a
+ * single long: probing touches no other memory unless the hash codes match,
+ * and the numbers are not boxed.
+ */
+class ObjectIds {
+
+    /** Returned for objects which have not been numbered before. */
+    static final int ABSENT = -1;
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    /**
+     * Open addressing with linear probing, at most half full. A slot is 0 if
+     * it is empty, otherwise it holds the spread hash code of an object in
+     * the upper and its number plus 1 in the lower half.
+     */
+    private long[] slots = new long[INITIAL_CAPACITY];
+    /** The numbered objects by their number. */
+    private Object[] objects = new Object[INITIAL_CAPACITY / 2];
+    private int size;
+
+    /**
+     * Number _obj_ with the next number unless it has been numbered before.
+     *
+     * @return The number _obj_ had before or {@link #ABSENT} if it has been
+     *         numbered now.
+     */
+    int add(Object obj) {
+        return add(obj, hash(obj));
+    }
+
+    /**
+     * Like {@link #add(Object)}, with the hash code of _obj_ computed by
+     * {@link #hash(Object)} before.
+     */
+    int add(Object obj, int hash) {
+        int mask = this.slots.length - 1;
+        int i = hash & mask;
+        for (long slot = this.slots[i]; slot != 0; slot = this.slots[i]) {
+            if ((int) (slot >>> 32) == hash && this.objects[(int) slot - 1] == obj) {
+                return (int) slot - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        if (this.size == this.objects.length) {
+            this.objects = Arrays.copyOf(this.objects, this.size * 2);
+        }
+        this.objects[this.size++] = obj;
+        this.slots[i] = ((long) hash << 32) | this.size;
+        if (this.size * 2 > this.slots.length) {
+            grow();
+        }
+        return ABSENT;
+    }
+
+    private void grow() {
+        long[] oldSlots = this.slots;
+        this.slots = new long[oldSlots.length * 2];
+        int mask = this.slots.length - 1;
+        for (long slot : oldSlots) {
+            if (slot != 0) {
+                int i = (int) (slot >>> 32) & mask;
+                while (this.slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                this.slots[i] = slot;
+            }
+        }
+    }
+
+    /**
+     * Spread the identity hash code of _obj_ over the table, since similar
+     * hash codes would form long probe sequences.
+     */
+    static int hash(Object obj) {
+        int hash = System.identityHashCode(obj) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.image;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import yale.analyze.JitCompiler;
+import yale.eval.Environment;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.main.Kernel;
+
+/**
+ * Saves the root environment of a kernel, including all closures, frames and
+ * data reachable from it, and restores it into another kernel. A snapshot
+ * only contains the results of the code that built the root environment, so
+ * restoring it is faster than evaluating that code again; by how much depends
+ * on the work the code did (see SnapshotBenchmark). Writing a snapshot costs
+ * more than restoring it, since every cons pair is looked up by its identity
+ * to preserve shared structure.
+ *
+ * A snapshot contains the root bindings that differ from the builtins of the
+ * kernel, followed by the objects they refer to (see {@link SnapshotOutput}).
+ * Builtins are referred to by name, so a snapshot can only be restored by a
+ * kernel with the same builtins. Snapshots are written to and read from
+ * channels through a fixed-size buffer, so their size is not limited by the
+ * available memory for buffering.
+ */
+public class Snapshot {
+
+    private static final byte[] MAGIC = { 'Y', 'S', 'N', 'P' };
+    /**
+     * Must be incremented whenever the format of snapshots changes.
+     */
+    private static final int VERSION = 4;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Write a snapshot of the root environment of _kernel_ to _channel_. The
+     * channel is not closed.
+     */
+    public static void write(Kernel kernel, WritableByteChannel channel) throws IOException {
+        SnapshotOutput out = new SnapshotOutput(Channels.newOutputStream(channel), kernel);
+        for (byte b : MAGIC) {
+            out.writeByte(b);
+        }
+        out.writeInt(VERSION);
+
+        /* lazy definitions are part of the root environment as well */
+        kernel.getRootEnvironment().loadLazyDefinitions();
+        List<Map.Entry<Symbol, SExpr>> bindings = new ArrayList<Map.Entry<Symbol, SExpr>>();
+        for (Map.Entry<Symbol, SExpr> binding : kernel.getRootEnvironment().getBindings().entrySet()) {
+            if (kernel.getBuiltin(binding.getKey()) != binding.getValue()) {
+                bindings.add(binding);
+            }
+        }
+        out.writeInt(bindings.size());
+        for (Map.Entry<Symbol, SExpr> binding : bindings) {
+            out.writeSymbol(binding.getKey());
+            out.writeSExpr(binding.getValue());
+        }
+        out.writePending();
+        out.flush();
+    }
+
+    /**
+     * Restore a snapshot read from _channel_ into the root environment of
+     * _kernel_. Bindings of the snapshot replace existing root bindings.
+     *
+     * @param jit
+     *            Compiler for the restored lambda forms or null.
+     * @throws IOException
+     *             if _channel_ does not contain a valid snapshot of this
+     *             version of yale.
+     */
+    public static void read(ReadableByteChannel channel, Kernel kernel, JitCompiler jit) throws IOException {
+        SnapshotInput in = new SnapshotInput(channel, kernel, jit);
+        for (byte b : MAGIC) {
+            if (in.readByte() != b) {
+                throw new IOException("Not a yale snapshot.");
+            }
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + ".");
+        }
+
+        int count = in.readInt();
+        Symbol[] symbols = new Symbol[count];
+        SExpr[] values = new SExpr[count];
+        for (int i = 0; i < count; ++i) {
+            symbols[i] = in.readSymbol();
+            values[i] = in.readSExpr();
+        }
+        in.readPending();
+
+        Environment root = kernel.getRootEnvironment();
+        for (int i = 0; i < count; ++i) {
+            if (root.findBinding(symbols[i]) != null) {
+                root.updateBinding(symbols[i], values[i]);
+            } else {
+                root.defineBinding(symbols[i], values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.image;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import yale.analyze.Closure;
+import yale.analyze.Frame;
+import yale.analyze.FrameEnvironment;
+import yale.analyze.JitCompiler;
+import yale.analyze.LambdaNode;
+import yale.analyze.Node;
+import yale.eval.CompactList;
+import yale.eval.DoubleVector;
+import yale.eval.Environment;
+import yale.eval.HashTable;
+import yale.eval.PersistentMap;
+import yale.eval.PersistentVector;
+import yale.eval.Lambda;
+import yale.eval.LongVector;
+import yale.eval.SExpr;
+import yale.eval.SExprVector;
+import yale.eval.Symbol;
+import yale.main.Kernel;
+
+/**
+ * Reads the object graph written by {@link SnapshotOutput}. Objects are
+ * numbered in the order in which the writer encountered them, so every object
+ * reserves its number before its fields are read.
+ */
+class SnapshotInput extends ImageInput {
+
+    /* tags in addition to those of ImageInput */
+    static final int REF = 32;
+    static final int NULL = 33;
+    static final int BUILTIN = 34;
+    static final int CLOSURE = 35;
+    static final int LAMBDA = 36;
+    static final int FRAME = 37;
+    static final int ENVIRONMENT = 38;
+    static final int FRAME_ENVIRONMENT = 39;
+    static final int VECTOR = 40;
+    static final int LONG_VECTOR = 41;
+    static final int DOUBLE_VECTOR = 42;
+    static final int HASH_TABLE = 43;
+    static final int PERSISTENT_VECTOR = 44;
+    static final int PERSISTENT_MAP = 45;
+    static final int COMPACT_LIST = 46;
+    static final int CONSTANT_COMPACT_LIST = 47;
+    static final int COMPACT_LIST_REF = 48;
+
+    /** The number of the root environment. */
+    static final int ROOT_ID = 0;
+
+    private Kernel kernel;
+    private List<Object> objects = new ArrayList<Object>();
+    /** Frames and environments whose bindings have not been read yet. */
+    private ArrayDeque<Object> pending = new ArrayDeque<Object>();
+
+    SnapshotInput(ReadableByteChannel channel, Kernel kernel, JitCompiler jit) {
+        super(channel, kernel.getRootEnvironment(), jit);
+        this.kernel = kernel;
+        this.objects.add(kernel.getRootEnvironment());
+    }
+
+    private int reserve() {
+        this.objects.add(null);
+        return this.objects.size() - 1;
+    }
+
+    private Object readReference() throws IOException {
+        int id = readInt();
+        if (id >= this.objects.size() || this.objects.get(id) == null) {
+            throw new IOException("Invalid object reference.");
+        }
+        return this.objects.get(id);
+    }
+
+    @Override
+    protected SExpr readSExpr(int tag) throws IOException {
+        int id;
+        switch (tag) {
+        case NULL:
+            return null;
+        case REF:
+            Object obj = readReference();
+            if (!(obj instanceof SExpr)) {
+                throw new IOException("S-expression expected.");
+            }
+            return (SExpr) obj;
+        case BUILTIN:
+            Symbol name = readSymbol();
+            SExpr builtin = this.kernel.getBuiltin(name);
+            if (builtin == null) {
+                throw new IOException("Unknown builtin " + name + ".");
+            }
+            return builtin;
+        case LIST:
+        case CONSTANT_LIST:
+            int length = readInt();
+            int first = this.objects.size();
+            for (int i = 0; i < length; ++i) {
+                reserve();
+            }
+            SExpr[] elems = new SExpr[length];
+            for (int i = 0; i < length; ++i) {
+                elems[i] = readSExpr();
+            }
+            SExpr list = CompactList.of(elems, readSExpr(), tag == CONSTANT_LIST);
+            SExpr curr = list;
+            for (int i = 0; i < length; ++i) {
+                this.objects.set(first + i, curr);
+                curr = curr.cdr();
+            }
+            return list;
+        case COMPACT_LIST:
+        case CONSTANT_COMPACT_LIST:
+            /* the elements and tail of a compact list cannot refer to it */
+            id = reserve();
+            SExpr[] array = new SExpr[readInt()];
+            if (array.length < CompactList.MIN_LENGTH) {
+                throw new IOException("Compact list too short.");
+            }
+            for (int i = 0; i < array.length; ++i) {
+                array[i] = readSExpr();
+            }
+            SExpr compact = CompactList.of(array, readSExpr(), tag == CONSTANT_COMPACT_LIST);
+            this.objects.set(id, compact);
+            return readView((CompactList) compact);
+        case COMPACT_LIST_REF:
+            obj = readReference();
+            if (!(obj instanceof CompactList)) {
+                throw new IOException("Compact list expected.");
+            }
+            return readView((CompactList) obj);
+        case CLOSURE:
+            id = reserve();
+            Node lambdaNode = readNode();
+            if (!(lambdaNode instanceof LambdaNode)) {
+                throw new IOException("Lambda node expected.");
+            }
+            Closure closure = new Closure((LambdaNode) lambdaNode, readFrame());
+            this.objects.set(id, closure);
+            return closure;
+        case LAMBDA:
+            id = reserve();
+            List<Symbol> variables = Arrays.asList(readSymbols());
+            List<SExpr> body = Arrays.asList(readSExprs());
+            Lambda lambda = new Lambda(variables, body, readEnvironment());
+            this.objects.set(id, lambda);
+            return lambda;
+        case VECTOR:
+            id = reserve();
+            SExprVector vector = new SExprVector(readInt(), null);
+            this.objects.set(id, vector);
+            for (int i = 0; i < vector.length(); ++i) {
+                vector.set(i, readSExpr());
+            }
+            return vector;
+        case LONG_VECTOR:
+            id = reserve();
+            LongVector longs = new LongVector(readInt(), 0);
+            this.objects.set(id, longs);
+            for (int i = 0; i < longs.length(); ++i) {
+                long zigzag = readLong();
+                longs.setLong(i, (zigzag >>> 1) ^ -(zigzag & 1));
+            }
+            return longs;
+        case DOUBLE_VECTOR:
+            id = reserve();
+            DoubleVector doubles = new DoubleVector(readInt(), 0);
+            this.objects.set(id, doubles);
+            for (int i = 0; i < doubles.length(); ++i) {
+                doubles.setDouble(i, Double.longBitsToDouble(readLong()));
+            }
+            return doubles;
+        case HASH_TABLE:
+            id = reserve();
+            HashTable table = new HashTable();
+            this.objects.set(id, table);
+            int size = readInt();
+            for (int i = 0; i < size; ++i) {
+                SExpr key = readSExpr();
+                table.put(key, readSExpr());
+            }
+            return table;
+        case PERSISTENT_VECTOR:
+            /* persistent objects cannot refer to themselves */
+            id = reserve();
+            PersistentVector elements = PersistentVector.EMPTY;
+            size = readInt();
+            for (int i = 0; i < size; ++i) {
+                elements = elements.push(readSExpr());
+            }
+            this.objects.set(id, elements);
+            return elements;
+        case PERSISTENT_MAP:
+            id = reserve();
+            PersistentMap map = PersistentMap.EMPTY;
+            size = readInt();
+            for (int i = 0; i < size; ++i) {
+                SExpr key = readSExpr();
+                map = map.put(key, readSExpr());
+            }
+            this.objects.set(id, map);
+            return map;
+        default:
+            return super.readSExpr(tag);
+        }
+    }
+
+    /**
+     * @return The view of the compact list _head_ at the offset read next.
+     */
+    private SExpr readView(CompactList head) throws IOException {
+        int offset = readInt();
+        if (offset < 0 || offset >= head.getElements().length) {
+            throw new IOException("Invalid offset into compact list.");
+        }
+        return CompactList.nthCdr(head, offset);
+    }
+
+    @Override
+    protected Node readNode(int tag) throws IOException {
+        if (tag == REF) {
+            Object obj = readReference();
+            if (!(obj instanceof LambdaNode)) {
+                throw new IOException("Lambda node expected.");
+            }
+            return (Node) obj;
+        } else if (tag == LAMBDA_NODE) {
+            int id = reserve();
+            Node node = super.readNode(tag);
+            this.objects.set(id, node);
+            return node;
+        }
+        return super.readNode(tag);
+    }
+
+    private Frame readFrame() throws IOException {
+        int tag = readByte();
+        if (tag == NULL) {
+            return null;
+        } else if (tag == REF) {
+            Object obj = readReference();
+            if (!(obj instanceof Frame)) {
+                throw new IOException("Frame expected.");
+            }
+            return (Frame) obj;
+        } else if (tag != FRAME) {
+            throw new IOException("Frame expected.");
+        }
+        int id = reserve();
+        Symbol[] variables = readSymbols();
+        Frame frame = new Frame(new SExpr[variables.length], readFrame(), variables);
+        this.objects.set(id, frame);
+        this.pending.add(frame);
+        return frame;
+    }
+
+    private Environment readEnvironment() throws IOException {
+        int tag = readByte();
+        int id;
+        switch (tag) {
+        case NULL:
+            return null;
+        case REF:
+            Object obj = readReference();
+            if (!(obj instanceof Environment)) {
+                throw new IOException("Environment expected.");
+            }
+            return (Environment) obj;
+        case FRAME_ENVIRONMENT:
+            id = reserve();
+            Frame frame = readFrame();
+            Environment frameEnv = new FrameEnvironment(frame, readEnvironment());
+            this.objects.set(id, frameEnv);
+            return frameEnv;
+        case ENVIRONMENT:
+            id = reserve();
+            Environment env = new Environment(readEnvironment());
+            this.objects.set(id, env);
+            this.pending.add(env);
+            return env;
+        default:
+            throw new IOException("Environment expected.");
+        }
+    }
+
+    /**
+     * Read the bindings of all frames and environments read so far (see
+     * {@link SnapshotOutput#writePending()}).
+     */
+    void readPending() throws IOException {
+        Object next;
+        while ((next = this.pending.poll()) != null) {
+            if (next instanceof Frame) {
+                SExpr[] slots = ((Frame) next).getSlots();
+                for (int i = 0; i < slots.length; ++i) {
+                    slots[i] = readSExpr();
+                }
+            } else {
+                Environment env = (Environment) next;
+                int count = readInt();
+                for (int i = 0; i < count; ++i) {
+                    env.defineBinding(readSymbol(), readSExpr());
+                }
+            }
+        }
+    }
+}
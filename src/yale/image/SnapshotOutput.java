@@ -0,0 +1,310 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.image;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+
+import yale.analyze.Closure;
+import yale.analyze.Frame;
+import yale.analyze.FrameEnvironment;
+import yale.analyze.LambdaNode;
+import yale.analyze.Node;
+import yale.eval.CompactList;
+import yale.eval.Cons;
+import yale.eval.DoubleVector;
+import yale.eval.Environment;
+import yale.eval.HashTable;
+import yale.eval.Lambda;
+import yale.eval.LongVector;
+import yale.eval.Number;
+import yale.eval.PersistentMap;
+import yale.eval.PersistentVector;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.eval.Vector;
+import yale.main.Kernel;
+
+/**
+ * Writes the object graph reachable from root bindings (see {@link Snapshot}).
+ * In addition to {@link ImageOutput}, it supports closures, vectors, hash
+ * tables, persistent vectors and maps, frames and environments and preserves
+ * the identity of shared objects: every cons pair, closure, vector, hash
+ * table, persistent vector or map, lambda node, frame and environment is
+ * written once and referred to by its number afterwards. The array of a
+ * compact list is written once as well and each of its views as the number
+ * of the array and an offset into it. Builtins of the kernel are written by
+ * name.
+ *
+ * The bindings of frames and environments are written after the object that
+ * led to them (see {@link #writePending()}), so cycles through frames (e.g. a
+ * closure bound in its own defining frame by letrec) and long chains of
+ * closures do not lead to deep recursion.
+ */
+class SnapshotOutput extends ImageOutput {
+
+    /** Maximum number of pairs of a list hashed at once, see {@link #writeList}. */
+    private static final int HASH_BATCH = 64;
+
+    private Kernel kernel;
+    private ObjectIds ids = new ObjectIds();
+    private int[] hashes = new int[HASH_BATCH];
+    /** Frames and environments whose bindings have not been written yet. */
+    private ArrayDeque<Object> pending = new ArrayDeque<Object>();
+
+    SnapshotOutput(OutputStream out, Kernel kernel) {
+        super(out);
+        this.kernel = kernel;
+        /* the root environment is numbered first, see SnapshotInput#ROOT_ID */
+        this.ids.add(kernel.getRootEnvironment());
+    }
+
+    /**
+     * Write _obj_ as a reference if it has been written before, otherwise
+     * assign it the next number.
+     *
+     * @return True if a reference was written.
+     */
+    private boolean writeReference(Object obj) throws IOException {
+        int id = this.ids.add(obj);
+        if (id == ObjectIds.ABSENT) {
+            return false;
+        }
+        writeByte(SnapshotInput.REF);
+        writeInt(id);
+        return true;
+    }
+
+    /**
+     * Write _expr_, which may also be null (e.g. an uninitialized slot of a
+     * letrec frame).
+     */
+    @Override
+    public void writeSExpr(SExpr expr) throws IOException {
+        if (expr == null) {
+            writeByte(SnapshotInput.NULL);
+        } else if (expr instanceof Symbol || expr instanceof Number) {
+            super.writeSExpr(expr);
+        } else if (expr instanceof CompactList) {
+            writeCompactList((CompactList) expr);
+        } else if (expr instanceof Cons) {
+            writeList((Cons) expr);
+        } else if (this.kernel.getBuiltinName(expr) != null) {
+            writeByte(SnapshotInput.BUILTIN);
+            writeSymbol(this.kernel.getBuiltinName(expr));
+        } else if (writeReference(expr)) {
+            return;
+        } else if (expr instanceof Closure) {
+            Closure closure = (Closure) expr;
+            writeByte(SnapshotInput.CLOSURE);
+            writeNode(closure.getLambda());
+            writeFrame(closure.getDefFrame());
+        } else if (expr instanceof Lambda) {
+            Lambda lambda = (Lambda) expr;
+            List<Symbol> variables = lambda.getVariables();
+            List<SExpr> body = lambda.getBody();
+            writeByte(SnapshotInput.LAMBDA);
+            writeSymbols(variables.toArray(new Symbol[variables.size()]));
+            writeSExprs(body.toArray(new SExpr[body.size()]));
+            writeEnvironment(lambda.getDefEnv());
+        } else if (expr instanceof Vector) {
+            writeVector((Vector) expr);
+        } else if (expr instanceof HashTable) {
+            HashTable table = (HashTable) expr;
+            writeByte(SnapshotInput.HASH_TABLE);
+            writeInt(table.size());
+            writeEntries(table.toList(true), table.toList(false));
+        } else if (expr instanceof PersistentVector) {
+            PersistentVector vector = (PersistentVector) expr;
+            writeByte(SnapshotInput.PERSISTENT_VECTOR);
+            writeInt(vector.length());
+            for (int i = 0; i < vector.length(); ++i) {
+                writeSExpr(vector.get(i));
+            }
+        } else if (expr instanceof PersistentMap) {
+            /* versions of a map that share nodes are written separately */
+            PersistentMap map = (PersistentMap) expr;
+            writeByte(SnapshotInput.PERSISTENT_MAP);
+            writeInt(map.size());
+            writeEntries(map.toList(true), map.toList(false));
+        } else {
+            throw new IOException("Cannot write s-expression: " + expr);
+        }
+    }
+
+    /**
+     * Write the pairs of corresponding elements of _keys_ and _values_.
+     */
+    private void writeEntries(SExpr keys, SExpr values) throws IOException {
+        for (; keys != Symbol.NIL; keys = keys.cdr()) {
+            writeSExpr(keys.car());
+            writeSExpr(values.car());
+            values = values.cdr();
+        }
+    }
+
+    /**
+     * Write the cons pairs of _list_ up to the first one that has been written
+     * before, differs in being constant or is a compact list.
+     */
+    private void writeList(Cons list) throws IOException {
+        if (writeReference(list)) {
+            return;
+        }
+        boolean constant = list.isConstant();
+        int length = 1;
+        SExpr tail = list.cdr();
+        boolean shared = false;
+        while (!shared && continuesList(tail, constant)) {
+            /*
+             * The hash codes of a run of pairs are computed before the pairs
+             * are numbered: computing the identity hash code of an object for
+             * the first time updates its header atomically, which would
+             * otherwise wait for the table store of the previous pair.
+             */
+            int count = 0;
+            for (SExpr pair = tail; count < HASH_BATCH && continuesList(pair, constant); pair = pair.cdr()) {
+                this.hashes[count++] = ObjectIds.hash(pair);
+            }
+            for (int i = 0; i < count && !shared; ++i) {
+                shared = this.ids.add(tail, this.hashes[i]) != ObjectIds.ABSENT;
+                if (!shared) {
+                    ++length;
+                    tail = tail.cdr();
+                }
+            }
+        }
+        writeByte(constant ? ImageInput.CONSTANT_LIST : ImageInput.LIST);
+        writeInt(length);
+        SExpr elem = list;
+        for (int i = 0; i < length; ++i) {
+            writeSExpr(elem.car());
+            elem = elem.cdr();
+        }
+        writeSExpr(tail);
+    }
+
+    /**
+     * @return True if _expr_ is a cons pair which is written as part of a list
+     *         whose pairs are _constant_.
+     */
+    private static boolean continuesList(SExpr expr, boolean constant) {
+        return expr instanceof Cons && !(expr instanceof CompactList) && ((Cons) expr).isConstant() == constant;
+    }
+
+    /**
+     * The views of a compact list are keyed by their array, which is written
+     * with the first of them.
+     */
+    private void writeCompactList(CompactList list) throws IOException {
+        SExpr[] elements = list.getElements();
+        int id = this.ids.add(elements);
+        if (id != ObjectIds.ABSENT) {
+            writeByte(SnapshotInput.COMPACT_LIST_REF);
+            writeInt(id);
+        } else {
+            writeByte(list.isConstant() ? SnapshotInput.CONSTANT_COMPACT_LIST : SnapshotInput.COMPACT_LIST);
+            writeInt(elements.length);
+            for (SExpr elem : elements) {
+                writeSExpr(elem);
+            }
+            writeSExpr(list.tail());
+        }
+        writeInt(list.getOffset());
+    }
+
+    /**
+     * Numeric vectors are written unboxed: longs in zigzag encoding (so small
+     * negative numbers take a single byte), doubles as their raw bits.
+     */
+    private void writeVector(Vector vector) throws IOException {
+        int length = vector.length();
+        if (vector instanceof LongVector) {
+            writeByte(SnapshotInput.LONG_VECTOR);
+            writeInt(length);
+            for (int i = 0; i < length; ++i) {
+                long value = ((LongVector) vector).getLong(i);
+                writeLong((value << 1) ^ (value >> 63));
+            }
+        } else if (vector instanceof DoubleVector) {
+            writeByte(SnapshotInput.DOUBLE_VECTOR);
+            writeInt(length);
+            for (int i = 0; i < length; ++i) {
+                writeLong(Double.doubleToRawLongBits(((DoubleVector) vector).getDouble(i)));
+            }
+        } else {
+            writeByte(SnapshotInput.VECTOR);
+            writeInt(length);
+            for (int i = 0; i < length; ++i) {
+                writeSExpr(vector.get(i));
+            }
+        }
+    }
+
+    /**
+     * Lambda nodes are shared by all closures of a lambda form, so they keep
+     * their identity.
+     */
+    @Override
+    public void writeNode(Node node) throws IOException {
+        if (node instanceof LambdaNode && writeReference(node)) {
+            return;
+        }
+        super.writeNode(node);
+    }
+
+    private void writeFrame(Frame frame) throws IOException {
+        if (frame == null) {
+            writeByte(SnapshotInput.NULL);
+        } else if (!writeReference(frame)) {
+            writeByte(SnapshotInput.FRAME);
+            writeSymbols(frame.getVariables());
+            writeFrame(frame.getParent());
+            this.pending.add(frame);
+        }
+    }
+
+    private void writeEnvironment(Environment env) throws IOException {
+        if (env == null) {
+            writeByte(SnapshotInput.NULL);
+        } else if (writeReference(env)) {
+            return;
+        } else if (env instanceof FrameEnvironment) {
+            writeByte(SnapshotInput.FRAME_ENVIRONMENT);
+            writeFrame(((FrameEnvironment) env).getFrame());
+            writeEnvironment(env.getParent());
+        } else {
+            writeByte(SnapshotInput.ENVIRONMENT);
+            writeEnvironment(env.getParent());
+            this.pending.add(env);
+        }
+    }
+
+    /**
+     * Write the bindings of all frames and environments written so far,
+     * including those reached while doing so.
+     */
+    void writePending() throws IOException {
+        Object next;
+        while ((next = this.pending.poll()) != null) {
+            if (next instanceof Frame) {
+                for (SExpr value : ((Frame) next).getSlots()) {
+                    writeSExpr(value);
+                }
+            } else {
+                Map<Symbol, SExpr> bindings = ((Environment) next).getBindings();
+                writeInt(bindings.size());
+                for (Map.Entry<Symbol, SExpr> binding : bindings.entrySet()) {
+                    writeSymbol(binding.getKey());
+                    writeSExpr(binding.getValue());
+                }
+            }
+        }
+    }
+}
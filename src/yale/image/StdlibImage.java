@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.image;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import yale.analyze.Analyzer;
+import yale.analyze.DefineNode;
+import yale.analyze.JitCompiler;
+import yale.analyze.Node;
+import yale.eval.Environment;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.exception.ParseError;
+import yale.main.Kernel;
+import yale.parse.SExprReader;
+
+/**
+ * The standard library in a precompiled binary form. The image is created at
+ * build time (ant target image) and contains every top-level s-expression of
+ * the standard library together with its analyzed node tree, so a new yale
+ * instance neither has to parse nor to analyze the standard library.
+ *
+ * Analysis depends on the root bindings at the time an s-expression is
+ * analyzed (e.g. whether a call can be folded), hence every s-expression is
+ * executed before the next one is analyzed, just like when the standard
+ * library is loaded from source.
+ *
+ * The image is read from the classpath once and kept in memory. Every entry
+ * of the image records the symbol it defines and is encoded on its own, so a
+ * yale instance decodes an s-expression or node only when it is needed (e.g.
+ * when a lazily loaded definition is used for the first time).
+ */
+public class StdlibImage {
+
+    /**
+     * Location of the image on the classpath.
+     */
+    public static final String LOCATION = "/stdlib.img";
+
+    private static final byte[] MAGIC = { 'Y', 'I', 'M', 'G' };
+    /**
+     * Must be incremented whenever the format of images or the analysis of
+     * s-expressions changes.
+     */
+    static final int VERSION = 3;
+
+    /** The image found on the classpath, see {@link #getResource()}. */
+    private static byte[] resource;
+    private static boolean resourceLoaded;
+
+    private Environment root;
+    private JitCompiler jit;
+    private Symbol[] definedSymbols;
+    private ByteBuffer[] forms;
+    private ByteBuffer[] nodes;
+
+    private StdlibImage(Environment root, JitCompiler jit, Symbol[] definedSymbols, ByteBuffer[] forms,
+            ByteBuffer[] nodes) {
+        this.root = root;
+        this.jit = jit;
+        this.definedSymbols = definedSymbols;
+        this.forms = forms;
+        this.nodes = nodes;
+    }
+
+    /**
+     * @return The number of top-level s-expressions of the standard library.
+     */
+    public int size() {
+        return this.forms.length;
+    }
+
+    /**
+     * @return The symbol defined by the top-level s-expression _index_ or null
+     *         if it is not a define form.
+     */
+    public Symbol getDefinedSymbol(int index) {
+        return this.definedSymbols[index];
+    }
+
+    public SExpr readForm(int index) throws IOException {
+        return new ImageInput(this.forms[index].duplicate(), this.root, this.jit).readSExpr();
+    }
+
+    /**
+     * @return The analyzed top-level s-expression _index_, which can be
+     *         executed in the root environment passed to {@link #read}.
+     */
+    public Node readNode(int index) throws IOException {
+        return new ImageInput(this.nodes[index].duplicate(), this.root, this.jit).readNode();
+    }
+
+    /**
+     * Parse and analyze the standard library read from _source_ and write its
+     * image to _out_.
+     */
+    public static void write(Reader source, OutputStream out) throws IOException, ParseError {
+        Kernel kernel = new Kernel();
+        Analyzer analyzer = new Analyzer(kernel.getRootEnvironment(), null);
+        ImageOutput image = new ImageOutput(out);
+        for (byte b : MAGIC) {
+            image.writeByte(b);
+        }
+        image.writeInt(VERSION);
+
+        List<SExpr> forms = new ArrayList<SExpr>();
+        List<Node> nodes = new ArrayList<Node>();
+        try (SExprReader reader = new SExprReader(source)) {
+            SExpr expr;
+            while ((expr = reader.read()) != null) {
+                Node node = analyzer.analyze(expr);
+                node.exec(null);
+                forms.add(expr);
+                nodes.add(node);
+            }
+        }
+        image.writeInt(forms.size());
+        for (int i = 0; i < forms.size(); ++i) {
+            Node node = nodes.get(i);
+            image.writeBoolean(node instanceof DefineNode);
+            if (node instanceof DefineNode) {
+                image.writeString(((DefineNode) node).getSymbol().getName());
+            }
+            ByteArrayOutputStream form = new ByteArrayOutputStream();
+            ImageOutput formOut = new ImageOutput(form);
+            formOut.writeSExpr(forms.get(i));
+            formOut.flush();
+            image.writeBytes(form.toByteArray());
+            ByteArrayOutputStream analyzed = new ByteArrayOutputStream();
+            ImageOutput nodeOut = new ImageOutput(analyzed);
+            nodeOut.writeNode(node);
+            nodeOut.flush();
+            image.writeBytes(analyzed.toByteArray());
+        }
+        image.flush();
+    }
+
+    /**
+     * Read the index of an image written by {@link #write}. The entries are
+     * decoded by {@link #readForm} and {@link #readNode}.
+     *
+     * @param root
+     *            The root environment of the kernel the standard library is
+     *            loaded into.
+     * @param jit
+     *            Compiler for lambda forms of the standard library or null.
+     * @return The image or null if it was written by an incompatible version
+     *         of yale.
+     * @throws IOException
+     *             if _in_ does not contain a valid image.
+     */
+    public static StdlibImage read(ByteBuffer in, Environment root, JitCompiler jit) throws IOException {
+        ImageInput image = new ImageInput(in, root, jit);
+        for (byte b : MAGIC) {
+            if (image.readByte() != b) {
+                throw new IOException("Not a yale image.");
+            }
+        }
+        if (image.readInt() != VERSION) {
+            return null;
+        }
+        int count = image.readInt();
+        Symbol[] definedSymbols = new Symbol[count];
+        ByteBuffer[] forms = new ByteBuffer[count];
+        ByteBuffer[] nodes = new ByteBuffer[count];
+        for (int i = 0; i < count; ++i) {
+            if (image.readBoolean()) {
+                definedSymbols[i] = Symbol.intern(image.readString());
+            }
+            forms[i] = image.readBytes();
+            nodes[i] = image.readBytes();
+        }
+        return new StdlibImage(root, jit, definedSymbols, forms, nodes);
+    }
+
+    /**
+     * @return The image at {@link #LOCATION} on the classpath or null if there
+     *         is none (e.g. when running from a build without the image
+     *         target).
+     */
+    public static synchronized ByteBuffer getResource() throws IOException {
+        if (!resourceLoaded) {
+            try (InputStream in = StdlibImage.class.getResourceAsStream(LOCATION)) {
+                resource = in == null ? null : in.readAllBytes();
+            }
+            resourceLoaded = true;
+        }
+        return resource == null ? null : ByteBuffer.wrap(resource);
+    }
+
+    /**
+     * Create an image. Used by the build.
+     *
+     * @param args
+     *            The source of the standard library and the image file.
+     */
+    public static void main(String[] args) throws IOException, ParseError {
+        if (args.length != 2) {
+            System.err.println("Usage: StdlibImage <stdlib.yl> <stdlib.img>");
+            System.exit(1);
+        }
+        try (Reader source = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+                OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(args[1])))) {
+            write(source, out);
+        }
+    }
+}
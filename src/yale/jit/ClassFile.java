@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal writer for JVM class files: it supports a constant pool, fields and
+ * methods with a code attribute, which is all the JIT compiler needs. Classes
+ * are written in class file version 49, which is still verified by type
+ * inference and therefore does not require stack map frames.
+ */
+public class ClassFile {
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    private static final int VERSION = 49;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private DataOutputStream pool = new DataOutputStream(poolBytes);
+    private Map<String, Integer> poolIndex = new HashMap<String, Integer>();
+    private int poolSize = 1;
+
+    private int thisClass;
+    private int superClass;
+    private int[] interfaces;
+    private List<byte[]> fields = new ArrayList<byte[]>();
+    private List<Object[]> methods = new ArrayList<Object[]>();
+
+    /**
+     * @param name
+     *            Internal name of the class (e.g. yale/analyze/Foo).
+     * @param superName
+     *            Internal name of the super class.
+     * @param interfaceNames
+     *            Internal names of the implemented interfaces.
+     */
+    public ClassFile(String name, String superName, String... interfaceNames) {
+        this.thisClass = classRef(name);
+        this.superClass = classRef(superName);
+        this.interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; ++i) {
+            this.interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    public void addField(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0); // no attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        this.fields.add(bytes.toByteArray());
+    }
+
+    /**
+     * Add a method. Its bytecode is emitted into the returned object, which
+     * must be complete before {@link #toByteArray} is called.
+     */
+    public Code addMethod(int access, String name, String descriptor, boolean isStatic) {
+        Code code = new Code(this, descriptor, isStatic);
+        this.methods.add(new Object[] { access, utf8(name), utf8(descriptor), code });
+        return code;
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            int codeAttribute = utf8("Code");
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(this.poolSize);
+            out.write(this.poolBytes.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(this.thisClass);
+            out.writeShort(this.superClass);
+            out.writeShort(this.interfaces.length);
+            for (int itf : this.interfaces) {
+                out.writeShort(itf);
+            }
+            out.writeShort(this.fields.size());
+            for (byte[] field : this.fields) {
+                out.write(field);
+            }
+            out.writeShort(this.methods.size());
+            for (Object[] method : this.methods) {
+                out.writeShort((Integer) method[0]);
+                out.writeShort((Integer) method[1]);
+                out.writeShort((Integer) method[2]);
+                out.writeShort(1); // one attribute: Code
+                Code code = (Code) method[3];
+                byte[] instructions = code.toByteArray();
+                out.writeShort(codeAttribute);
+                out.writeInt(12 + instructions.length);
+                out.writeShort(code.getMaxStack());
+                out.writeShort(code.getMaxLocals());
+                out.writeInt(instructions.length);
+                out.write(instructions);
+                out.writeShort(0); // no exception table
+                out.writeShort(0); // no attributes
+            }
+            out.writeShort(0); // no class attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    int utf8(String value) {
+        Integer index = this.poolIndex.get("U" + value);
+        if (index == null) {
+            index = newEntry("U" + value);
+            try {
+                this.pool.writeByte(CONSTANT_UTF8);
+                this.pool.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return index;
+    }
+
+    int integer(int value) {
+        Integer index = this.poolIndex.get("I" + value);
+        if (index == null) {
+            index = newEntry("I" + value);
+            try {
+                this.pool.writeByte(CONSTANT_INTEGER);
+                this.pool.writeInt(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return index;
+    }
+
+    int classRef(String name) {
+        Integer index = this.poolIndex.get("C" + name);
+        if (index == null) {
+            int nameIndex = utf8(name);
+            index = newEntry("C" + name);
+            writeEntry(CONSTANT_CLASS, nameIndex);
+        }
+        return index;
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor, boolean isInterface) {
+        return memberRef(isInterface ? CONSTANT_INTERFACE_METHODREF : CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        String key = tag + owner + "." + name + ":" + descriptor;
+        Integer index = this.poolIndex.get(key);
+        if (index == null) {
+            int classIndex = classRef(owner);
+            int nameAndType = nameAndType(name, descriptor);
+            index = newEntry(key);
+            writeEntry(tag, classIndex, nameAndType);
+        }
+        return index;
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        String key = "N" + name + ":" + descriptor;
+        Integer index = this.poolIndex.get(key);
+        if (index == null) {
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            index = newEntry(key);
+            writeEntry(CONSTANT_NAME_AND_TYPE, nameIndex, descriptorIndex);
+        }
+        return index;
+    }
+
+    private int newEntry(String key) {
+        int index = this.poolSize++;
+        if (index > 0xFFFF) {
+            throw new IllegalStateException("Constant pool too large.");
+        }
+        this.poolIndex.put(key, index);
+        return index;
+    }
+
+    private void writeEntry(int tag, int... indices) {
+        try {
+            this.pool.writeByte(tag);
+            for (int index : indices) {
+                this.pool.writeShort(index);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.jit;
+
+/**
+ * Bytecode of a single method. Only the instructions needed by the JIT
+ * compiler are supported. The maximum operand stack depth and the number of
+ * local variables are tracked while instructions are emitted.
+ */
+public class Code {
+
+    private static final int ACONST_NULL = 0x01;
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int ALOAD = 0x19;
+    private static final int AALOAD = 0x32;
+    private static final int ASTORE = 0x3a;
+    private static final int AASTORE = 0x53;
+    private static final int POP = 0x57;
+    private static final int DUP = 0x59;
+    private static final int SWAP = 0x5f;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IF_ICMPNE = 0xa0;
+    private static final int IF_ACMPEQ = 0xa5;
+    private static final int IF_ACMPNE = 0xa6;
+    private static final int GOTO = 0xa7;
+    private static final int ARETURN = 0xb0;
+    private static final int RETURN = 0xb1;
+    private static final int GETSTATIC = 0xb2;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int NEW = 0xbb;
+    private static final int ANEWARRAY = 0xbd;
+    private static final int CHECKCAST = 0xc0;
+    private static final int INSTANCEOF = 0xc1;
+    private static final int IFNULL = 0xc6;
+    private static final int IFNONNULL = 0xc7;
+
+    private ClassFile classFile;
+    private byte[] code = new byte[256];
+    private int length;
+    private int stackDepth;
+    private int maxStack;
+    private int maxLocals;
+    /**
+     * False after an unconditional jump or a return, until the next label.
+     */
+    private boolean reachable = true;
+
+    Code(ClassFile classFile, String descriptor, boolean isStatic) {
+        this.classFile = classFile;
+        this.maxLocals = argumentSlots(descriptor) + (isStatic ? 0 : 1);
+    }
+
+    /**
+     * Reserve a new local variable.
+     * 
+     * @return Its index.
+     */
+    public int newLocal() {
+        return this.maxLocals++;
+    }
+
+    public void aconstNull() {
+        op(ACONST_NULL, 1);
+    }
+
+    public void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            op(ICONST_0 + value, 1);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            op(BIPUSH, 1);
+            u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            op(SIPUSH, 1);
+            u2(value);
+        } else {
+            op(LDC_W, 1);
+            u2(this.classFile.integer(value));
+        }
+    }
+
+    public void aload(int local) {
+        op(ALOAD, 1);
+        u1(local);
+    }
+
+    public void astore(int local) {
+        op(ASTORE, -1);
+        u1(local);
+    }
+
+    public void aaload() {
+        op(AALOAD, -1);
+    }
+
+    public void aastore() {
+        op(AASTORE, -3);
+    }
+
+    public void pop() {
+        op(POP, -1);
+    }
+
+    public void dup() {
+        op(DUP, 1);
+    }
+
+    public void swap() {
+        op(SWAP, 0);
+    }
+
+    public void areturn() {
+        op(ARETURN, -1);
+        this.reachable = false;
+    }
+
+    public void vreturn() {
+        op(RETURN, 0);
+        this.reachable = false;
+    }
+
+    public void getstatic(String owner, String name, String descriptor) {
+        op(GETSTATIC, 1);
+        u2(this.classFile.fieldRef(owner, name, descriptor));
+    }
+
+    public void getfield(String owner, String name, String descriptor) {
+        op(GETFIELD, 0);
+        u2(this.classFile.fieldRef(owner, name, descriptor));
+    }
+
+    public void putfield(String owner, String name, String descriptor) {
+        op(PUTFIELD, -2);
+        u2(this.classFile.fieldRef(owner, name, descriptor));
+    }
+
+    public void invokevirtual(String owner, String name, String descriptor) {
+        op(INVOKEVIRTUAL, invocationEffect(descriptor, false));
+        u2(this.classFile.methodRef(owner, name, descriptor, false));
+    }
+
+    public void invokespecial(String owner, String name, String descriptor) {
+        op(INVOKESPECIAL, invocationEffect(descriptor, false));
+        u2(this.classFile.methodRef(owner, name, descriptor, false));
+    }
+
+    public void invokestatic(String owner, String name, String descriptor) {
+        op(INVOKESTATIC, invocationEffect(descriptor, true));
+        u2(this.classFile.methodRef(owner, name, descriptor, false));
+    }
+
+    public void invokeinterface(String owner, String name, String descriptor) {
+        op(INVOKEINTERFACE, invocationEffect(descriptor, false));
+        u2(this.classFile.methodRef(owner, name, descriptor, true));
+        u1(argumentSlots(descriptor) + 1);
+        u1(0);
+    }
+
+    public void anew(String type) {
+        op(NEW, 1);
+        u2(this.classFile.classRef(type));
+    }
+
+    public void anewarray(String componentType) {
+        op(ANEWARRAY, 0);
+        u2(this.classFile.classRef(componentType));
+    }
+
+    public void checkcast(String type) {
+        op(CHECKCAST, 0);
+        u2(this.classFile.classRef(type));
+    }
+
+    public void instanceOf(String type) {
+        op(INSTANCEOF, 0);
+        u2(this.classFile.classRef(type));
+    }
+
+    /** Pops an int, jumps if it is zero. */
+    public void ifeq(Label label) {
+        jump(IFEQ, -1, label);
+    }
+
+    /** Pops an int, jumps if it is not zero. */
+    public void ifne(Label label) {
+        jump(IFNE, -1, label);
+    }
+
+    /** Pops two ints, jumps if they differ. */
+    public void ifIcmpne(Label label) {
+        jump(IF_ICMPNE, -2, label);
+    }
+
+    /** Pops two references, jumps if they are identical. */
+    public void ifAcmpeq(Label label) {
+        jump(IF_ACMPEQ, -2, label);
+    }
+
+    /** Pops two references, jumps if they are not identical. */
+    public void ifAcmpne(Label label) {
+        jump(IF_ACMPNE, -2, label);
+    }
+
+    public void ifnull(Label label) {
+        jump(IFNULL, -1, label);
+    }
+
+    public void ifnonnull(Label label) {
+        jump(IFNONNULL, -1, label);
+    }
+
+    public void jump(Label label) {
+        jump(GOTO, 0, label);
+        this.reachable = false;
+    }
+
+    /**
+     * Place _label_ at the current position.
+     */
+    public void mark(Label label) {
+        label.position = this.length;
+        for (int[] pending : label.pendingJumps) {
+            putU2(pending[1], offset(label.position - pending[0]));
+        }
+        label.pendingJumps.clear();
+        if (!this.reachable) {
+            this.stackDepth = label.stackDepth;
+            this.reachable = true;
+        } else if (label.stackDepth >= 0 && label.stackDepth != this.stackDepth) {
+            throw new IllegalStateException("Inconsistent stack depth at label.");
+        }
+        label.stackDepth = this.stackDepth;
+    }
+
+    int getMaxStack() {
+        return this.maxStack;
+    }
+
+    int getMaxLocals() {
+        return this.maxLocals;
+    }
+
+    byte[] toByteArray() {
+        if (this.length > 0xFFFF) {
+            throw new IllegalStateException("Method too large.");
+        }
+        byte[] result = new byte[this.length];
+        System.arraycopy(this.code, 0, result, 0, this.length);
+        return result;
+    }
+
+    private void jump(int opcode, int effect, Label label) {
+        int start = this.length;
+        op(opcode, effect);
+        if (label.stackDepth < 0) {
+            label.stackDepth = this.stackDepth;
+        }
+        if (label.position >= 0) {
+            u2(offset(label.position - start));
+        } else {
+            /* patched once the label is placed (see mark) */
+            label.pendingJumps.add(new int[] { start, this.length });
+            u2(0);
+        }
+    }
+
+    private int offset(int offset) {
+        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+            throw new IllegalStateException("Jump offset too large.");
+        }
+        return offset;
+    }
+
+    private void op(int opcode, int effect) {
+        u1(opcode);
+        this.stackDepth += effect;
+        if (this.stackDepth < 0) {
+            throw new IllegalStateException("Operand stack underflow.");
+        }
+        this.maxStack = Math.max(this.maxStack, this.stackDepth);
+    }
+
+    private void u1(int value) {
+        if (this.length == this.code.length) {
+            byte[] grown = new byte[this.code.length * 2];
+            System.arraycopy(this.code, 0, grown, 0, this.length);
+            this.code = grown;
+        }
+        this.code[this.length++] = (byte) value;
+    }
+
+    private void u2(int value) {
+        u1(value >> 8);
+        u1(value);
+    }
+
+    private void putU2(int position, int value) {
+        this.code[position] = (byte) (value >> 8);
+        this.code[position + 1] = (byte) value;
+    }
+
+    private static int invocationEffect(String descriptor, boolean isStatic) {
+        int effect = -argumentSlots(descriptor) - (isStatic ? 0 : 1);
+        return descriptor.endsWith(")V") ? effect : effect + 1;
+    }
+
+    /**
+     * Count the local variable slots occupied by the parameters of a method
+     * descriptor. Only reference types and ints/booleans are supported.
+     */
+    private static int argumentSlots(String descriptor) {
+        int slots = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char ch = descriptor.charAt(i);
+            while (ch == '[') {
+                ch = descriptor.charAt(++i);
+            }
+            if (ch == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            ++i;
+            ++slots;
+        }
+        return slots;
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.jit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A position in the bytecode of a method which can be the target of a jump.
+ * Jumps to a label may be emitted before the label is placed, they are patched
+ * once its position is known.
+ */
+public class Label {
+
+    int position = -1;
+    /**
+     * Operand stack depth at this label, -1 if still unknown.
+     */
+    int stackDepth = -1;
+    /**
+     * Positions of jump instructions (and their offset operands) that refer to
+     * this label before it was placed.
+     */
+    List<int[]> pendingJumps = new ArrayList<int[]>();
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.main;
+
+/**
+ * The ways in which a Yale instance can evaluate s-expressions.
+ */
+public enum EvalMode {
+    /**
+     * Walk the s-expression tree directly (see {@link yale.eval.SExpr#eval}).
+     */
+    INTERPRET,
+    /**
+     * Analyze every top-level s-expression into a tree of executable nodes
+     * first (see {@link yale.analyze.Analyzer}) and execute the nodes.
+     */
+    ANALYZE,
+    /**
+     * Like {@link #ANALYZE}, but frequently called lambda forms are compiled
+     * to JVM bytecode (see {@link yale.analyze.JitCompiler}).
+     */
+    TIERED,
+    /**
+     * Like {@link #ANALYZE}, but the nodes are executed with a control stack
+     * on the heap (see {@link yale.analyze.Machine}), so the recursion depth
+     * is not limited by the Java stack.
+     */
+    MACHINE;
+
+    /**
+     * The mode used if none is specified. It can be overridden by setting the
+     * system property _yale.mode_ to the name of a mode (case-insensitive).
+     */
+    public static EvalMode getDefault() {
+        String mode = System.getProperty("yale.mode");
+        return mode == null ? ANALYZE : EvalMode.valueOf(mode.toUpperCase());
+    }
+}
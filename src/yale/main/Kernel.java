@@ -5,21 +5,41 @@
  */
 package yale.main;
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
+import yale.analyze.Machine;
+import yale.eval.CompactList;
 import yale.eval.Cons;
+import yale.eval.DoubleVector;
 import yale.eval.Environment;
+import yale.eval.FixedArityFunction;
 import yale.eval.Function;
+import yale.eval.HashTable;
+import yale.eval.Lambda;
 import yale.eval.Let;
+import yale.eval.LongVector;
 import yale.eval.Number;
+import yale.eval.PersistentMap;
+import yale.eval.PersistentVector;
 import yale.eval.Printer;
 import yale.eval.SExpr;
+import yale.eval.SExprVector;
 import yale.eval.SpecialForm;
 import yale.eval.Symbol;
+import yale.eval.TailCall;
+import yale.eval.Vector;
 import yale.exception.ParseError;
+import yale.parse.MappedSource;
 import yale.parse.Parser;
 
 /**
@@ -30,61 +50,156 @@ import yale.parse.Parser;
  */
 public class Kernel {
 
-    public static final Symbol QUOTE = new Symbol("quote");
-    public static final Symbol LAMBDA = new Symbol("lambda");
-    public static final Symbol LET = new Symbol("let");
-    public static final Symbol LETREC = new Symbol("letrec");
-    public static final Symbol IF = new Symbol("if");
-    public static final Symbol DEFINE = new Symbol("define");
-    public static final Symbol ASSIGN = new Symbol("assign");
-
-    public static final Symbol CONS = new Symbol("cons");
-    public static final Symbol CAR = new Symbol("car");
-    public static final Symbol CDR = new Symbol("cdr");
-
-    public static final Symbol T = new Symbol("t");
-    public static final Symbol NOT = new Symbol("not");
-    public static final Symbol EQL = new Symbol("eql");
-    public static final Symbol NULLP = new Symbol("nullp");
-    public static final Symbol CONSP = new Symbol("consp");
-    public static final Symbol ATOMP = new Symbol("atomp");
-    public static final Symbol NUMBERP = new Symbol("numberp");
-
-    public static final Symbol ADD = new Symbol("+");
-    public static final Symbol SUB = new Symbol("-");
-    public static final Symbol MULT = new Symbol("*");
-    public static final Symbol DIV = new Symbol("/");
-    public static final Symbol GT = new Symbol(">");
-    public static final Symbol MOD = new Symbol("mod");
-
-    public static final Symbol EXIT = new Symbol("exit");
-    public static final Symbol PRINT = new Symbol("print");
-    public static final Symbol PRINTLN = new Symbol("println");
-    public static final Symbol READ = new Symbol("read");
+    public static final Symbol QUOTE = Symbol.intern("quote");
+    public static final Symbol LAMBDA = Symbol.intern("lambda");
+    public static final Symbol LET = Symbol.intern("let");
+    public static final Symbol LETREC = Symbol.intern("letrec");
+    public static final Symbol IF = Symbol.intern("if");
+    public static final Symbol DEFINE = Symbol.intern("define");
+    public static final Symbol ASSIGN = Symbol.intern("assign");
+
+    public static final Symbol CONS = Symbol.intern("cons");
+    public static final Symbol CAR = Symbol.intern("car");
+    public static final Symbol CDR = Symbol.intern("cdr");
+    public static final Symbol NTH = Symbol.intern("nth");
+    public static final Symbol NTHCDR = Symbol.intern("nthcdr");
+
+    public static final Symbol LENGTH = Symbol.intern("length");
+    public static final Symbol APPEND = Symbol.intern("append");
+    public static final Symbol REVERSE = Symbol.intern("reverse");
+    public static final Symbol MAP = Symbol.intern("map");
+    public static final Symbol REDUCE = Symbol.intern("reduce");
+    public static final Symbol RANGE = Symbol.intern("range");
+    public static final Symbol TREE_EQUAL = Symbol.intern("tree-equal");
+
+    public static final Symbol T = Symbol.intern("t");
+    public static final Symbol NOT = Symbol.intern("not");
+    public static final Symbol EQL = Symbol.intern("eql");
+    public static final Symbol NULLP = Symbol.intern("nullp");
+    public static final Symbol CONSP = Symbol.intern("consp");
+    public static final Symbol ATOMP = Symbol.intern("atomp");
+    public static final Symbol NUMBERP = Symbol.intern("numberp");
+
+    public static final Symbol ADD = Symbol.intern("+");
+    public static final Symbol SUB = Symbol.intern("-");
+    public static final Symbol MULT = Symbol.intern("*");
+    public static final Symbol DIV = Symbol.intern("/");
+    public static final Symbol GT = Symbol.intern(">");
+    public static final Symbol MOD = Symbol.intern("mod");
+
+    public static final Symbol VECTOR = Symbol.intern("vector");
+    public static final Symbol MAKE_VECTOR = Symbol.intern("make-vector");
+    public static final Symbol MAKE_LONG_VECTOR = Symbol.intern("make-long-vector");
+    public static final Symbol MAKE_DOUBLE_VECTOR = Symbol.intern("make-double-vector");
+    public static final Symbol VECTOR_REF = Symbol.intern("vector-ref");
+    public static final Symbol VECTOR_SET = Symbol.intern("vector-set!");
+    public static final Symbol VECTOR_LENGTH = Symbol.intern("vector-length");
+    public static final Symbol VECTORP = Symbol.intern("vectorp");
+    public static final Symbol LIST_TO_VECTOR = Symbol.intern("list->vector");
+    public static final Symbol VECTOR_TO_LIST = Symbol.intern("vector->list");
+
+    public static final Symbol MAKE_HASH = Symbol.intern("make-hash");
+    public static final Symbol HASH_GET = Symbol.intern("hash-get");
+    public static final Symbol HASH_PUT = Symbol.intern("hash-put!");
+    public static final Symbol HASH_REMOVE = Symbol.intern("hash-remove!");
+    public static final Symbol HASH_COUNT = Symbol.intern("hash-count");
+    public static final Symbol HASH_KEYS = Symbol.intern("hash-keys");
+    public static final Symbol HASH_VALUES = Symbol.intern("hash-values");
+    public static final Symbol HASHP = Symbol.intern("hashp");
+
+    public static final Symbol PVECTOR = Symbol.intern("pvector");
+    public static final Symbol PVECTOR_REF = Symbol.intern("pvector-ref");
+    public static final Symbol PVECTOR_SET = Symbol.intern("pvector-set");
+    public static final Symbol PVECTOR_PUSH = Symbol.intern("pvector-push");
+    public static final Symbol PVECTOR_POP = Symbol.intern("pvector-pop");
+    public static final Symbol PVECTOR_LENGTH = Symbol.intern("pvector-length");
+    public static final Symbol PVECTORP = Symbol.intern("pvectorp");
+    public static final Symbol LIST_TO_PVECTOR = Symbol.intern("list->pvector");
+    public static final Symbol PVECTOR_TO_LIST = Symbol.intern("pvector->list");
+    public static final Symbol PMAP = Symbol.intern("pmap");
+    public static final Symbol PMAP_GET = Symbol.intern("pmap-get");
+    public static final Symbol PMAP_PUT = Symbol.intern("pmap-put");
+    public static final Symbol PMAP_REMOVE = Symbol.intern("pmap-remove");
+    public static final Symbol PMAP_COUNT = Symbol.intern("pmap-count");
+    public static final Symbol PMAP_KEYS = Symbol.intern("pmap-keys");
+    public static final Symbol PMAP_VALUES = Symbol.intern("pmap-values");
+    public static final Symbol PMAPP = Symbol.intern("pmapp");
+
+    public static final Symbol EXIT = Symbol.intern("exit");
+    public static final Symbol PRINT = Symbol.intern("print");
+    public static final Symbol PRINTLN = Symbol.intern("println");
+    public static final Symbol READ = Symbol.intern("read");
+    public static final Symbol LOAD_DATA = Symbol.intern("load-data");
+    public static final Symbol LOAD = Symbol.intern("load");
 
     private Environment root;
     private Parser parser;
     private Scanner stdin;
+    private ModuleLoader loader;
+    /**
+     * The machine functions passed to kernel functions are applied on, or
+     * null if they are applied on the Java stack (see {@link #setMachine}).
+     */
+    private Machine machine;
+    /**
+     * The initial root bindings (special forms, functions and symbols) and
+     * the reverse mapping. Unlike the root environment, these never change.
+     */
+    private Map<Symbol, SExpr> builtins = new HashMap<Symbol, SExpr>();
+    private Map<SExpr, Symbol> builtinNames = new IdentityHashMap<SExpr, Symbol>();
 
     public Kernel() {
         this.root = new Environment();
         this.parser = new Parser();
         this.stdin = new Scanner(System.in);
+        this.loader = new ModuleLoader() {
+            @Override
+            public void load(Path file) throws IOException, ParseError {
+                for (SExpr expr : parser.parse(MappedSource.map(file))) {
+                    expr.eval(root);
+                }
+            }
+        };
 
         addSpecialForms();
         addConsFunctions();
+        addListFunctions();
         addPredicates();
         addMathFunctions();
+        addVectorFunctions();
+        addHashFunctions();
+        addPersistentFunctions();
         addIOFunctions();
 
         this.root.defineBinding(Symbol.NIL, Symbol.NIL);
         this.root.defineBinding(Kernel.T, Kernel.T);
+
+        for (Map.Entry<Symbol, SExpr> binding : this.root.getBindings().entrySet()) {
+            this.builtins.put(binding.getKey(), binding.getValue());
+            this.builtinNames.put(binding.getValue(), binding.getKey());
+        }
     }
 
     public Environment getRootEnvironment() {
         return this.root;
     }
 
+    /**
+     * @return The value _sym_ was bound to when this kernel was created or
+     *         null if _sym_ is not a builtin.
+     */
+    public SExpr getBuiltin(Symbol sym) {
+        return this.builtins.get(sym);
+    }
+
+    /**
+     * @return The symbol _value_ was bound to when this kernel was created or
+     *         null if _value_ is not a builtin of this kernel.
+     */
+    public Symbol getBuiltinName(SExpr value) {
+        return this.builtinNames.get(value);
+    }
+
     /**
      * Helper function to verify the number of parameters passed to a special
      * form or built-in function. User-defined functions can figure this out
@@ -107,15 +222,23 @@ public class Kernel {
      *             expected parameters
      */
     public static void validateParameters(List<SExpr> parameters, int expected, boolean atLeast, Symbol sym) {
+        validateParameters(parameters.size(), expected, atLeast, sym);
+    }
+
+    /**
+     * Like {@link #validateParameters(List, int, boolean, Symbol)}, but only
+     * the number of passed parameters is given (_given_).
+     */
+    public static void validateParameters(int given, int expected, boolean atLeast, Symbol sym) {
         if (!atLeast) {
-            if (parameters.size() != expected) {
+            if (given != expected) {
                 throw new RuntimeException(String.format("%s requires %d parameter(s), %d given.", sym.getName(),
-                        expected, parameters.size()));
+                        expected, given));
             }
         } else {
-            if (parameters.size() < expected) {
+            if (given < expected) {
                 throw new RuntimeException(String.format("%s requires at least %d parameter(s), %d given.",
-                        sym.getName(), expected, parameters.size()));
+                        sym.getName(), expected, given));
             }
         }
     }
@@ -135,16 +258,23 @@ public class Kernel {
         this.root.defineBinding(IF, new SpecialForm() {
             @Override
             public SExpr apply(List<SExpr> parameters, Environment env) {
+                return TailCall.trampoline(applyTail(parameters, env));
+            }
+
+            /*
+             * Both branches are in tail position.
+             */
+            @Override
+            public SExpr applyTail(List<SExpr> parameters, Environment env) {
                 validateParameters(parameters, 3, false, IF);
                 SExpr condition = parameters.get(0).eval(env);
                 SExpr exprThen = parameters.get(1);
                 SExpr exprElse = parameters.get(2);
-                if (!condition.eval(env).equals(Symbol.NIL)) {
-                    return exprThen.eval(env); // exprElse stays un-evaluated
+                if (condition != Symbol.NIL) {
+                    return exprThen.evalTail(env); // exprElse stays un-evaluated
                 } else {
-                    return exprElse.eval(env); // exprThen stays un-evaluated
+                    return exprElse.evalTail(env); // exprThen stays un-evaluated
                 }
-
             }
         });
 
@@ -180,39 +310,208 @@ public class Kernel {
     }
 
     private void addConsFunctions() {
-        this.root.defineBinding(CONS, new Function() {
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                validateParameters(parameters, 2, false, CONS);
-                SExpr car = parameters.get(0);
-                SExpr cdr = parameters.get(1);
-                Cons cons = new Cons(car, cdr);
-                return cons;
+        this.root.defineBinding(CONS, new FixedArityFunction(2, CONS) {
+            @Override
+            public SExpr apply2(SExpr car, SExpr cdr) {
+                return new Cons(car, cdr);
             }
         });
 
-        this.root.defineBinding(CAR, new Function() {
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                validateParameters(parameters, 1, false, CAR);
-                SExpr cons = parameters.get(0);
+        this.root.defineBinding(CAR, new FixedArityFunction(1, CAR) {
+            @Override
+            public SExpr apply1(SExpr cons) {
                 return cons.car();
             }
         });
 
-        this.root.defineBinding(CDR, new Function() {
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                validateParameters(parameters, 1, false, CDR);
-                SExpr cons = parameters.get(0);
+        this.root.defineBinding(CDR, new FixedArityFunction(1, CDR) {
+            @Override
+            public SExpr apply1(SExpr cons) {
                 return cons.cdr();
             }
         });
+
+        /*
+         * (nth n list) returns the n-th element of list (counting from 0) or
+         * nil if list is shorter, (nthcdr n list) the rest of list after its
+         * first n elements
+         */
+        this.root.defineBinding(NTH, new FixedArityFunction(2, NTH) {
+            @Override
+            public SExpr apply2(SExpr n, SExpr list) {
+                SExpr rest = CompactList.nthCdr(list, listIndex(n));
+                return rest.isCons() ? rest.car() : Symbol.NIL;
+            }
+        });
+
+        this.root.defineBinding(NTHCDR, new FixedArityFunction(2, NTHCDR) {
+            @Override
+            public SExpr apply2(SExpr n, SExpr list) {
+                return CompactList.nthCdr(list, listIndex(n));
+            }
+        });
+    }
+
+    /**
+     * @throws RuntimeException
+     *             If _n_ is not a non-negative integer.
+     */
+    private static long listIndex(SExpr n) {
+        Number num = Number.cast(n);
+        if (!num.isFixnum() || num.getFixnum() < 0) {
+            throw new RuntimeException(String.format("Index %s is not a non-negative integer.", n));
+        }
+        return num.getFixnum();
+    }
+
+    /*
+     * The list functions of the standard library, implemented with loops so
+     * that they run in constant stack space. They build their results as
+     * compact lists (see CompactList).
+     */
+    private void addListFunctions() {
+        this.root.defineBinding(LENGTH, new FixedArityFunction(1, LENGTH) {
+            @Override
+            public SExpr apply1(SExpr list) {
+                return Number.valueOf(CompactList.length(list));
+            }
+        });
+
+        /*
+         * (append list1 list2) copies list1, the result shares list2
+         */
+        this.root.defineBinding(APPEND, new FixedArityFunction(2, APPEND) {
+            @Override
+            public SExpr apply2(SExpr list1, SExpr list2) {
+                return CompactList.of(CompactList.toArray(list1), list2, false);
+            }
+        });
+
+        this.root.defineBinding(REVERSE, new FixedArityFunction(1, REVERSE) {
+            @Override
+            public SExpr apply1(SExpr list) {
+                SExpr[] elements = CompactList.toArray(list);
+                for (int i = 0, j = elements.length - 1; i < j; ++i, --j) {
+                    SExpr tmp = elements[i];
+                    elements[i] = elements[j];
+                    elements[j] = tmp;
+                }
+                return CompactList.of(elements);
+            }
+        });
+
+        this.root.defineBinding(MAP, new FixedArityFunction(2, MAP) {
+            @Override
+            public SExpr apply2(SExpr fun, SExpr list) {
+                Function function = toFunction(fun);
+                SExpr[] elements = CompactList.toArray(list);
+                for (int i = 0; i < elements.length; ++i) {
+                    elements[i] = machine != null ? machine.call(function, new SExpr[] { elements[i] })
+                            : function.apply1(elements[i]);
+                }
+                return CompactList.of(elements);
+            }
+        });
+
+        /*
+         * (reduce fun acc list) folds list from the left
+         */
+        this.root.defineBinding(REDUCE, new FixedArityFunction(3, REDUCE) {
+            @Override
+            public SExpr apply3(SExpr fun, SExpr acc, SExpr list) {
+                Function function = toFunction(fun);
+                SExpr result = acc;
+                for (SExpr element : CompactList.toArray(list)) {
+                    result = machine != null ? machine.call(function, new SExpr[] { result, element })
+                            : function.apply2(result, element);
+                }
+                return result;
+            }
+        });
+
+        /*
+         * (range l r) returns the list of l, l + 1, ..., r
+         */
+        this.root.defineBinding(RANGE, new FixedArityFunction(2, RANGE) {
+            @Override
+            public SExpr apply2(SExpr l, SExpr r) {
+                Number from = Number.cast(l);
+                Number to = Number.cast(r);
+                List<SExpr> elements = new ArrayList<SExpr>();
+                for (Number curr = from; !curr.equals(to); curr = curr.add(Number.ONE)) {
+                    if (curr.compareTo(to) > 0) {
+                        throw new RuntimeException(String.format("%s cannot count from %s to %s.",
+                                RANGE.getName(), from, to));
+                    }
+                    elements.add(curr);
+                }
+                elements.add(to);
+                return CompactList.of(elements.toArray(new SExpr[elements.size()]));
+            }
+        });
+
+        this.root.defineBinding(TREE_EQUAL, new FixedArityFunction(2, TREE_EQUAL) {
+            @Override
+            public SExpr apply2(SExpr list1, SExpr list2) {
+                if (treeEqual(list1, list2)) {
+                    return Kernel.T;
+                } else {
+                    return Symbol.NIL;
+                }
+            }
+        });
+    }
+
+    /**
+     * @throws RuntimeException
+     *             If _fun_ is not a function.
+     */
+    private static Function toFunction(SExpr fun) {
+        if (!fun.isFunction()) {
+            throw new RuntimeException("Object " + fun + " is not a function.");
+        }
+        return (Function) fun;
+    }
+
+    /**
+     * Compare _a_ and _b_ like tree-equal: cons pairs by structure, atoms
+     * by eql. Pairs of cars are kept on a stack instead of being compared
+     * recursively.
+     */
+    static boolean treeEqual(SExpr a, SExpr b) {
+        ArrayDeque<SExpr> pending = null;
+        while (true) {
+            while (a.isCons() && b.isCons() && !a.equals(b)) {
+                SExpr carA = a.car();
+                SExpr carB = b.car();
+                if (carA.isCons() || carB.isCons()) {
+                    if (pending == null) {
+                        pending = new ArrayDeque<SExpr>();
+                    }
+                    pending.push(carA);
+                    pending.push(carB);
+                } else if (!carA.equals(carB)) {
+                    return false;
+                }
+                a = a.cdr();
+                b = b.cdr();
+            }
+            if (!a.equals(b)) {
+                return false;
+            }
+            if (pending == null || pending.isEmpty()) {
+                return true;
+            }
+            b = pending.pop();
+            a = pending.pop();
+        }
     }
 
     private void addPredicates() {
-        this.root.defineBinding(NOT, new Function() {
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                validateParameters(parameters, 1, false, NOT);
-                SExpr condition = parameters.get(0);
-                if (condition.equals(Symbol.NIL)) {
+        this.root.defineBinding(NOT, new FixedArityFunction(1, NOT) {
+            @Override
+            public SExpr apply1(SExpr condition) {
+                if (condition == Symbol.NIL) {
                     return Kernel.T;
                 } else {
                     return Symbol.NIL;
@@ -220,11 +519,9 @@ public class Kernel {
             }
         });
 
-        this.root.defineBinding(EQL, new Function() {
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                validateParameters(parameters, 2, false, EQL);
-                SExpr first = parameters.get(0);
-                SExpr second = parameters.get(1);
+        this.root.defineBinding(EQL, new FixedArityFunction(2, EQL) {
+            @Override
+            public SExpr apply2(SExpr first, SExpr second) {
                 if (first.equals(second)) {
                     return Kernel.T;
                 } else {
@@ -233,10 +530,10 @@ public class Kernel {
             }
         });
 
-        this.root.defineBinding(NULLP, new Function() {
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                validateParameters(parameters, 1, false, NULLP);
-                if (parameters.get(0).equals(Symbol.NIL)) {
+        this.root.defineBinding(NULLP, new FixedArityFunction(1, NULLP) {
+            @Override
+            public SExpr apply1(SExpr arg0) {
+                if (arg0 == Symbol.NIL) {
                     return Kernel.T;
                 } else {
                     return Symbol.NIL;
@@ -244,10 +541,10 @@ public class Kernel {
             }
         });
 
-        this.root.defineBinding(CONSP, new Function() {
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                validateParameters(parameters, 1, false, CONSP);
-                if (parameters.get(0).isCons()) {
+        this.root.defineBinding(CONSP, new FixedArityFunction(1, CONSP) {
+            @Override
+            public SExpr apply1(SExpr arg0) {
+                if (arg0.isCons()) {
                     return Kernel.T;
                 } else {
                     return Symbol.NIL;
@@ -255,10 +552,10 @@ public class Kernel {
             }
         });
 
-        this.root.defineBinding(ATOMP, new Function() {
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                validateParameters(parameters, 1, false, ATOMP);
-                if (parameters.get(0).isAtom()) {
+        this.root.defineBinding(ATOMP, new FixedArityFunction(1, ATOMP) {
+            @Override
+            public SExpr apply1(SExpr arg0) {
+                if (arg0.isAtom()) {
                     return Kernel.T;
                 } else {
                     return Symbol.NIL;
@@ -266,10 +563,10 @@ public class Kernel {
             }
         });
 
-        this.root.defineBinding(NUMBERP, new Function() {
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                validateParameters(parameters, 1, false, NUMBERP);
-                if (parameters.get(0).isNumber()) {
+        this.root.defineBinding(NUMBERP, new FixedArityFunction(1, NUMBERP) {
+            @Override
+            public SExpr apply1(SExpr arg0) {
+                if (arg0.isNumber()) {
                     return Kernel.T;
                 } else {
                     return Symbol.NIL;
@@ -286,7 +583,7 @@ public class Kernel {
                 List<SExpr> body = new LinkedList<SExpr>();
                 SExpr currCons = parameters.get(0);
 
-                while (!currCons.equals(Symbol.NIL)) {
+                while (currCons != Symbol.NIL) {
                     SExpr currCar = currCons.car();
                     if (!(currCar instanceof Symbol)) {
                         throw new RuntimeException(String.format("%s is not a symbol, but appears in parameter list.",
@@ -299,39 +596,7 @@ public class Kernel {
                 for (int i = 1; i < parameters.size(); ++i) {
                     body.add(parameters.get(i));
                 }
-                Environment defEnv = env;
-                return new Function() {
-                    @Override
-                    public SExpr apply(List<SExpr> parameters, Environment env) {
-                        if (parameters.size() != variables.size()) {
-                            throw new RuntimeException(String.format("lambda form requires %d parameter(s), %d given",
-                                    variables.size(), parameters.size()));
-                        }
-                        /*
-                         * It is important to use _defEnv_ here and NOT _env_:
-                         * _defEnv_ is the environment where lambda was defined
-                         * whereas _env_ is the environment where it is
-                         * executed. Therefore, by using _defEnv_, bindings are
-                         * resolved lexically whereas by using _env_
-                         * they would be resolved dynamically (cf. lexical vs
-                         * dynamic scoping). _env_ is therefore ignored.
-                         */
-                        Environment subEnv = new Environment(defEnv);
-                        for (int i = 0; i < parameters.size(); ++i) {
-                            subEnv.defineBinding(variables.get(i), parameters.get(i));
-                        }
-                        for (int i = 0; i < body.size() - 1; ++i) {
-                            /*
-                             * Evaluate all but the last expression of the
-                             * lambda body. These are evaluated for side-effects
-                             * only.
-                             */
-                            body.get(i).eval(subEnv);
-                        }
-                        /* return the value of the final expression */
-                        return body.get(body.size() - 1).eval(subEnv);
-                    }
-                };
+                return new Lambda(variables, body, env);
             }
         });
     }
@@ -344,69 +609,80 @@ public class Kernel {
     private void addMathFunctions() {
         this.root.defineBinding(ADD, new Function() {
             @Override
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                BigDecimal sum = new BigDecimal(0);
-                for (SExpr param : parameters) {
-                    sum = sum.add(param.getNumericValue());
+            public SExpr apply(SExpr[] args) {
+                Number sum = Number.ZERO;
+                for (SExpr arg : args) {
+                    sum = sum.add(Number.cast(arg));
                 }
-                return new Number(sum);
+                return sum;
+            }
+
+            @Override
+            public SExpr apply2(SExpr arg0, SExpr arg1) {
+                return Number.cast(arg0).add(Number.cast(arg1));
             }
         });
 
         this.root.defineBinding(SUB, new Function() {
             @Override
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                BigDecimal diff = null;
-                if (parameters.size() >= 1) {
-                    diff = parameters.get(0).getNumericValue();
-                    parameters.remove(0); // remove first parameter since its
-                                          // the start value of diff
-                } else {
-                    diff = new BigDecimal(0);
+            public SExpr apply(SExpr[] args) {
+                if (args.length == 0) {
+                    return Number.ZERO;
                 }
-                for (SExpr param : parameters) {
-                    diff = diff.subtract(param.getNumericValue());
+                // the first parameter is the start value of diff
+                Number diff = Number.cast(args[0]);
+                for (int i = 1; i < args.length; ++i) {
+                    diff = diff.subtract(Number.cast(args[i]));
                 }
-                return new Number(diff);
+                return diff;
+            }
+
+            @Override
+            public SExpr apply2(SExpr arg0, SExpr arg1) {
+                return Number.cast(arg0).subtract(Number.cast(arg1));
             }
         });
 
         this.root.defineBinding(MULT, new Function() {
             @Override
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                BigDecimal prod = new BigDecimal(1);
-                for (SExpr param : parameters) {
-                    prod = prod.multiply(param.getNumericValue());
+            public SExpr apply(SExpr[] args) {
+                Number prod = Number.ONE;
+                for (SExpr arg : args) {
+                    prod = prod.multiply(Number.cast(arg));
                 }
-                return new Number(prod);
+                return prod;
+            }
+
+            @Override
+            public SExpr apply2(SExpr arg0, SExpr arg1) {
+                return Number.cast(arg0).multiply(Number.cast(arg1));
             }
         });
 
         this.root.defineBinding(DIV, new Function() {
             @Override
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                BigDecimal quot = null;
-                if (parameters.size() >= 1) {
-                    quot = parameters.get(0).getNumericValue();
-                    parameters.remove(0); // remove first parameter since its
-                                          // the start value of quot
-                } else {
-                    quot = new BigDecimal(1);
+            public SExpr apply(SExpr[] args) {
+                if (args.length == 0) {
+                    return Number.ONE;
                 }
-                for (SExpr param : parameters) {
-                    quot = quot.divide(param.getNumericValue());
+                // the first parameter is the start value of quot
+                Number quot = Number.cast(args[0]);
+                for (int i = 1; i < args.length; ++i) {
+                    quot = quot.divide(Number.cast(args[i]));
                 }
-                return new Number(quot);
+                return quot;
+            }
+
+            @Override
+            public SExpr apply2(SExpr arg0, SExpr arg1) {
+                return Number.cast(arg0).divide(Number.cast(arg1));
             }
         });
 
-        this.root.defineBinding(GT, new Function() {
+        this.root.defineBinding(GT, new FixedArityFunction(2, GT) {
             @Override
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                validateParameters(parameters, 2, false, GT);
-                BigDecimal first = parameters.get(0).getNumericValue();
-                BigDecimal second = parameters.get(1).getNumericValue();
-                if (first.compareTo(second) >= 1) {
+            public SExpr apply2(SExpr arg0, SExpr arg1) {
+                if (Number.cast(arg0).compareTo(Number.cast(arg1)) > 0) {
                     return Kernel.T;
                 } else {
                     return Symbol.NIL;
@@ -414,13 +690,375 @@ public class Kernel {
             }
         });
         
-        this.root.defineBinding(MOD, new Function() {
+        this.root.defineBinding(MOD, new FixedArityFunction(2, MOD) {
             @Override
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                validateParameters(parameters, 2, false, MOD);
-                BigDecimal first = parameters.get(0).getNumericValue();
-                BigDecimal second = parameters.get(1).getNumericValue();
-                return new Number(first.remainder(second));
+            public SExpr apply2(SExpr arg0, SExpr arg1) {
+                return Number.cast(arg0).remainder(Number.cast(arg1));
+            }
+        });
+    }
+
+    /**
+     * @return The length of a new vector given by _length_.
+     */
+    private static int vectorLength(SExpr length) {
+        Number num = Number.cast(length);
+        if (!num.isFixnum() || num.getFixnum() < 0 || num.getFixnum() > Integer.MAX_VALUE) {
+            throw new RuntimeException(String.format("%s is not a valid vector length.", length));
+        }
+        return (int) num.getFixnum();
+    }
+
+    /**
+     * Validate the parameters of the constructors of vectors, which take a
+     * length and optionally the initial value of all elements.
+     */
+    private static void validateMakeVector(SExpr[] args, Symbol sym) {
+        validateParameters(args.length, 1, true, sym);
+        if (args.length > 2) {
+            throw new RuntimeException(String.format("%s requires at most 2 parameter(s), %d given.", sym.getName(),
+                    args.length));
+        }
+    }
+
+    private void addVectorFunctions() {
+        this.root.defineBinding(VECTOR, new Function() {
+            @Override
+            public SExpr apply(SExpr[] args) {
+                return new SExprVector(args.clone());
+            }
+        });
+
+        /*
+         * (make-vector n [fill]) creates a vector of n elements set to fill
+         * (default: nil), the numeric variants default to 0
+         */
+        this.root.defineBinding(MAKE_VECTOR, new Function() {
+            @Override
+            public SExpr apply(SExpr[] args) {
+                validateMakeVector(args, MAKE_VECTOR);
+                return new SExprVector(vectorLength(args[0]), args.length > 1 ? args[1] : Symbol.NIL);
+            }
+        });
+
+        this.root.defineBinding(MAKE_LONG_VECTOR, new Function() {
+            @Override
+            public SExpr apply(SExpr[] args) {
+                validateMakeVector(args, MAKE_LONG_VECTOR);
+                return new LongVector(vectorLength(args[0]), args.length > 1 ? LongVector.toLong(args[1]) : 0);
+            }
+        });
+
+        this.root.defineBinding(MAKE_DOUBLE_VECTOR, new Function() {
+            @Override
+            public SExpr apply(SExpr[] args) {
+                validateMakeVector(args, MAKE_DOUBLE_VECTOR);
+                return new DoubleVector(vectorLength(args[0]), args.length > 1 ? DoubleVector.toDouble(args[1]) : 0);
+            }
+        });
+
+        this.root.defineBinding(VECTOR_REF, new FixedArityFunction(2, VECTOR_REF) {
+            @Override
+            public SExpr apply2(SExpr vector, SExpr index) {
+                Vector vec = Vector.cast(vector);
+                return vec.get(vec.checkIndex(index));
+            }
+        });
+
+        this.root.defineBinding(VECTOR_SET, new FixedArityFunction(3, VECTOR_SET) {
+            @Override
+            public SExpr apply3(SExpr vector, SExpr index, SExpr value) {
+                Vector vec = Vector.cast(vector);
+                vec.set(vec.checkIndex(index), value);
+                return value;
+            }
+        });
+
+        this.root.defineBinding(VECTOR_LENGTH, new FixedArityFunction(1, VECTOR_LENGTH) {
+            @Override
+            public SExpr apply1(SExpr vector) {
+                return Number.valueOf(Vector.cast(vector).length());
+            }
+        });
+
+        this.root.defineBinding(VECTORP, new FixedArityFunction(1, VECTORP) {
+            @Override
+            public SExpr apply1(SExpr arg0) {
+                if (arg0 instanceof Vector) {
+                    return Kernel.T;
+                } else {
+                    return Symbol.NIL;
+                }
+            }
+        });
+
+        this.root.defineBinding(LIST_TO_VECTOR, new FixedArityFunction(1, LIST_TO_VECTOR) {
+            @Override
+            public SExpr apply1(SExpr list) {
+                return new SExprVector(CompactList.toArray(list));
+            }
+        });
+
+        this.root.defineBinding(VECTOR_TO_LIST, new FixedArityFunction(1, VECTOR_TO_LIST) {
+            @Override
+            public SExpr apply1(SExpr vector) {
+                Vector vec = Vector.cast(vector);
+                SExpr[] elements = new SExpr[vec.length()];
+                for (int i = 0; i < elements.length; ++i) {
+                    elements[i] = vec.get(i);
+                }
+                return CompactList.of(elements);
+            }
+        });
+    }
+
+    private void addHashFunctions() {
+        this.root.defineBinding(MAKE_HASH, new FixedArityFunction(0, MAKE_HASH) {
+            @Override
+            public SExpr apply0() {
+                return new HashTable();
+            }
+        });
+
+        /*
+         * (hash-get table key [default]) returns the value of key or default
+         * (nil if not given) if table does not contain key
+         */
+        this.root.defineBinding(HASH_GET, new Function() {
+            @Override
+            public SExpr apply(SExpr[] args) {
+                validateParameters(args.length, 2, true, HASH_GET);
+                if (args.length > 3) {
+                    throw new RuntimeException(String.format("%s requires at most 3 parameter(s), %d given.",
+                            HASH_GET.getName(), args.length));
+                }
+                SExpr value = HashTable.cast(args[0]).get(args[1]);
+                if (value != null) {
+                    return value;
+                }
+                return args.length > 2 ? args[2] : Symbol.NIL;
+            }
+
+            @Override
+            public SExpr apply2(SExpr table, SExpr key) {
+                SExpr value = HashTable.cast(table).get(key);
+                return value != null ? value : Symbol.NIL;
+            }
+        });
+
+        this.root.defineBinding(HASH_PUT, new FixedArityFunction(3, HASH_PUT) {
+            @Override
+            public SExpr apply3(SExpr table, SExpr key, SExpr value) {
+                HashTable.cast(table).put(key, value);
+                return value;
+            }
+        });
+
+        this.root.defineBinding(HASH_REMOVE, new FixedArityFunction(2, HASH_REMOVE) {
+            @Override
+            public SExpr apply2(SExpr table, SExpr key) {
+                if (HashTable.cast(table).remove(key)) {
+                    return Kernel.T;
+                } else {
+                    return Symbol.NIL;
+                }
+            }
+        });
+
+        this.root.defineBinding(HASH_COUNT, new FixedArityFunction(1, HASH_COUNT) {
+            @Override
+            public SExpr apply1(SExpr table) {
+                return Number.valueOf(HashTable.cast(table).size());
+            }
+        });
+
+        this.root.defineBinding(HASH_KEYS, new FixedArityFunction(1, HASH_KEYS) {
+            @Override
+            public SExpr apply1(SExpr table) {
+                return HashTable.cast(table).toList(true);
+            }
+        });
+
+        this.root.defineBinding(HASH_VALUES, new FixedArityFunction(1, HASH_VALUES) {
+            @Override
+            public SExpr apply1(SExpr table) {
+                return HashTable.cast(table).toList(false);
+            }
+        });
+
+        this.root.defineBinding(HASHP, new FixedArityFunction(1, HASHP) {
+            @Override
+            public SExpr apply1(SExpr arg0) {
+                if (arg0 instanceof HashTable) {
+                    return Kernel.T;
+                } else {
+                    return Symbol.NIL;
+                }
+            }
+        });
+    }
+
+    /*
+     * Updates of persistent vectors and maps return a new object and leave
+     * the given one unchanged.
+     */
+    private void addPersistentFunctions() {
+        this.root.defineBinding(PVECTOR, new Function() {
+            @Override
+            public SExpr apply(SExpr[] args) {
+                return PersistentVector.of(args);
+            }
+        });
+
+        this.root.defineBinding(PVECTOR_REF, new FixedArityFunction(2, PVECTOR_REF) {
+            @Override
+            public SExpr apply2(SExpr vector, SExpr index) {
+                PersistentVector vec = PersistentVector.cast(vector);
+                return vec.get(vec.checkIndex(index));
+            }
+        });
+
+        this.root.defineBinding(PVECTOR_SET, new FixedArityFunction(3, PVECTOR_SET) {
+            @Override
+            public SExpr apply3(SExpr vector, SExpr index, SExpr value) {
+                PersistentVector vec = PersistentVector.cast(vector);
+                return vec.set(vec.checkIndex(index), value);
+            }
+        });
+
+        this.root.defineBinding(PVECTOR_PUSH, new FixedArityFunction(2, PVECTOR_PUSH) {
+            @Override
+            public SExpr apply2(SExpr vector, SExpr value) {
+                return PersistentVector.cast(vector).push(value);
+            }
+        });
+
+        this.root.defineBinding(PVECTOR_POP, new FixedArityFunction(1, PVECTOR_POP) {
+            @Override
+            public SExpr apply1(SExpr vector) {
+                return PersistentVector.cast(vector).pop();
+            }
+        });
+
+        this.root.defineBinding(PVECTOR_LENGTH, new FixedArityFunction(1, PVECTOR_LENGTH) {
+            @Override
+            public SExpr apply1(SExpr vector) {
+                return Number.valueOf(PersistentVector.cast(vector).length());
+            }
+        });
+
+        this.root.defineBinding(PVECTORP, new FixedArityFunction(1, PVECTORP) {
+            @Override
+            public SExpr apply1(SExpr arg0) {
+                if (arg0 instanceof PersistentVector) {
+                    return Kernel.T;
+                } else {
+                    return Symbol.NIL;
+                }
+            }
+        });
+
+        this.root.defineBinding(LIST_TO_PVECTOR, new FixedArityFunction(1, LIST_TO_PVECTOR) {
+            @Override
+            public SExpr apply1(SExpr list) {
+                return PersistentVector.of(CompactList.toArray(list));
+            }
+        });
+
+        this.root.defineBinding(PVECTOR_TO_LIST, new FixedArityFunction(1, PVECTOR_TO_LIST) {
+            @Override
+            public SExpr apply1(SExpr vector) {
+                return PersistentVector.cast(vector).toList();
+            }
+        });
+
+        /*
+         * (pmap key1 value1 key2 value2 ...) creates a map of the given
+         * entries
+         */
+        this.root.defineBinding(PMAP, new Function() {
+            @Override
+            public SExpr apply(SExpr[] args) {
+                if (args.length % 2 != 0) {
+                    throw new RuntimeException(String.format("%s requires an even number of parameters, %d given.",
+                            PMAP.getName(), args.length));
+                }
+                PersistentMap result = PersistentMap.EMPTY;
+                for (int i = 0; i < args.length; i += 2) {
+                    result = result.put(args[i], args[i + 1]);
+                }
+                return result;
+            }
+        });
+
+        /*
+         * (pmap-get map key [default]) like hash-get
+         */
+        this.root.defineBinding(PMAP_GET, new Function() {
+            @Override
+            public SExpr apply(SExpr[] args) {
+                validateParameters(args.length, 2, true, PMAP_GET);
+                if (args.length > 3) {
+                    throw new RuntimeException(String.format("%s requires at most 3 parameter(s), %d given.",
+                            PMAP_GET.getName(), args.length));
+                }
+                SExpr value = PersistentMap.cast(args[0]).get(args[1]);
+                if (value != null) {
+                    return value;
+                }
+                return args.length > 2 ? args[2] : Symbol.NIL;
+            }
+
+            @Override
+            public SExpr apply2(SExpr map, SExpr key) {
+                SExpr value = PersistentMap.cast(map).get(key);
+                return value != null ? value : Symbol.NIL;
+            }
+        });
+
+        this.root.defineBinding(PMAP_PUT, new FixedArityFunction(3, PMAP_PUT) {
+            @Override
+            public SExpr apply3(SExpr map, SExpr key, SExpr value) {
+                return PersistentMap.cast(map).put(key, value);
+            }
+        });
+
+        this.root.defineBinding(PMAP_REMOVE, new FixedArityFunction(2, PMAP_REMOVE) {
+            @Override
+            public SExpr apply2(SExpr map, SExpr key) {
+                return PersistentMap.cast(map).remove(key);
+            }
+        });
+
+        this.root.defineBinding(PMAP_COUNT, new FixedArityFunction(1, PMAP_COUNT) {
+            @Override
+            public SExpr apply1(SExpr map) {
+                return Number.valueOf(PersistentMap.cast(map).size());
+            }
+        });
+
+        this.root.defineBinding(PMAP_KEYS, new FixedArityFunction(1, PMAP_KEYS) {
+            @Override
+            public SExpr apply1(SExpr map) {
+                return PersistentMap.cast(map).toList(true);
+            }
+        });
+
+        this.root.defineBinding(PMAP_VALUES, new FixedArityFunction(1, PMAP_VALUES) {
+            @Override
+            public SExpr apply1(SExpr map) {
+                return PersistentMap.cast(map).toList(false);
+            }
+        });
+
+        this.root.defineBinding(PMAPP, new FixedArityFunction(1, PMAPP) {
+            @Override
+            public SExpr apply1(SExpr arg0) {
+                if (arg0 instanceof PersistentMap) {
+                    return Kernel.T;
+                } else {
+                    return Symbol.NIL;
+                }
             }
         });
     }
@@ -429,11 +1067,26 @@ public class Kernel {
         return this.parser;
     }
 
+    /**
+     * Set the loader used by (load 'filename). By default, the s-expressions
+     * of the file are parsed and interpreted.
+     */
+    public void setModuleLoader(ModuleLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Apply the functions passed to map and reduce on _machine_ (in machine
+     * mode), so that their recursion depth is not limited by the Java stack.
+     */
+    public void setMachine(Machine machine) {
+        this.machine = machine;
+    }
+
     private void addIOFunctions() {
-        this.root.defineBinding(EXIT, new Function() {
+        this.root.defineBinding(EXIT, new FixedArityFunction(0, EXIT) {
             @Override
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                validateParameters(parameters, 0, false, EXIT);
+            public SExpr apply0() {
                 System.exit(0);
                 return Symbol.NIL;
             }
@@ -442,10 +1095,9 @@ public class Kernel {
         this.root.defineBinding(PRINT, new Printer(false, PRINT));
         this.root.defineBinding(PRINTLN, new Printer(true, PRINTLN));
 
-        this.root.defineBinding(READ, new Function() {
+        this.root.defineBinding(READ, new FixedArityFunction(0, READ) {
             @Override
-            public SExpr apply(List<SExpr> parameters, Environment env) {
-                validateParameters(parameters, 0, false, READ);
+            public SExpr apply0() {
                 String str = stdin.nextLine();
                 try {
                     /*
@@ -459,5 +1111,51 @@ public class Kernel {
 
             }
         });
+
+        /*
+         * (load-data 'filename) returns the list of all s-expressions in the
+         * file without evaluating them
+         */
+        this.root.defineBinding(LOAD_DATA, new FixedArityFunction(1, LOAD_DATA) {
+            @Override
+            public SExpr apply1(SExpr filename) {
+                if (!(filename instanceof Symbol)) {
+                    throw new RuntimeException(String.format("%s is not a symbol.", filename.toString()));
+                }
+                List<SExpr> forms;
+                try {
+                    forms = parser.parseFromFile(((Symbol) filename).getName());
+                } catch (IOException e) {
+                    throw new RuntimeException("Could not read " + filename + ": " + e.getMessage());
+                } catch (ParseError e) {
+                    throw new RuntimeException(e.getMessage());
+                }
+                SExpr result = Symbol.NIL;
+                for (int i = forms.size() - 1; i >= 0; --i) {
+                    result = new Cons(forms.get(i), result);
+                }
+                return result;
+            }
+        });
+
+        /*
+         * (load 'filename) evaluates all s-expressions in the file
+         */
+        this.root.defineBinding(LOAD, new FixedArityFunction(1, LOAD) {
+            @Override
+            public SExpr apply1(SExpr filename) {
+                if (!(filename instanceof Symbol)) {
+                    throw new RuntimeException(String.format("%s is not a symbol.", filename.toString()));
+                }
+                try {
+                    loader.load(Paths.get(((Symbol) filename).getName()));
+                } catch (IOException e) {
+                    throw new RuntimeException("Could not read " + filename + ": " + e.getMessage());
+                } catch (ParseError e) {
+                    throw new RuntimeException(e.getMessage());
+                }
+                return T;
+            }
+        });
     }
 }
@@ -0,0 +1,22 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.main;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import yale.exception.ParseError;
+
+/**
+ * Evaluates the s-expressions of files loaded by the kernel function load.
+ */
+public interface ModuleLoader {
+
+    /**
+     * Evaluate all s-expressions of _file_ in the root environment, in order.
+     */
+    void load(Path file) throws IOException, ParseError;
+}
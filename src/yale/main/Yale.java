@@ -5,21 +5,34 @@
  */
 package yale.main;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
-import java.util.Scanner;
 
+import yale.analyze.Analyzer;
+import yale.analyze.JitCompiler;
+import yale.analyze.Machine;
+import yale.analyze.Node;
 import yale.eval.Environment;
+import yale.eval.LazyDefinition;
 import yale.eval.SExpr;
+import yale.eval.Symbol;
 import yale.exception.ParseError;
+import yale.image.ModuleCache;
+import yale.image.Snapshot;
+import yale.image.StdlibImage;
+import yale.parse.MappedSource;
 import yale.parse.Parser;
+import yale.parse.SExprReader;
+import yale.parse.UnparsedForm;
 
 /**
  * Main class which implements a REPL and allows the user to execute expressions
@@ -37,40 +50,119 @@ public class Yale {
 
     private int exprCnt;
     private Kernel kernel;
-    private BufferedReader reader;
+    private EvalMode mode;
+    private JitCompiler jit;
+    private Analyzer analyzer;
+    private Machine machine;
+    private ModuleCache moduleCache;
 
     public Yale() throws IOException, URISyntaxException, ParseError {
-        this.exprCnt = 1;
-        kernel = new Kernel();
-        reader = new BufferedReader(new InputStreamReader(System.in));
+        this(EvalMode.getDefault());
+    }
+
+    /**
+     * Creates a new yale instance.
+     *
+     * @param mode
+     *            The way s-expressions are evaluated by this instance,
+     *            including the standard library.
+     */
+    public Yale(EvalMode mode) throws IOException, URISyntaxException, ParseError {
+        this(mode, new Kernel());
         initStandardLibrary();
     }
 
+    /**
+     * Creates a new yale instance without the standard library.
+     */
+    private Yale(EvalMode mode, Kernel kernel) {
+        this.exprCnt = 1;
+        this.mode = mode;
+        this.kernel = kernel;
+        jit = mode == EvalMode.TIERED ? new JitCompiler(kernel.getRootEnvironment()) : null;
+        analyzer = new Analyzer(kernel.getRootEnvironment(), jit);
+        machine = new Machine();
+        if (mode == EvalMode.MACHINE) {
+            kernel.setMachine(machine);
+        }
+        moduleCache = ModuleCache.getDefault();
+        kernel.setModuleLoader(new ModuleLoader() {
+            @Override
+            public void load(Path file) throws IOException, ParseError {
+                loadModule(file);
+            }
+        });
+    }
+
+    /**
+     * Save the root environment of this instance (all definitions including
+     * the standard library) to _file_ (see {@link Snapshot}).
+     */
+    public void saveSnapshot(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Snapshot.write(this.kernel, channel);
+        }
+    }
+
+    /**
+     * Create a new yale instance whose root environment is restored from a
+     * snapshot written by {@link #saveSnapshot}. The standard library is part
+     * of the snapshot, so it is not loaded again.
+     */
+    public static Yale restoreSnapshot(Path file, EvalMode mode) throws IOException {
+        Yale yale = new Yale(mode, new Kernel());
+        try (FileChannel channel = FileChannel.open(file)) {
+            Snapshot.read(channel, yale.kernel, yale.jit);
+        }
+        return yale;
+    }
+
     private void printPrompt() {
         System.out.print(String.format(Yale.PROMPT, this.exprCnt));
         System.out.flush();
         this.exprCnt++;
     }
 
+    /**
+     * Evaluate a top-level s-expression in the root environment according to
+     * the evaluation mode of this instance.
+     *
+     * @param expr
+     *            S-expression to evaluate.
+     * @return The value of _expr_.
+     */
+    public SExpr eval(SExpr expr) {
+        if (this.mode == EvalMode.INTERPRET) {
+            return expr.eval(this.kernel.getRootEnvironment());
+        }
+        return exec(this.analyzer.analyze(expr));
+    }
+
+    /**
+     * Execute an analyzed top-level s-expression.
+     */
+    private SExpr exec(Node node) {
+        if (this.mode == EvalMode.MACHINE) {
+            return this.machine.execute(node, null);
+        }
+        return node.exec(null);
+    }
+
     public void feed(SExpr expr) {
-        expr.eval(this.kernel.getRootEnvironment());
+        eval(expr);
     }
 
     public void feed(String str) throws ParseError {
         List<SExpr> expressions = this.kernel.getParser().parse(str);
         for (SExpr expr : expressions) {
-            expr.eval(this.kernel.getRootEnvironment());
+            eval(expr);
         }
     }
 
-    private List<SExpr> read() throws IOException, ParseError {
-        String expression = reader.readLine();
-        return this.kernel.getParser().parse(expression);
-    }
-
     /**
      * Needed by unit tests.
-     * 
+     *
      * @return The parser used in this yale instance.
      */
     public Parser getParser() {
@@ -79,50 +171,240 @@ public class Yale {
 
     /**
      * Needed by unit tests.
-     * 
+     *
      * @return Root environment of the kernel
      */
     public Environment getRootEnvironment() {
         return this.kernel.getRootEnvironment();
     }
 
+    /**
+     * Needed by unit tests.
+     *
+     * @return The analyzer used in this yale instance (unused in
+     *         {@link EvalMode#INTERPRET} mode).
+     */
+    public Analyzer getAnalyzer() {
+        return this.analyzer;
+    }
+
+    /**
+     * Needed by unit tests.
+     *
+     * @return The JIT compiler used in this yale instance (null unless in
+     *         {@link EvalMode#TIERED} mode).
+     */
+    public JitCompiler getJitCompiler() {
+        return this.jit;
+    }
+
+    public EvalMode getEvalMode() {
+        return this.mode;
+    }
+
+    /**
+     * Read s-expressions from standard input and print their values. An
+     * s-expression may span several lines. The REPL ends at the end of the
+     * input (e.g. Ctrl+D).
+     */
     public void repl() throws IOException {
+        SExprReader reader = new SExprReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        reader.setPrompt(this::printPrompt);
         while (true) {
-            printPrompt();
-            List<SExpr> parseResults;
+            SExpr expr;
             try {
-                parseResults = read();
-                for (SExpr res : parseResults) {
-                    try {
-                        System.out.println(res.eval(this.kernel.getRootEnvironment()));
-                    } catch (RuntimeException e) {
-                        System.err.println("Runtime exception: " + e.getMessage());
-                        System.err.flush();
-                    }
-                }
+                expr = reader.read();
             } catch (ParseError e) {
                 System.err.println("Parse error: " + e.getMessage());
+                reader.skipLine();
+                continue;
+            }
+            if (expr == null) {
+                System.out.println();
+                return;
+            }
+            try {
+                System.out.println(eval(expr));
+            } catch (RuntimeException e) {
+                System.err.println("Runtime exception: " + e.getMessage());
+                System.err.flush();
             }
         }
     }
 
+    /**
+     * Evaluate all s-expressions read by _reader_. Every s-expression is
+     * evaluated as soon as it has been read.
+     */
+    public void load(SExprReader reader) throws IOException, ParseError {
+        SExpr expr;
+        while ((expr = reader.read()) != null) {
+            eval(expr);
+        }
+    }
+
     public void runFile(String filename) throws IOException, ParseError {
-        String code = new String(Files.readAllBytes(Paths.get(filename)), StandardCharsets.UTF_8);
-        // execute every expression from the file
-        for (SExpr expr : this.kernel.getParser().parse(code)) {
-            expr.eval(this.kernel.getRootEnvironment());
+        try (SExprReader reader = new SExprReader(FileChannel.open(Paths.get(filename)))) {
+            load(reader);
         }
         System.exit(0);
     }
 
+    /**
+     * Set the cache used by {@link #loadModule} or disable it (null). By
+     * default, {@link ModuleCache#getDefault()} is used.
+     */
+    public void setModuleCache(ModuleCache cache) {
+        this.moduleCache = cache;
+    }
+
+    /**
+     * Evaluate all s-expressions of _file_ (the kernel function load). The
+     * parsed and analyzed s-expressions are taken from the module cache if it
+     * contains the current source of _file_, otherwise they are added to it.
+     * Failing to write the cache does not fail the load.
+     */
+    public void loadModule(Path file) throws IOException, ParseError {
+        MappedSource source = MappedSource.map(file);
+        ModuleCache cache = this.moduleCache;
+        if (cache == null) {
+            for (SExpr expr : this.kernel.getParser().parse(source)) {
+                eval(expr);
+            }
+            return;
+        }
+        ByteBuffer bytes = source.toByteBuffer();
+        boolean analyzed = ModuleCache.canUseNodes(this.kernel);
+        if (this.mode != EvalMode.INTERPRET && analyzed) {
+            Node[] nodes = cache.readNodes(bytes, this.kernel, this.jit);
+            if (nodes != null) {
+                for (Node node : nodes) {
+                    exec(node);
+                }
+                return;
+            }
+        }
+        SExpr[] cached = cache.readForms(bytes);
+        if (cached != null) {
+            for (SExpr expr : cached) {
+                eval(expr);
+            }
+            return;
+        }
+
+        List<SExpr> forms = this.kernel.getParser().parse(source);
+        Node[] nodes = analyzed ? new Node[forms.size()] : null;
+        for (int i = 0; i < forms.size(); ++i) {
+            SExpr expr = forms.get(i);
+            if (this.mode != EvalMode.INTERPRET) {
+                Node node = this.analyzer.analyze(expr);
+                if (nodes != null) {
+                    nodes[i] = node;
+                }
+                exec(node);
+                continue;
+            }
+            if (nodes != null) {
+                /*
+                 * the interpreter does not need the nodes, so s-expressions
+                 * it accepts but the analyzer does not are merely not cached
+                 * as nodes
+                 */
+                try {
+                    nodes[i] = this.analyzer.analyze(expr);
+                } catch (RuntimeException e) {
+                    nodes = null;
+                }
+            }
+            eval(expr);
+        }
+        try {
+            cache.write(bytes, forms, nodes);
+        } catch (IOException e) {
+            /* the cache is an optimization only */
+        }
+    }
+
+    /**
+     * Like {@link #load}, but top-level define forms are neither parsed nor
+     * evaluated until their symbol is looked up in the root environment for
+     * the first time (see {@link Environment#defineLazily}). All other
+     * s-expressions are evaluated immediately, in order.
+     */
+    public void loadLazily(CharSequence source) throws ParseError {
+        Environment root = this.kernel.getRootEnvironment();
+        for (final UnparsedForm form : this.kernel.getParser().split(source)) {
+            Symbol sym = form.getDefinedSymbol();
+            if (sym == null) {
+                eval(form.parse());
+                continue;
+            }
+            root.defineLazily(sym, new LazyDefinition() {
+                @Override
+                public void load() {
+                    try {
+                        eval(form.parse());
+                    } catch (ParseError e) {
+                        throw new RuntimeException("Parse error: " + e.getMessage());
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Load the standard library from its precompiled image (see
+     * {@link StdlibImage}) if there is one, otherwise from its source. Setting
+     * the system property yale.image to false forces loading from source.
+     *
+     * Definitions of the standard library are loaded lazily, i.e. only those
+     * actually used are evaluated, unless the system property yale.lazy is
+     * set to false.
+     */
     private void initStandardLibrary() throws IOException, URISyntaxException, ParseError {
+        boolean lazy = !"false".equals(System.getProperty("yale.lazy"));
+        if (!"false".equals(System.getProperty("yale.image"))) {
+            ByteBuffer image = StdlibImage.getResource();
+            if (image != null) {
+                final StdlibImage stdlib = StdlibImage.read(image, this.kernel.getRootEnvironment(), this.jit);
+                if (stdlib != null) {
+                    for (int i = 0; i < stdlib.size(); ++i) {
+                        final int index = i;
+                        LazyDefinition definition = new LazyDefinition() {
+                            @Override
+                            public void load() {
+                                try {
+                                    if (mode == EvalMode.INTERPRET) {
+                                        eval(stdlib.readForm(index));
+                                    } else {
+                                        exec(stdlib.readNode(index));
+                                    }
+                                } catch (IOException e) {
+                                    throw new RuntimeException("Corrupt standard library image: " + e.getMessage());
+                                }
+                            }
+                        };
+                        Symbol sym = stdlib.getDefinedSymbol(i);
+                        if (lazy && sym != null) {
+                            this.kernel.getRootEnvironment().defineLazily(sym, definition);
+                        } else {
+                            definition.load();
+                        }
+                    }
+                    return;
+                }
+            }
+        }
         InputStream is = Yale.class.getResourceAsStream(STDLIB_LOCATION);
-        /* The famous "stupid scanner trick" */
-        Scanner scanner = new Scanner(is, "UTF-8");
-        scanner.useDelimiter("\\A");
-        String str = scanner.next();
-        scanner.close();
-        feed(str);
+        if (lazy) {
+            try (InputStream in = is) {
+                loadLazily(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            return;
+        }
+        try (SExprReader reader = new SExprReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            load(reader);
+        }
     }
 
     private static void printIntro() {
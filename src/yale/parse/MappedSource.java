@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.parse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * A UTF-8 encoded file mapped into memory, viewed as a sequence of bytes.
+ * Indices are byte offsets and {@link #charAt(int)} returns single bytes, so
+ * the lexer (see {@link TokenStream}) works on the mapped bytes directly
+ * without decoding the whole file into a string first. This is sufficient for
+ * lexing since all characters separating tokens are ASCII characters and the
+ * bytes of a multi-byte UTF-8 sequence are never mistaken for them. Only the
+ * text of a literal is decoded when it is extracted through
+ * {@link #subSequence(int, int)}.
+ */
+public class MappedSource implements CharSequence {
+
+    private ByteBuffer bytes;
+    private int offset;
+    private int length;
+
+    private MappedSource(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Map the file at _path_ into memory.
+     * 
+     * @throws IOException
+     *             if the file cannot be read or is larger than 2 GB.
+     */
+    public static MappedSource map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File " + path + " is too large.");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedSource(buffer, 0, (int) size);
+        }
+    }
+
+    /**
+     * @return The bytes of this source as a buffer of their own.
+     */
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer view = this.bytes.duplicate();
+        view.limit(this.offset + this.length).position(this.offset);
+        return view.slice();
+    }
+
+    ByteBuffer getBytes() {
+        return this.bytes;
+    }
+
+    int getOffset() {
+        return this.offset;
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (this.bytes.get(this.offset + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new MappedSource(this.bytes, this.offset + start, end - start);
+    }
+
+    /**
+     * @return The bytes of this source decoded as UTF-8.
+     */
+    @Override
+    public String toString() {
+        byte[] text = new byte[this.length];
+        for (int i = 0; i < this.length; ++i) {
+            text[i] = this.bytes.get(this.offset + i);
+        }
+        return new String(text, StandardCharsets.UTF_8);
+    }
+}
@@ -5,113 +5,296 @@
  */
 package yale.parse;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+import yale.eval.CompactList;
 import yale.eval.Cons;
 import yale.eval.SExpr;
 import yale.eval.Symbol;
 import yale.exception.ParseError;
-import yale.parse.Token.TokenType;
 
 /**
  * Instances of this class can read s-expressions which are given as strings.
- * When a string is read, it is converted into a list of tokens first (lexing)
- * which is subsequently converted to an s-expression representing the original
- * string. Since the s-expression is representing data only, it exclusively
+ * When a string is read, it is converted into a stream of tokens first
+ * (lexing, see {@link TokenStream}) which is subsequently converted to an
+ * s-expression representing the original string. Since the s-expression is representing data only, it exclusively
  * consists of cons pairs and atoms (i.e. numbers and symbols).
  */
 public class Parser {
 
-    private static final int IDX_SUBEXPR = 0;
-    private static final int IDX_REST = 1;
+    static final Symbol QUOTE = Symbol.intern("quote");
+    private static final Symbol DEFINE = Symbol.intern("define");
+    /**
+     * Integers with up to 18 digits always fit into a long.
+     */
+    private static final int MAX_FIXNUM_DIGITS = 18;
+    private static final long NOT_A_FIXNUM = Long.MIN_VALUE;
+    /**
+     * Inputs with fewer tokens are always parsed sequentially.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    /**
+     * Minimum number of tokens parsed by one task in parallel mode.
+     */
+    private static final int CHUNK_TOKENS = 1 << 13;
+
+    private boolean parallel;
+
+    /**
+     * Create a parser which parses sequentially. The parallel path has only
+     * been measured on a single core, where it is slower (see
+     * ParserBenchmark), so it has to be asked for.
+     */
+    public Parser() {
+        this(false);
+    }
+
+    /**
+     * @param parallel
+     *            If true, large inputs consisting of several top-level
+     *            s-expressions are parsed on multiple threads (see
+     *            {@link #parse(CharSequence)}). This only pays off if the
+     *            common fork-join pool has more than one thread.
+     */
+    public Parser(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Parse all s-expressions contained in _expr_. The tokens are consumed in a
+     * single pass from left to right (recursive descent), lists are built
+     * directly from the parsed elements.
+     * 
+     * In parallel mode, the boundaries of the top-level s-expressions of a
+     * large input are determined first by counting parentheses. Chunks of
+     * top-level s-expressions are then parsed independently on the common
+     * fork-join pool. In both modes, the s-expressions are returned in the
+     * order they appear in _expr_.
+     */
+    public List<SExpr> parse(CharSequence expr) throws ParseError {
+        TokenStream tokens = new TokenStream(expr);
+        if (this.parallel && tokens.size() >= PARALLEL_THRESHOLD) {
+            return parseParallel(tokens);
+        }
+        return parseRange(tokens, 0, tokens.size());
+    }
+
+    /**
+     * Parse the top-level s-expressions between the tokens _from_ and _to_.
+     */
+    private List<SExpr> parseRange(TokenStream tokens, int from, int to) throws ParseError {
+        Cursor cursor = new Cursor(tokens, from, to);
+        List<SExpr> results = new ArrayList<SExpr>();
+        while (cursor.hasNext()) {
+            results.add(parseExpr(cursor, false));
+        }
+        return results;
+    }
 
-    public List<SExpr> parse(String expr) throws ParseError {
-        LinkedList<LinkedList<Token>> tokSExprs = extractTokSExprs(lex(expr));
-        Iterator<LinkedList<Token>> iter = tokSExprs.iterator();
-        List<SExpr> results = new LinkedList<SExpr>();
-        while (iter.hasNext()) {
-            LinkedList<Token> tokSExpr = iter.next();
-            SExpr currResult = parseSingleExpr(tokSExpr);
-            results.add(currResult);
+    private List<SExpr> parseParallel(final TokenStream tokens) throws ParseError {
+        int[] chunks = findChunks(tokens);
+        List<ForkJoinTask<List<SExpr>>> tasks = new ArrayList<ForkJoinTask<List<SExpr>>>();
+        for (int i = 0; i + 1 < chunks.length; ++i) {
+            final int from = chunks[i];
+            final int to = chunks[i + 1];
+            tasks.add(ForkJoinPool.commonPool().submit(new Callable<List<SExpr>>() {
+                @Override
+                public List<SExpr> call() throws ParseError {
+                    return parseRange(tokens, from, to);
+                }
+            }));
+        }
+        List<SExpr> results = new ArrayList<SExpr>();
+        for (ForkJoinTask<List<SExpr>> task : tasks) {
+            try {
+                results.addAll(task.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ParseError("Parsing interrupted.");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof ParseError) {
+                    throw (ParseError) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
         }
         return results;
     }
 
-    private SExpr parseSingleExpr(List<Token> tokSExpr) throws ParseError {
-        Token currToken = tokSExpr.get(0);
-        if (currToken.getType() == TokenType.PARENS_OPEN) {
-            SExpr car = null;
-            SExpr cdr = null;
-            Token nextToken = tokSExpr.get(1);
-            if (nextToken.getType() == TokenType.PARENS_CLOSE) {
-                return Symbol.NIL;
-            } else if (nextToken.getType() == TokenType.PARENS_OPEN || nextToken.getType() == TokenType.LITERAL) {
-                Map<Integer, List<Token>> subExprAndRest = extractSubExpression(tokSExpr);
-                List<Token> subExpr = subExprAndRest.get(IDX_SUBEXPR);
-                List<Token> rest = subExprAndRest.get(IDX_REST);
-                car = parseSingleExpr(subExpr);
-                cdr = parseSingleExpr(rest);
-                return new Cons(car, cdr);
-            } else if (nextToken.getType() == TokenType.QUOTE) {
-                return parseQuoteAt(tokSExpr, 1);
-            } else {
-                throw new ParseError(String.format("Unexpected token %s.", nextToken.toString()));
+    /**
+     * Split _tokens_ into chunks of at least {@link #CHUNK_TOKENS} tokens
+     * (except for the last one) which end at the boundary of a top-level
+     * s-expression, like {@link #split(CharSequence)} does for single
+     * s-expressions.
+     * 
+     * @return The index of the first token of every chunk, followed by the
+     *         number of tokens.
+     */
+    private static int[] findChunks(TokenStream tokens) throws ParseError {
+        int size = tokens.size();
+        int[] chunks = new int[size / CHUNK_TOKENS + 2];
+        int count = 1;
+        int balance = 0;
+        for (int i = 0; i < size; ++i) {
+            byte kind = tokens.kind(i);
+            if (kind == TokenStream.PARENS_OPEN) {
+                ++balance;
+            } else if (kind == TokenStream.PARENS_CLOSE && --balance < 0) {
+                throw new ParseError("Malformed s-expression.");
             }
+            if (balance == 0 && kind != TokenStream.QUOTE && i + 1 - chunks[count - 1] >= CHUNK_TOKENS) {
+                chunks[count++] = i + 1;
+            }
+        }
+        if (balance != 0 || (size > 0 && tokens.kind(size - 1) == TokenStream.QUOTE)) {
+            throw new ParseError("Malformed s-expression.");
+        }
+        if (chunks[count - 1] != size) {
+            chunks[count++] = size;
+        }
+        return Arrays.copyOf(chunks, count);
+    }
 
-        } else if (currToken.getType() == TokenType.LITERAL) {
-            return parseLiteral(currToken);
-        } else if (currToken.getType() == TokenType.QUOTE) {
-            return parseQuoteAt(tokSExpr, 0);
+    /**
+     * Split _expr_ into its top-level s-expressions without parsing them, so
+     * each one can be parsed when it is needed (see {@link UnparsedForm}).
+     * Only the parentheses are checked at this point.
+     */
+    public List<UnparsedForm> split(CharSequence expr) throws ParseError {
+        TokenStream tokens = new TokenStream(expr);
+        List<UnparsedForm> forms = new ArrayList<UnparsedForm>();
+        int size = tokens.size();
+        int i = 0;
+        while (i < size) {
+            int from = i;
+            while (i < size && tokens.kind(i) == TokenStream.QUOTE) {
+                ++i;
+            }
+            int balance = 0;
+            do {
+                if (i == size) {
+                    throw new ParseError("Malformed s-expression.");
+                }
+                byte kind = tokens.kind(i++);
+                if (kind == TokenStream.PARENS_OPEN) {
+                    ++balance;
+                } else if (kind == TokenStream.PARENS_CLOSE && --balance < 0) {
+                    throw new ParseError("Malformed s-expression.");
+                }
+            } while (balance > 0);
+            forms.add(new UnparsedForm(this, tokens, from, i, findDefinedSymbol(tokens, from, i)));
         }
-        throw new ParseError(String.format("Unexpected token %s.", currToken.toString()));
+        return forms;
     }
 
     /**
-     * Parse an s-expression with a quote token at index _idx_
-     * 
-     * @param tokSExpr
-     *            List of tokens representing a single s-expression
-     * @param idx
-     *            Index where the quote token is located (usually 0 or 1)
-     * @return Parsed tokSExpr by calling _parseSingleExpr_
-     * @throws ParseError
-     *             In case a parse error arises
+     * @return The symbol defined by the s-expression between the tokens _from_
+     *         and _to_ if it has the form (define symbol value), otherwise
+     *         null.
      */
-    private SExpr parseQuoteAt(List<Token> tokSExpr, int idx) throws ParseError {
-        tokSExpr.set(idx, new Token(TokenType.PARENS_OPEN)); // ' is replaced by
-                                                             // (
-        tokSExpr.add(++idx, new Token(TokenType.LITERAL, "quote"));
-        /*
-         * Find position where to insert closing parens, i.e. identify quoted
-         * sub-expression
-         */
-        int bal = 0;
-        ++idx; // shift index one to the right, because a quote was added
-        TokenType currType = null;
-        do {
-            currType = tokSExpr.get(idx).getType();
-            ++idx;
-            if (currType == TokenType.PARENS_OPEN) {
-                ++bal;
-            } else if (currType == TokenType.PARENS_CLOSE) {
-                --bal;
+    private static Symbol findDefinedSymbol(TokenStream tokens, int from, int to) {
+        if (to - from < 5 || tokens.kind(from) != TokenStream.PARENS_OPEN
+                || tokens.kind(from + 1) != TokenStream.LITERAL || tokens.kind(from + 2) != TokenStream.LITERAL) {
+            return null;
+        }
+        CharSequence source = tokens.getSource();
+        if (parseLiteral(source, tokens.start(from + 1), tokens.end(from + 1)) != DEFINE) {
+            return null;
+        }
+        SExpr sym = parseLiteral(source, tokens.start(from + 2), tokens.end(from + 2));
+        return sym instanceof Symbol ? (Symbol) sym : null;
+    }
+
+    /**
+     * Parse the single s-expression between the tokens _from_ and _to_.
+     */
+    SExpr parseForm(TokenStream tokens, int from, int to) throws ParseError {
+        return parseExpr(new Cursor(tokens, from, to), false);
+    }
+
+    /**
+     * @param constant
+     *            True if the s-expression is quoted data, whose cons pairs
+     *            are marked constant (see {@link Cons#isConstant()}).
+     */
+    private SExpr parseExpr(Cursor cursor, boolean constant) throws ParseError {
+        if (!cursor.hasNext()) {
+            throw new ParseError("Malformed s-expression.");
+        }
+        int token = cursor.next();
+        switch (cursor.tokens.kind(token)) {
+        case TokenStream.LITERAL:
+            TokenStream tokens = cursor.tokens;
+            return parseLiteral(tokens.getSource(), tokens.start(token), tokens.end(token));
+        case TokenStream.QUOTE:
+            // 'x is read as (quote x)
+            return new Cons(QUOTE, new Cons(parseExpr(cursor, true), Symbol.NIL));
+        case TokenStream.PARENS_OPEN:
+            return parseList(cursor, constant);
+        default:
+            throw new ParseError("Malformed s-expression.");
+        }
+    }
+
+    /**
+     * Parse the elements of a list up to and including the closing
+     * parenthesis. The elements are collected on the cursor's stack and
+     * consed together once the end of the list is reached. Long lists are
+     * stored compactly (see {@link CompactList}).
+     */
+    private SExpr parseList(Cursor cursor, boolean constant) throws ParseError {
+        int mark = cursor.elements.size();
+        while (true) {
+            if (!cursor.hasNext()) {
+                throw new ParseError("Malformed s-expression.");
+            }
+            if (cursor.tokens.kind(cursor.pos) == TokenStream.PARENS_CLOSE) {
+                cursor.next();
+                break;
             }
-            /*
-             * completely ignore quotes here, because they belong to the
-             * subsequent sub-expression
-             */
-        } while (bal != 0 || currType == TokenType.QUOTE);
-        tokSExpr.add(idx, new Token(TokenType.PARENS_CLOSE));
-        return parseSingleExpr(tokSExpr);
+            cursor.elements.add(parseExpr(cursor, constant));
+        }
+        if (cursor.elements.size() - mark >= CompactList.MIN_LENGTH) {
+            return popCompactList(cursor.elements, mark, constant);
+        }
+        SExpr list = Symbol.NIL;
+        for (int i = cursor.elements.size() - 1; i >= mark; --i) {
+            list = new Cons(cursor.elements.remove(i), list, constant);
+        }
+        return list;
+    }
+
+    /**
+     * Remove the elements of _stack_ from _mark_ on and build a compact list
+     * of them.
+     */
+    static SExpr popCompactList(List<SExpr> stack, int mark, boolean constant) {
+        List<SExpr> elements = stack.subList(mark, stack.size());
+        SExpr list = CompactList.of(elements.toArray(new SExpr[elements.size()]), Symbol.NIL, constant);
+        elements.clear();
+        return list;
     }
 
-    private SExpr parseLiteral(Token token) {
-        String literal = token.getLiteral();
+    /**
+     * Convert the literal between _start_ and _end_ of _source_ into a number
+     * or a symbol. Integers that fit into a long are converted without
+     * creating a string first.
+     */
+    static SExpr parseLiteral(CharSequence source, int start, int end) {
+        long fixnum = parseFixnum(source, start, end);
+        if (fixnum != NOT_A_FIXNUM) {
+            return yale.eval.Number.valueOf(fixnum);
+        }
+        String literal = source.subSequence(start, end).toString();
         /*
          * If the literal starts with a digit or with a minus sign, the parser
          * tries to treat it as number
@@ -119,160 +302,81 @@ public class Parser {
         boolean startsWithMinus = literal.charAt(0) == '-';
         if (Character.isDigit(literal.charAt(0)) || startsWithMinus) {
             try {
-                yale.eval.Number num = new yale.eval.Number(new BigDecimal(literal));
+                yale.eval.Number num = yale.eval.Number.valueOf(new BigDecimal(literal));
                 return num;
             } catch (NumberFormatException e) {
                 /*
                  * Literal is not a number afterall, i.e. a symbol will be
                  * returned
                  */
-                return new Symbol(literal);
+                return Symbol.intern(literal);
             }
         } else {
-            return new Symbol(literal);
+            return Symbol.intern(literal);
         }
     }
 
     /**
-     * Extracts the first sub-expression from a list of tokens. This
-     * sub-expression can be a literal or a list of tokens (delimited by '(' and
-     * ')')
+     * Parse a decimal integer of at most 18 digits (optionally preceded by a
+     * minus sign) from _source_ between _start_ and _end_.
      * 
-     * @param tokens
-     *            A list of tokens representing a complete s-expression.
-     * @return Map with two entries: The extracted first sub-expression and the
-     *         original expression with the sub-expression removed, e.g. for (a
-     *         b) the return value is <a, (b)>
-     * @throws ParseError
-     *             In case no sub-expression can be extracted.
+     * @return The integer or {@link #NOT_A_FIXNUM} if the characters do not
+     *         form such an integer.
      */
-    private Map<Integer, List<Token>> extractSubExpression(List<Token> tokens) throws ParseError {
-        Map<Integer, List<Token>> result = new HashMap<Integer, List<Token>>();
-        List<Token> subExpr = new LinkedList<Token>();
-        Iterator<Token> iter = tokens.iterator();
-        if (!iter.hasNext()) {
-            throw new ParseError("Unexpected end of input.");
+    private static long parseFixnum(CharSequence source, int start, int end) {
+        int i = start;
+        boolean negative = source.charAt(i) == '-';
+        if (negative) {
+            ++i;
         }
-        Token first = iter.next();
-        if (first.getType() != TokenType.PARENS_OPEN) {
-            throw new ParseError("Unexpected token " + first);
+        if (i == end || end - i > MAX_FIXNUM_DIGITS) {
+            return NOT_A_FIXNUM;
         }
-        /*
-         * first token is '(', the second token will determine if the
-         * sub-expression is a literal or a nested s-expression, i.e. a list of
-         * tokens.
-         */
-        if (!iter.hasNext()) {
-            throw new ParseError("Unexpected end of input.");
-        }
-        Token second = iter.next();
-        subExpr.add(second);
-        if (second.getType() == TokenType.LITERAL) { // sub-expression is a
-                                                     // literal
-            result.put(IDX_SUBEXPR, subExpr);
-            tokens.remove(1); // remove extracted sub-expression from list of
-                              // tokens
-            result.put(IDX_REST, tokens);
-        } else if (second.getType() == TokenType.PARENS_OPEN) { // sub-expression
-                                                                // is a nested
-                                                                // s-expression
-            int bal = 1;
-            while (iter.hasNext() && bal > 0) {
-                Token curr = iter.next();
-                if (curr.getType() == TokenType.PARENS_OPEN) {
-                    bal++;
-                } else if (curr.getType() == Token.TokenType.PARENS_CLOSE) {
-                    bal--;
-                }
-                subExpr.add(curr);
+        long value = 0;
+        for (; i < end; ++i) {
+            char ch = source.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return NOT_A_FIXNUM;
             }
-            List<Token> rest = new LinkedList<Token>();
-            /*
-             * add initial '(' to retain syntactically correct original message
-             * with just the extracted sub-expression removed
-             */
-            rest.add(tokens.get(0));
-            while (iter.hasNext()) { // add remaining tokens to rest list
-                rest.add(iter.next());
-            }
-            result.put(IDX_SUBEXPR, subExpr);
-            result.put(IDX_REST, rest);
-        } else {
-            throw new ParseError("Unexpected token " + second);
+            value = value * 10 + (ch - '0');
         }
-        return result;
+        return negative ? -value : value;
     }
 
-    public List<SExpr> parseFromFile(String filename) {
-        return null;
+    /**
+     * Parse all s-expressions contained in a UTF-8 encoded file. The file is
+     * mapped into memory and lexed in place (see {@link MappedSource}).
+     */
+    public List<SExpr> parseFromFile(String filename) throws IOException, ParseError {
+        return parse(MappedSource.map(Paths.get(filename)));
     }
 
     /**
-     * Partitions given list of tokens into a list of lists of tokens. Each list
-     * of tokens covers exactly one s-expression.
-     * 
-     * @param tokens
-     *            list of tokens
-     * @return List of lists of tokens or null if excess tokens remain.
-     * @throws Exception
+     * Position in a token stream while it is parsed.
      */
-    LinkedList<LinkedList<Token>> extractTokSExprs(List<Token> tokens) throws ParseError {
-        LinkedList<LinkedList<Token>> tokSExprs = new LinkedList<LinkedList<Token>>();
-        Iterator<Token> iter = tokens.iterator();
-        LinkedList<Token> currTokSexpr = new LinkedList<Token>();
-        int bal = 0;
-        while (iter.hasNext()) {
-            Token currToken = iter.next();
-            if (currToken.getType() == TokenType.PARENS_OPEN) {
-                bal += 1;
-            } else if (currToken.getType() == TokenType.PARENS_CLOSE) {
-                bal -= 1;
-            }
-            currTokSexpr.add(currToken);
-            if (bal == 0 && currToken.getType() != TokenType.QUOTE) {
-                tokSExprs.add(currTokSexpr);
-                currTokSexpr = new LinkedList<Token>();
-            } else if (bal < 0) { // more ) than ( observed, i.e. expression
-                                  // must be malformed
-                throw new ParseError(String.format("Malformed s-expression", tokSExprs.size() + 1));
-            }
+    private static class Cursor {
+
+        private TokenStream tokens;
+        private int pos;
+        private int end;
+        /**
+         * Elements of the lists currently being parsed, the innermost list's
+         * elements on top.
+         */
+        private List<SExpr> elements = new ArrayList<SExpr>();
+
+        Cursor(TokenStream tokens, int from, int to) {
+            this.tokens = tokens;
+            this.pos = from;
+            this.end = to;
         }
-        if (bal == 0 && currTokSexpr.size() == 0) { // rules out possibility of
-                                                    // excess tokens
-            return tokSExprs;
-        } else {
-            throw new ParseError("Malformed s-expression.");
+
+        boolean hasNext() {
+            return this.pos < this.end;
         }
-    }
 
-    List<Token> lex(String expr) {
-        List<Token> tokens = new LinkedList<Token>();
-        Token nextToken = null;
-        StringBuffer currLiteral = new StringBuffer();
-        for (int i = 0; i < expr.length(); ++i) {
-            char ch = expr.charAt(i);
-            boolean isSeparator = true;
-            if (ch == Token.PARENS_OPEN) {
-                nextToken = new Token(TokenType.PARENS_OPEN);
-            } else if (ch == Token.PARENS_CLOSE) {
-                nextToken = new Token(TokenType.PARENS_CLOSE);
-            } else if (ch == Token.QUOTE) {
-                nextToken = new Token(TokenType.QUOTE);
-            } else if (!Character.isWhitespace(ch)) {
-                isSeparator = false;
-                currLiteral.append(ch);
-            }
-            if (isSeparator || i == expr.length() - 1) {
-                if (currLiteral.length() > 0) {
-                    tokens.add(new Token(TokenType.LITERAL, currLiteral.toString()));
-                    currLiteral = new StringBuffer();
-                }
-                if (nextToken != null) {
-                    tokens.add(nextToken);
-                    nextToken = null;
-                }
-            }
+        int next() {
+            return this.pos++;
         }
-        return tokens;
     }
 }
@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.parse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import yale.eval.CompactList;
+import yale.eval.Cons;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.exception.ParseError;
+
+/**
+ * Reads top-level s-expressions one at a time from a character stream. Unlike
+ * {@link Parser#parse(String)}, the input does not have to be available as a
+ * whole: only a small buffer of characters is kept in memory, and an
+ * s-expression can be evaluated before the rest of the input has been read.
+ * Expressions may span several lines.
+ */
+public class SExprReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int EOF = -1;
+
+    private Reader reader;
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private StringBuilder literal = new StringBuilder();
+    /**
+     * Elements of the lists currently being read, the innermost list's
+     * elements on top.
+     */
+    private List<SExpr> elements = new ArrayList<SExpr>();
+    private boolean reading;
+    private boolean eof;
+    private Runnable prompt;
+
+    public SExprReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Read UTF-8 encoded s-expressions from _channel_.
+     */
+    public SExprReader(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1));
+    }
+
+    /**
+     * Set an action to be run whenever the reader has to wait for more input
+     * before a new s-expression begins (e.g. printing a prompt).
+     */
+    public void setPrompt(Runnable prompt) {
+        this.prompt = prompt;
+    }
+
+    /**
+     * Read the next top-level s-expression.
+     * 
+     * @return The s-expression or null if the end of the input is reached.
+     * @throws ParseError
+     *             if the input is malformed. The reader may be used further,
+     *             e.g. after skipping the rest of the line (see
+     *             {@link #skipLine()}).
+     */
+    public SExpr read() throws IOException, ParseError {
+        this.elements.clear();
+        this.reading = false;
+        if (skipWhitespace() == EOF) {
+            return null;
+        }
+        this.reading = true;
+        try {
+            return readExpr(false);
+        } finally {
+            this.reading = false;
+        }
+    }
+
+    /**
+     * Discard the remaining characters of the current line.
+     */
+    public void skipLine() throws IOException {
+        int ch;
+        do {
+            ch = next();
+        } while (ch != EOF && ch != '\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    /**
+     * @param constant
+     *            True if the s-expression is quoted data (see
+     *            {@link Cons#isConstant()}).
+     */
+    private SExpr readExpr(boolean constant) throws IOException, ParseError {
+        int ch = skipWhitespace();
+        if (ch == EOF) {
+            throw new ParseError("Malformed s-expression.");
+        }
+        if (ch == '(') {
+            ++this.pos;
+            return readList(constant);
+        } else if (ch == '\'') {
+            // 'x is read as (quote x)
+            ++this.pos;
+            return new Cons(Parser.QUOTE, new Cons(readExpr(true), Symbol.NIL));
+        } else if (ch == ')') {
+            ++this.pos;
+            throw new ParseError("Malformed s-expression.");
+        }
+        return readLiteral();
+    }
+
+    private SExpr readList(boolean constant) throws IOException, ParseError {
+        int mark = this.elements.size();
+        while (true) {
+            int ch = skipWhitespace();
+            if (ch == EOF) {
+                throw new ParseError("Malformed s-expression.");
+            }
+            if (ch == ')') {
+                ++this.pos;
+                break;
+            }
+            this.elements.add(readExpr(constant));
+        }
+        if (this.elements.size() - mark >= CompactList.MIN_LENGTH) {
+            return Parser.popCompactList(this.elements, mark, constant);
+        }
+        SExpr list = Symbol.NIL;
+        for (int i = this.elements.size() - 1; i >= mark; --i) {
+            list = new Cons(this.elements.remove(i), list, constant);
+        }
+        return list;
+    }
+
+    private SExpr readLiteral() throws IOException {
+        this.literal.setLength(0);
+        while (true) {
+            int ch = peek();
+            if (ch == EOF || ch == '(' || ch == ')' || ch == '\'' || TokenStream.isWhitespace(ch)) {
+                break;
+            }
+            this.literal.append((char) ch);
+            ++this.pos;
+        }
+        return Parser.parseLiteral(this.literal, 0, this.literal.length());
+    }
+
+    /**
+     * @return The first character which is not whitespace (without consuming
+     *         it) or {@link #EOF}.
+     */
+    private int skipWhitespace() throws IOException {
+        int ch = peek();
+        while (ch != EOF && TokenStream.isWhitespace(ch)) {
+            ++this.pos;
+            ch = peek();
+        }
+        return ch;
+    }
+
+    private int next() throws IOException {
+        int ch = peek();
+        if (ch != EOF) {
+            ++this.pos;
+        }
+        return ch;
+    }
+
+    private int peek() throws IOException {
+        if (this.pos == this.limit) {
+            if (this.eof) {
+                return EOF;
+            }
+            if (!this.reading && this.prompt != null) {
+                this.prompt.run();
+            }
+            int read;
+            do {
+                read = this.reader.read(this.buffer, 0, this.buffer.length);
+            } while (read == 0);
+            if (read == EOF) {
+                this.eof = true;
+                return EOF;
+            }
+            this.pos = 0;
+            this.limit = read;
+        }
+        return this.buffer[this.pos];
+    }
+}
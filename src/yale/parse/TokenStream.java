@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.parse;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The tokens of a source text in compact form: the kind of every token and the
+ * offsets of its first and behind its last character are stored in primitive
+ * arrays. No objects are created per token; the text of a literal is only
+ * converted when the parser consumes it (see
+ * {@link Parser#parseLiteral(CharSequence, int, int)}).
+ */
+public class TokenStream {
+
+    static final byte PARENS_OPEN = 0;
+    static final byte PARENS_CLOSE = 1;
+    static final byte QUOTE = 2;
+    static final byte LITERAL = 3;
+    private static final byte WHITESPACE = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_INITIAL_CAPACITY = 1 << 16;
+
+    private CharSequence source;
+    private byte[] kinds;
+    private int[] starts;
+    private int[] ends;
+    private int size;
+
+    /**
+     * Lex _source_. Parentheses, quotes and whitespace separate literals. Only
+     * ASCII characters are treated as whitespace (see
+     * {@link #isWhitespace(int)}), so the characters of a string and the bytes
+     * of a {@link MappedSource} are split the same way.
+     */
+    public TokenStream(CharSequence source) {
+        this.source = source;
+        int capacity = Math.max(INITIAL_CAPACITY, Math.min(MAX_INITIAL_CAPACITY, source.length() / 4));
+        this.kinds = new byte[capacity];
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        if (source instanceof MappedSource) {
+            MappedSource mapped = (MappedSource) source;
+            lex(mapped.getBytes(), mapped.getOffset(), mapped.length());
+        } else {
+            lex(source);
+        }
+    }
+
+    private void lex(CharSequence source) {
+        int length = source.length();
+        int literalStart = -1;
+        for (int i = 0; i < length; ++i) {
+            byte kind = classify(source.charAt(i));
+            if (kind == LITERAL) {
+                if (literalStart < 0) {
+                    literalStart = i;
+                }
+                continue;
+            }
+            if (literalStart >= 0) {
+                add(LITERAL, literalStart, i);
+                literalStart = -1;
+            }
+            if (kind != WHITESPACE) {
+                add(kind, i, i + 1);
+            }
+        }
+        if (literalStart >= 0) {
+            add(LITERAL, literalStart, length);
+        }
+    }
+
+    /**
+     * Like {@link #lex(CharSequence)}, but reading the bytes of a
+     * {@link MappedSource} from its buffer directly.
+     */
+    private void lex(ByteBuffer bytes, int offset, int length) {
+        int literalStart = -1;
+        for (int i = 0; i < length; ++i) {
+            byte kind = classify((char) (bytes.get(offset + i) & 0xFF));
+            if (kind == LITERAL) {
+                if (literalStart < 0) {
+                    literalStart = i;
+                }
+                continue;
+            }
+            if (literalStart >= 0) {
+                add(LITERAL, literalStart, i);
+                literalStart = -1;
+            }
+            if (kind != WHITESPACE) {
+                add(kind, i, i + 1);
+            }
+        }
+        if (literalStart >= 0) {
+            add(LITERAL, literalStart, length);
+        }
+    }
+
+    private static byte classify(char ch) {
+        if (ch == '(') {
+            return PARENS_OPEN;
+        } else if (ch == ')') {
+            return PARENS_CLOSE;
+        } else if (ch == '\'') {
+            return QUOTE;
+        } else if (isWhitespace(ch)) {
+            return WHITESPACE;
+        }
+        return LITERAL;
+    }
+
+    /**
+     * @return True if _ch_ is an ASCII whitespace character. Other whitespace
+     *         (e.g. a no-break space) is part of a literal, since a
+     *         {@link MappedSource} is lexed byte by byte and never sees the
+     *         decoded character.
+     */
+    static boolean isWhitespace(int ch) {
+        return ch >= 0 && ch < 0x80 && Character.isWhitespace(ch);
+    }
+
+    private void add(byte kind, int start, int end) {
+        if (this.size == this.kinds.length) {
+            int capacity = this.size * 2;
+            byte[] newKinds = new byte[capacity];
+            int[] newStarts = new int[capacity];
+            int[] newEnds = new int[capacity];
+            System.arraycopy(this.kinds, 0, newKinds, 0, this.size);
+            System.arraycopy(this.starts, 0, newStarts, 0, this.size);
+            System.arraycopy(this.ends, 0, newEnds, 0, this.size);
+            this.kinds = newKinds;
+            this.starts = newStarts;
+            this.ends = newEnds;
+        }
+        this.kinds[this.size] = kind;
+        this.starts[this.size] = start;
+        this.ends[this.size] = end;
+        ++this.size;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    byte kind(int index) {
+        return this.kinds[index];
+    }
+
+    int start(int index) {
+        return this.starts[index];
+    }
+
+    int end(int index) {
+        return this.ends[index];
+    }
+
+    CharSequence getSource() {
+        return this.source;
+    }
+}
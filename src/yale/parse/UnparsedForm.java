@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ * 
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.parse;
+
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.exception.ParseError;
+
+/**
+ * A top-level s-expression which has been lexed, but not parsed yet (see
+ * {@link Parser#split(CharSequence)}).
+ */
+public class UnparsedForm {
+
+    private Parser parser;
+    private TokenStream tokens;
+    private int from;
+    private int to;
+    private Symbol definedSymbol;
+
+    UnparsedForm(Parser parser, TokenStream tokens, int from, int to, Symbol definedSymbol) {
+        this.parser = parser;
+        this.tokens = tokens;
+        this.from = from;
+        this.to = to;
+        this.definedSymbol = definedSymbol;
+    }
+
+    /**
+     * @return The symbol defined by this s-expression if it has the form
+     *         (define symbol value), otherwise null.
+     */
+    public Symbol getDefinedSymbol() {
+        return this.definedSymbol;
+    }
+
+    public SExpr parse() throws ParseError {
+        return this.parser.parseForm(this.tokens, this.from, this.to);
+    }
+}
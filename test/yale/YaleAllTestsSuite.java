@@ -8,6 +8,12 @@ package yale;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
+import yale.eval.CompactListTest;
+import yale.eval.HashTableTest;
+import yale.eval.PersistentCollectionsTest;
+import yale.image.ModuleCacheTest;
+import yale.image.SnapshotTest;
+import yale.image.StdlibImageTest;
 import yale.main.YaleTest;
 import yale.parse.ParserTest;
 
@@ -15,6 +21,6 @@ import yale.parse.ParserTest;
  * Container for all test classes in Yale.
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({ ParserTest.class, YaleTest.class })
+@Suite.SuiteClasses({ CompactListTest.class, HashTableTest.class, ModuleCacheTest.class, ParserTest.class, PersistentCollectionsTest.class, SnapshotTest.class, StdlibImageTest.class, YaleTest.class })
 public class YaleAllTestsSuite {
 }
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import yale.exception.ParseError;
+import yale.parse.Parser;
+
+/**
+ * Testing cdr-coded lists.
+ */
+public class CompactListTest {
+
+    private static SExpr[] numbers(int from, int to) {
+        SExpr[] result = new SExpr[to - from];
+        for (int i = from; i < to; ++i) {
+            result[i - from] = Number.valueOf(i);
+        }
+        return result;
+    }
+
+    @Test
+    public void testCarCdr() {
+        SExpr list = CompactList.of(numbers(0, 20));
+        assertTrue(list instanceof CompactList);
+        SExpr curr = list;
+        for (int i = 0; i < 20; ++i) {
+            assertTrue(curr.isCons());
+            assertEquals(Number.valueOf(i), curr.car());
+            curr = curr.cdr();
+        }
+        assertSame(Symbol.NIL, curr);
+        /* different objects for the same position are equal */
+        assertEquals(list.cdr(), list.cdr());
+        assertEquals(list.cdr().cdr(), CompactList.nthCdr(list, 2));
+        assertNotEquals(list.cdr(), list.cdr().cdr());
+        assertEquals("(0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19)", list.toString());
+
+        /* short lists are made of cons pairs */
+        assertFalse(CompactList.of(numbers(0, 3)) instanceof CompactList);
+    }
+
+    @Test
+    public void testPositions() {
+        /* positions reached by nthCdr and by cdr are equal */
+        SExpr list = CompactList.of(numbers(0, 20));
+        SExpr second = list.cdr().cdr();
+        SExpr fifth = CompactList.nthCdr(second, 3);
+        assertEquals(fifth, second.cdr().cdr().cdr());
+        assertEquals(CompactList.nthCdr(list, 10), CompactList.nthCdr(fifth, 5));
+        assertEquals(second.hashCode(), CompactList.nthCdr(list, 2).hashCode());
+        assertNotEquals(list, CompactList.of(numbers(0, 20)));
+    }
+
+    @Test
+    public void testLengthAndAccess() {
+        /* a cons pair, followed by a compact list with a compact tail */
+        SExpr tail = CompactList.of(numbers(20, 40));
+        SExpr list = new Cons(Symbol.NIL, CompactList.of(numbers(0, 20), tail, false));
+        assertEquals(41, CompactList.length(list));
+        assertEquals(Number.valueOf(5), CompactList.nthCdr(list, 6).car());
+        assertEquals(Number.valueOf(25), CompactList.nthCdr(list, 26).car());
+        assertEquals(tail, CompactList.nthCdr(list, 21));
+        assertSame(Symbol.NIL, CompactList.nthCdr(list, 100));
+        assertEquals(20, CompactList.length(CompactList.nthCdr(list, 21)));
+
+        SExpr[] expected = new SExpr[41];
+        expected[0] = Symbol.NIL;
+        System.arraycopy(numbers(0, 40), 0, expected, 1, 40);
+        assertArrayEquals(expected, CompactList.toArray(list));
+    }
+
+    @Test
+    public void testParser() throws ParseError {
+        SExpr expr = new Parser().parse("'(0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 (a b) 19)").get(0);
+        SExpr list = expr.cdr().car();
+        assertTrue(list instanceof CompactList);
+        assertTrue(((Cons) list).isConstant());
+        SExpr inner = CompactList.nthCdr(list, 18).car();
+        assertTrue(((Cons) inner).isConstant());
+        assertTrue(((Cons) list.cdr().cdr()).isConstant());
+    }
+
+    @Test
+    public void testMarkConstant() {
+        SExpr inner = new Cons(Symbol.NIL, Symbol.NIL);
+        SExpr[] elements = numbers(0, 20);
+        elements[10] = inner;
+        SExpr list = CompactList.of(elements);
+        Cons.markConstant(list);
+        assertTrue(((Cons) list).isConstant());
+        assertTrue(((Cons) inner).isConstant());
+        assertTrue(((Cons) CompactList.nthCdr(list, 15)).isConstant());
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Testing hash tables and the hashing of keys.
+ */
+public class HashTableTest {
+
+    @Test
+    public void testNumberHashCode() {
+        String[][] equal = { { "2", "2.0" }, { "0", "0.00" }, { "-7", "-7.000" },
+                { "9223372036854775807", "9223372036854775807.0" }, { "100000000000000000000", "1E+20" },
+                { "0.5", "0.50" } };
+        for (String[] pair : equal) {
+            Number a = Number.valueOf(new BigDecimal(pair[0]));
+            Number b = Number.valueOf(new BigDecimal(pair[1]));
+            assertEquals(a, b);
+            assertEquals(a.hashCode(), b.hashCode());
+        }
+    }
+
+    @Test
+    public void testConsKeys() {
+        SExpr a = new Cons(Symbol.intern("a"), new Cons(Number.valueOf(2), Symbol.NIL));
+        SExpr b = new Cons(Symbol.intern("a"), new Cons(Number.valueOf(new BigDecimal("2.0")), Symbol.NIL));
+        assertTrue(HashTable.keyEquals(a, b));
+        assertEquals(HashTable.hash(a), HashTable.hash(b));
+        assertFalse(HashTable.keyEquals(a, a.cdr()));
+        assertFalse(HashTable.keyEquals(a, new Cons(Symbol.intern("a"), Symbol.NIL)));
+    }
+
+    /**
+     * Interleaved insertions and removals must not lose entries (see the
+     * backward shift in {@link HashTable#remove}).
+     */
+    @Test
+    public void testChurn() {
+        HashTable table = new HashTable();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; ++i) {
+            int key = random.nextInt(50000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, table.remove(Number.valueOf(key)));
+            } else {
+                expected.put(key, i);
+                table.put(Number.valueOf(key), Number.valueOf(i));
+            }
+        }
+        assertEquals(expected.size(), table.size());
+        for (int key = 0; key < 50000; ++key) {
+            SExpr value = table.get(Number.valueOf(key));
+            if (expected.containsKey(key)) {
+                assertEquals(Number.valueOf(expected.get(key)), value);
+            } else {
+                assertNull(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.eval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Testing persistent vectors and maps, in particular that updates leave older
+ * versions unchanged.
+ */
+public class PersistentCollectionsTest {
+
+    @Test
+    public void testVector() {
+        /* enough elements for a trie of three levels */
+        int count = 40000;
+        List<PersistentVector> versions = new ArrayList<PersistentVector>();
+        PersistentVector vector = PersistentVector.EMPTY;
+        for (int i = 0; i < count; ++i) {
+            vector = vector.push(Number.valueOf(i));
+            if (i % 997 == 0) {
+                versions.add(vector);
+            }
+        }
+        PersistentVector updated = vector;
+        for (int i = 0; i < count; i += 3) {
+            updated = updated.set(i, Number.valueOf(-i));
+        }
+        for (int i = 0; i < count; ++i) {
+            assertEquals(Number.valueOf(i), vector.get(i));
+            assertEquals(Number.valueOf(i % 3 == 0 ? -i : i), updated.get(i));
+        }
+        for (int v = 0; v < versions.size(); ++v) {
+            PersistentVector version = versions.get(v);
+            assertEquals(v * 997 + 1, version.length());
+            for (int i = 0; i < version.length(); ++i) {
+                assertEquals(Number.valueOf(i), version.get(i));
+            }
+        }
+
+        /* pop down to each of the saved versions */
+        for (int v = versions.size() - 1; v >= 0; --v) {
+            while (updated.length() > versions.get(v).length()) {
+                updated = updated.pop();
+            }
+            for (int i = 0; i < updated.length(); ++i) {
+                assertEquals(Number.valueOf(i % 3 == 0 ? -i : i), updated.get(i));
+            }
+            updated = updated.push(Symbol.NIL).pop();
+        }
+        assertSame(PersistentVector.EMPTY, updated.pop());
+    }
+
+    @Test
+    public void testMap() {
+        Random random = new Random(42);
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        PersistentMap map = PersistentMap.EMPTY;
+        PersistentMap saved = null;
+        Map<Integer, Integer> savedExpected = null;
+        for (int i = 0; i < 100000; ++i) {
+            int key = random.nextInt(20000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(Number.valueOf(key));
+            } else {
+                expected.put(key, i);
+                map = map.put(Number.valueOf(key), Number.valueOf(i));
+            }
+            if (i == 50000) {
+                saved = map;
+                savedExpected = new HashMap<Integer, Integer>(expected);
+            }
+        }
+        assertMap(expected, map);
+        assertMap(savedExpected, saved);
+    }
+
+    private static void assertMap(Map<Integer, Integer> expected, PersistentMap map) {
+        assertEquals(expected.size(), map.size());
+        for (int key = 0; key < 20000; ++key) {
+            SExpr value = map.get(Number.valueOf(key));
+            if (expected.containsKey(key)) {
+                assertEquals(Number.valueOf(expected.get(key)), value);
+            } else {
+                assertNull(value);
+            }
+        }
+    }
+
+    @Test
+    public void testCollisions() {
+        /* "Aa" and "BB" have the same hash code */
+        Symbol a = Symbol.intern("Aa");
+        Symbol b = Symbol.intern("BB");
+        assertEquals(HashTable.hash(a), HashTable.hash(b));
+        PersistentMap map = PersistentMap.EMPTY.put(a, Number.ONE).put(b, Number.ZERO);
+        map = map.put(Symbol.intern("AaAa"), a).put(Symbol.intern("BBBB"), b);
+        assertEquals(4, map.size());
+        assertEquals(Number.ONE, map.get(a));
+        assertEquals(Number.ZERO, map.get(b));
+        assertEquals(b, map.get(Symbol.intern("BBBB")));
+
+        PersistentMap removed = map.remove(a);
+        assertEquals(3, removed.size());
+        assertNull(removed.get(a));
+        assertEquals(Number.ZERO, removed.get(b));
+        assertEquals(Number.ONE, map.get(a));
+        assertSame(PersistentMap.EMPTY,
+                removed.remove(b).remove(Symbol.intern("AaAa")).remove(Symbol.intern("BBBB")));
+    }
+}
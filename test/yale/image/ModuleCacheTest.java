@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import yale.eval.SExpr;
+import yale.exception.ParseError;
+import yale.main.EvalMode;
+import yale.main.Kernel;
+import yale.main.Yale;
+import yale.parse.MappedSource;
+import yale.parse.Parser;
+
+/**
+ * Testing the on-disk cache of loaded files.
+ */
+public class ModuleCacheTest {
+
+    private static final String MODULE = "(define square (lambda (x) (* x x)))" + "(define nine (square 3))"
+            + "(define sum (+ 1 2))" + "(define xs '(1 2 3))";
+
+    private Path dir;
+    private Path source;
+    private ModuleCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("yale-cache");
+        this.source = Files.createTempFile("yale", ".yl");
+        Files.write(this.source, MODULE.getBytes(StandardCharsets.UTF_8));
+        this.cache = new ModuleCache(this.dir);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Path entry : entries()) {
+            Files.delete(entry);
+        }
+        Files.delete(this.dir);
+        Files.delete(this.source);
+    }
+
+    private List<Path> entries() throws IOException {
+        List<Path> entries = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.dir)) {
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private static SExpr eval(Yale yale, String str) throws ParseError {
+        SExpr result = null;
+        for (SExpr expr : yale.getParser().parse(str)) {
+            result = yale.eval(expr);
+        }
+        return result;
+    }
+
+    private Yale load(EvalMode mode, String before) throws IOException, URISyntaxException, ParseError {
+        Yale yale = new Yale(mode);
+        yale.setModuleCache(this.cache);
+        eval(yale, before + "(load '" + this.source + ")");
+        return yale;
+    }
+
+    private static void assertLoaded(Yale yale) throws ParseError {
+        assertEquals("9", eval(yale, "nine").toString());
+        assertEquals("16", eval(yale, "(square 4)").toString());
+        assertEquals("3", eval(yale, "sum").toString());
+        assertEquals("3", eval(yale, "(length xs)").toString());
+    }
+
+    @Test
+    public void testLoad() throws IOException, URISyntaxException, ParseError {
+        for (EvalMode mode : EvalMode.values()) {
+            /* the first load writes the entry, the second one reads it */
+            assertLoaded(load(mode, ""));
+            assertEquals(1, entries().size());
+            ByteBuffer bytes = MappedSource.map(this.source).toByteBuffer();
+            assertNotNull(this.cache.readForms(bytes));
+            assertLoaded(load(mode, ""));
+            Files.delete(this.cache.getPath(bytes));
+        }
+    }
+
+    @Test
+    public void testLoadFromCache() throws IOException, URISyntaxException, ParseError {
+        ByteBuffer bytes = MappedSource.map(this.source).toByteBuffer();
+        List<SExpr> forms = new Parser().parse("(define nine 42)");
+        this.cache.write(bytes, forms, null);
+        for (EvalMode mode : EvalMode.values()) {
+            assertEquals("42", eval(load(mode, ""), "nine").toString());
+        }
+    }
+
+    @Test
+    public void testChangedSource() throws IOException, URISyntaxException, ParseError {
+        assertLoaded(load(EvalMode.ANALYZE, ""));
+        Files.write(this.source, "(define nine 10)".getBytes(StandardCharsets.UTF_8));
+        assertEquals("10", eval(load(EvalMode.ANALYZE, ""), "nine").toString());
+        assertEquals(2, entries().size());
+
+        /* an entry built from another source is never used */
+        ByteBuffer other = ByteBuffer.wrap("(define nine 11)".getBytes(StandardCharsets.UTF_8));
+        ByteBuffer bytes = MappedSource.map(this.source).toByteBuffer();
+        Files.copy(this.cache.getPath(bytes), this.cache.getPath(other));
+        assertNull(this.cache.readForms(other));
+        assertEquals(2, entries().size());
+    }
+
+    @Test
+    public void testCorruptEntry() throws IOException, URISyntaxException, ParseError {
+        assertLoaded(load(EvalMode.ANALYZE, ""));
+        ByteBuffer bytes = MappedSource.map(this.source).toByteBuffer();
+        Path entry = this.cache.getPath(bytes);
+        byte[] content = Files.readAllBytes(entry);
+        content[content.length - 3] ^= 0x55;
+        Files.write(entry, content);
+        assertNull(this.cache.readForms(bytes));
+
+        /* the entry is rebuilt */
+        Files.write(entry, new byte[] { 'Y', 'M' });
+        assertLoaded(load(EvalMode.MACHINE, ""));
+        assertNotNull(this.cache.readNodes(bytes, new Kernel(), null));
+    }
+
+    @Test
+    public void testRedefinedKernelFunction() throws IOException, URISyntaxException, ParseError {
+        assertLoaded(load(EvalMode.ANALYZE, ""));
+        /* folded calls of the cached nodes must not use the redefined + */
+        Yale yale = load(EvalMode.ANALYZE, "(assign + -)");
+        assertEquals("-1", eval(yale, "sum").toString());
+        /* nodes cannot be used when special forms are redefined */
+        yale = load(EvalMode.ANALYZE, "(assign let 0)");
+        assertEquals("9", eval(yale, "nine").toString());
+    }
+
+    @Test
+    public void testAliasedSpecialForm() throws IOException, URISyntaxException, ParseError {
+        Files.write(this.source, "(define pick (lambda (x) (my-if x 1 2)))".getBytes(StandardCharsets.UTF_8));
+        assertEquals("2", eval(load(EvalMode.ANALYZE, "(define my-if if)"), "(pick nil)").toString());
+        /* the cached nodes look up the binding of my-if when they are executed */
+        Yale yale = load(EvalMode.ANALYZE, "(define my-if (lambda (c a b) 'called))");
+        assertEquals("called", eval(yale, "(pick nil)").toString());
+        ByteBuffer bytes = MappedSource.map(this.source).toByteBuffer();
+        assertNotNull(this.cache.readNodes(bytes, new Kernel(), null));
+    }
+
+    @Test
+    public void testBuildId() throws IOException {
+        /* entries of another build of yale are never used */
+        assertEquals(ModuleCache.getBuildId(), ModuleCache.getBuildId());
+        ByteBuffer bytes = MappedSource.map(this.source).toByteBuffer();
+        this.cache.write(bytes, new ArrayList<SExpr>(), null);
+        Path entry = this.cache.getPath(bytes);
+        byte[] content = Files.readAllBytes(entry);
+        int offset = new String(content, StandardCharsets.ISO_8859_1).indexOf(ModuleCache.getBuildId());
+        content[offset] ^= 0x01;
+        Files.write(entry, content);
+        assertNull(this.cache.readForms(bytes));
+    }
+}
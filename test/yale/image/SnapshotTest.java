@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.image;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import yale.eval.SExpr;
+import yale.exception.ParseError;
+import yale.main.EvalMode;
+import yale.main.Yale;
+
+/**
+ * Testing snapshots of root environments.
+ */
+public class SnapshotTest {
+
+    private static final String DEFINITIONS = "(define acc-gen (lambda (x) (lambda (y) (assign x (+ x y)) x)))"
+            + "(define acc (acc-gen 10))" + "(acc 5)"
+            + "(define fact (letrec ((f (lambda (n) (if (> n 1) (* n (f (- n 1))) 1)))) f))"
+            + "(define xs '(1 2 3))" + "(define ys (cons 0 xs))" + "(define plus +)"
+            + "(define counter 0)" + "(assign counter 5)"
+            + "(define v (vector xs 'a))" + "(vector-set! v 1 v)"
+            + "(define lv (make-long-vector 3 -5))" + "(vector-set! lv 1 9223372036854775807)"
+            + "(define dv (make-double-vector 2 0.1))"
+            + "(define h (make-hash))" + "(hash-put! h '(1 2) h)" + "(hash-put! h 2.0 xs)"
+            + "(define pv (pvector-push (pvector 1 xs) 3))" + "(define pm (pmap-put (pmap 'a pv) '(b) 2))"
+            + "(define cs '(1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 20))" + "(define cs-rest (cdr cs))"
+            + "(define cs-tail (nthcdr 18 cs))";
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        this.file = Files.createTempFile("yale", ".snapshot");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    private static SExpr eval(Yale yale, String str) throws ParseError {
+        SExpr result = null;
+        for (SExpr expr : yale.getParser().parse(str)) {
+            result = yale.eval(expr);
+        }
+        return result;
+    }
+
+    private void assertRestored(Yale yale) throws ParseError {
+        assertEquals("16", eval(yale, "(acc 1)").toString());
+        assertEquals("3628800", eval(yale, "(fact 10)").toString());
+        assertEquals("t", eval(yale, "(eql xs (cdr ys))").toString());
+        assertEquals("3", eval(yale, "(plus 1 2)").toString());
+        assertEquals("5", eval(yale, "counter").toString());
+        assertEquals("4", eval(yale, "(length ys)").toString());
+        assertEquals("t", eval(yale, "(eql (vector-ref v 0) xs)").toString());
+        assertEquals("t", eval(yale, "(eql (vector-ref v 1) v)").toString());
+        assertEquals("(-5 9223372036854775807 -5)", eval(yale, "(vector->list lv)").toString());
+        assertEquals("#(0.1 0.1)", eval(yale, "dv").toString());
+        assertEquals("#[1 (1 2 3) 3]", eval(yale, "pv").toString());
+        assertEquals("t", eval(yale, "(eql (pmap-get pm 'a) pv)").toString());
+        assertEquals("2", eval(yale, "(pmap-get pm (cons 'b nil))").toString());
+        assertEquals("t", eval(yale, "(eql (hash-get h (cons 1 (cons 2 nil))) h)").toString());
+        assertEquals("t", eval(yale, "(eql (hash-get h 2) xs)").toString());
+        /* suffixes of compact lists share their array */
+        assertEquals("t", eval(yale, "(eql cs-rest (cdr cs))").toString());
+        assertEquals("t", eval(yale, "(eql cs-tail (nthcdr 17 cs-rest))").toString());
+        assertEquals("(19 20)", eval(yale, "cs-tail").toString());
+    }
+
+    @Test
+    public void testRestore() throws IOException, URISyntaxException, ParseError {
+        for (EvalMode mode : EvalMode.values()) {
+            Yale yale = new Yale(mode);
+            eval(yale, DEFINITIONS);
+            yale.saveSnapshot(this.file);
+            assertRestored(Yale.restoreSnapshot(this.file, mode));
+            /* restoring twice yields independent instances */
+            assertRestored(Yale.restoreSnapshot(this.file, mode));
+        }
+    }
+
+    @Test
+    public void testRestoreInOtherMode() throws IOException, URISyntaxException, ParseError {
+        Yale yale = new Yale(EvalMode.ANALYZE);
+        eval(yale, DEFINITIONS);
+        yale.saveSnapshot(this.file);
+        assertRestored(Yale.restoreSnapshot(this.file, EvalMode.INTERPRET));
+        assertRestored(Yale.restoreSnapshot(this.file, EvalMode.TIERED));
+    }
+
+    @Test
+    public void testLargeSnapshot() throws IOException, URISyntaxException, ParseError {
+        Yale yale = new Yale(EvalMode.ANALYZE);
+        eval(yale, "(define build (lambda (n acc) (if (> n 0) (build (- n 1) (cons n acc)) acc)))"
+                + "(define big (build 200000 nil))" + "(define big-tail (nthcdr 150001 big))"
+                + "(define big-rest (nthcdr 100 big-tail))"
+                + "(define chain (lambda (n f) (if (> n 0) (chain (- n 1) (lambda () f)) f)))"
+                + "(define c (chain 200000 nil))");
+        yale.saveSnapshot(this.file);
+        Yale restored = Yale.restoreSnapshot(this.file, EvalMode.MACHINE);
+        assertEquals("200000", eval(restored, "(length big)").toString());
+        /* tails shared in the middle of a long list */
+        assertEquals("t", eval(restored, "(eql big-tail (nthcdr 150001 big))").toString());
+        assertEquals("t", eval(restored, "(eql big-rest (nthcdr 150101 big))").toString());
+        assertEquals("nil", eval(restored, "(nullp (c))").toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidSnapshot() throws IOException {
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 'Y', 'I', 'M', 'G', 1 }));
+        }
+        Yale.restoreSnapshot(this.file, EvalMode.ANALYZE);
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2016 Christian Pohlmann
+ *
+ * Licensed under The MIT License (see LICENSE.md)
+ */
+package yale.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+import yale.analyze.Analyzer;
+import yale.eval.Cons;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
+import yale.exception.ParseError;
+import yale.main.Kernel;
+import yale.parse.Parser;
+
+/**
+ * Testing the binary image of the standard library.
+ */
+public class StdlibImageTest {
+
+    private static byte[] writeStdlib() throws IOException, ParseError {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StdlibImage.write(new InputStreamReader(StdlibImageTest.class.getResourceAsStream("/stdlib.yl"),
+                StandardCharsets.UTF_8), out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testSExprRoundTrip() throws IOException, ParseError {
+        List<SExpr> exprs = new Parser().parse("(a -5 0 9223372036854775807 -9223372036854775808 "
+                + "123456789012345678901234567890.5 (b . c) () 'x '(1 (2 3)))");
+        SExpr expr = exprs.get(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageOutput image = new ImageOutput(out);
+        image.writeSExpr(expr);
+        image.writeSExpr(expr);
+        image.flush();
+
+        ImageInput in = new ImageInput(ByteBuffer.wrap(out.toByteArray()), null, null);
+        assertEquals(expr.toString(), in.readSExpr().toString());
+        SExpr copy = in.readSExpr();
+        assertEquals(expr.toString(), copy.toString());
+        /* quoted data stays constant */
+        SExpr quoted = copy.cdr().cdr().cdr().cdr().cdr().cdr().cdr().cdr().cdr().car().cdr().car();
+        assertTrue(((Cons) quoted).isConstant());
+    }
+
+    @Test
+    public void testLoadStdlib() throws IOException, ParseError {
+        byte[] bytes = writeStdlib();
+        Kernel kernel = new Kernel();
+        Analyzer analyzer = new Analyzer(kernel.getRootEnvironment(), null);
+        StdlibImage stdlib = StdlibImage.read(ByteBuffer.wrap(bytes), kernel.getRootEnvironment(), null);
+        for (int i = 0; i < stdlib.size(); ++i) {
+            stdlib.readNode(i).exec(null);
+        }
+        SExpr expr = new Parser().parse("(and (<= 1 2) (>= 3 3))").get(0);
+        assertEquals(Kernel.T, analyzer.analyze(expr).exec(null));
+    }
+
+    @Test
+    public void testLoadStdlibForms() throws IOException, ParseError {
+        byte[] bytes = writeStdlib();
+        Kernel kernel = new Kernel();
+        StdlibImage stdlib = StdlibImage.read(ByteBuffer.wrap(bytes), kernel.getRootEnvironment(), null);
+        for (int i = 0; i < stdlib.size(); ++i) {
+            stdlib.readForm(i).eval(kernel.getRootEnvironment());
+        }
+        SExpr expr = new Parser().parse("(or (< 2 1) (< 1 2))").get(0);
+        assertEquals(Kernel.T, expr.eval(kernel.getRootEnvironment()));
+    }
+
+    @Test
+    public void testDefinedSymbols() throws IOException, ParseError {
+        byte[] bytes = writeStdlib();
+        StdlibImage stdlib = StdlibImage.read(ByteBuffer.wrap(bytes), new Kernel().getRootEnvironment(), null);
+        boolean found = false;
+        for (int i = 0; i < stdlib.size(); ++i) {
+            Symbol sym = stdlib.getDefinedSymbol(i);
+            if (sym != null) {
+                assertEquals(sym, stdlib.readForm(i).cdr().car());
+                found |= sym == Symbol.intern("<=");
+            }
+        }
+        assertTrue(found);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidImage() throws IOException {
+        StdlibImage.read(ByteBuffer.wrap("(define x 1)".getBytes(StandardCharsets.UTF_8)), null, null);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedImage() throws IOException, ParseError {
+        byte[] bytes = writeStdlib();
+        ByteBuffer truncated = ByteBuffer.wrap(bytes, 0, bytes.length / 2).slice();
+        StdlibImage.read(truncated, new Kernel().getRootEnvironment(), null);
+    }
+}
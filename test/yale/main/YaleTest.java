@@ -6,23 +6,60 @@
 package yale.main;
 
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 
+import yale.analyze.JitCompiler;
+import yale.eval.Environment;
+import yale.eval.LazyDefinition;
+import yale.eval.Number;
 import yale.eval.SExpr;
+import yale.eval.Symbol;
 import yale.exception.ParseError;
 
 /**
  * Testing Yale's evaluation capabilities, covering both the core and the standard library.
+ * Every test is run once for each evaluation mode.
  */
+@RunWith(Parameterized.class)
 public class YaleTest {
 
     private Yale yale;
+    private EvalMode mode;
+
+    public YaleTest(EvalMode mode) {
+        this.mode = mode;
+    }
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> modes() {
+        return Arrays.asList(new Object[][] { { EvalMode.INTERPRET }, { EvalMode.ANALYZE }, { EvalMode.TIERED },
+                { EvalMode.MACHINE } });
+    }
+
+    /**
+     * Compile lambda forms on their first call, so that the tests exercise
+     * compiled code in tiered mode.
+     */
+    @BeforeClass
+    public static void setUpJit() {
+        System.setProperty("yale.jit.threshold", "1");
+    }
     
     /**
      * Checks if the evaluation result of the expressions given as first
@@ -43,10 +80,10 @@ public class YaleTest {
         List<SExpr> expressions = this.yale.getParser().parse(str);
         SExpr expectedValue = this.yale.getParser().parse(expected).get(0); // expected should contain only one expression
         for (int i = 0; i < expressions.size() - 1; ++i) {
-            expressions.get(i).eval(this.yale.getRootEnvironment());
+            this.yale.eval(expressions.get(i));
         }
         // check value of last expression
-        SExpr finalValue = expressions.get(expressions.size() - 1).eval(this.yale.getRootEnvironment());
+        SExpr finalValue = this.yale.eval(expressions.get(expressions.size() - 1));
         return finalValue.equals(expectedValue);
     }
     
@@ -478,8 +515,511 @@ public class YaleTest {
         assertTrue(this.validateResult("(and (eql (mod 17 4) 1) (eql (mod 4 8) 4))", "t"));
     }
     
+    @Test
+    public void test0075() throws ParseError {
+        this.yale.feed("(define apply-form (lambda (form) (form (> 2 1) 'yes 'no)))");
+        assertTrue(this.validateResult("(apply-form if)", "yes"));
+    }
+
+    @Test
+    public void test0076() throws ParseError {
+        assertTrue(this.validateResult("(let ((if (lambda (a b c) c))) (if t 1 2))", "2"));
+    }
+
+    @Test
+    public void test0077() throws ParseError {
+        this.yale.feed("(define my-quote quote)");
+        assertTrue(this.validateResult("(tree-equal (my-quote (a b)) '(a b))", "t"));
+    }
+
+    @Test
+    public void test0078() throws ParseError {
+        this.yale.feed("(define f (lambda (x) (if x 1)))");
+        boolean errorRaised = false;
+        try {
+            this.yale.feed("(f t)");
+        } catch (RuntimeException e) {
+            errorRaised = true;
+        }
+        assertTrue(errorRaised);
+    }
+
+    @Test
+    public void test0079() throws ParseError {
+        assertTrue(this.validateResult("(let ((x 3)) ((lambda (form) (form (> x 2) x 0)) if))", "3"));
+    }
+
+    @Test
+    public void test0080() throws ParseError {
+        this.yale.feed("(define counter (lambda (n) (let ((step 2)) (lambda () (assign n (+ n step)) n))))");
+        this.yale.feed("(define c (counter 1))");
+        this.yale.feed("(c)");
+        assertTrue(this.validateResult("(c)", "5"));
+    }
+
+    @Test
+    public void test0081() throws ParseError {
+        this.yale.feed("(define count-down (lambda (n) (if (eql n 0) 'done (count-down (- n 1)))))");
+        assertTrue(this.validateResult("(count-down 100000)", "done"));
+    }
+
+    @Test
+    public void test0082() throws ParseError {
+        this.yale.feed("(define evenp (lambda (x) (if (eql x 0) t (oddp (- x 1)))))");
+        this.yale.feed("(define oddp (lambda (x) (if (eql x 0) nil (evenp (- x 1)))))");
+        assertTrue(this.validateResult("(evenp 100001)", "nil"));
+    }
+
+    @Test
+    public void test0083() throws ParseError {
+        String loop = "(letrec ((loop (lambda (n acc) (let ((next (- n 1))) (if (eql n 0) acc (loop next (+ acc 2)))))))"
+                + " (loop 100000 0))";
+        assertTrue(this.validateResult(loop, "200000"));
+    }
+
+    @Test
+    public void test0084() throws ParseError {
+        assertTrue(this.validateResult("(+ 9223372036854775807 1)", "9223372036854775808"));
+    }
+
+    @Test
+    public void test0085() throws ParseError {
+        assertTrue(this.validateResult("(- -9223372036854775808 1)", "-9223372036854775809"));
+    }
+
+    @Test
+    public void test0086() throws ParseError {
+        assertTrue(this.validateResult("(* 4294967296 4294967296)", "18446744073709551616"));
+    }
+
+    @Test
+    public void test0087() throws ParseError {
+        assertTrue(this.validateResult("(and (eql (- 2.5 0.5) 2) (eql (/ 7 2) 3.5))", "t"));
+    }
+
+    @Test
+    public void test0088() throws ParseError {
+        assertTrue(this.validateResult("(and (eql (mod -7 2) -1) (> 3 2.5))", "t"));
+    }
+
+    @Test
+    public void test0089() throws ParseError {
+        this.yale.feed("(define f (lambda (a b c d) (- a b c d)))");
+        assertTrue(this.validateResult("(and (eql (f 20 1 2 3) 14) (eql (+ 1 2 3 4 5) 15))", "t"));
+    }
+
+    @Test
+    public void test0090() throws ParseError {
+        boolean errorRaised = false;
+        try {
+            this.yale.feed("(car '(a) '(b))");
+        } catch (RuntimeException e) {
+            errorRaised = e.getMessage().equals("car requires 1 parameter(s), 2 given.");
+        }
+        assertTrue(errorRaised);
+    }
+
+    @Test
+    public void test0091() throws ParseError {
+        // redefining a kernel function invalidates code compiled against it
+        this.yale.feed("(define inc (lambda (x) (+ x 1)))");
+        this.yale.feed("(inc 1)");
+        this.yale.feed("(inc 2)");
+        this.yale.feed("(assign + (lambda (a b) (* a b)))");
+        assertTrue(this.validateResult("(inc 5)", "5"));
+    }
+
+    @Test
+    public void test0092() throws ParseError {
+        this.yale.feed("(define count (lambda (n acc) (if (> n 0) (count (- n 1) (cons n acc)) acc)))");
+        this.yale.feed("(count 3 nil)");
+        assertTrue(this.validateResult("(car (count 100000 nil))", "1"));
+        assertTrue(this.validateResult("(tree-equal (count 3 nil) '(1 2 3))", "t"));
+    }
+
+    @Test
+    public void test0093() throws ParseError {
+        // a closure of the same lambda form over a different frame is not a self call
+        this.yale.feed("(define make (lambda (k) (lambda (n) (if (eql n 0) k ((make (+ k 1)) (- n 1))))))");
+        assertTrue(this.validateResult("((make 0) 5)", "5"));
+    }
+
+    @Test
+    public void test0094() throws ParseError {
+        // call sites of global functions see redefinitions immediately
+        this.yale.feed("(define g (lambda () 1))");
+        this.yale.feed("(define h (lambda () (g)))");
+        this.yale.feed("(h)");
+        this.yale.feed("(assign g (lambda () 2))");
+        assertTrue(this.validateResult("(h)", "2"));
+        this.yale.feed("(define gg 3)");
+        assertTrue(this.validateResult("(h)", "2"));
+    }
+
+    @Test
+    public void test0095() throws ParseError {
+        int folded = this.yale.getAnalyzer().getFoldCount();
+        assertTrue(this.validateResult("(+ (* 60 60 1000) (mod 7 4))", "3600003"));
+        assertTrue(this.mode == EvalMode.INTERPRET || this.yale.getAnalyzer().getFoldCount() == folded + 3);
+    }
+
+    @Test
+    public void test0096() throws ParseError {
+        // shadowed and reassigned kernel functions are not folded
+        assertTrue(this.validateResult("(let ((+ -)) (+ 5 3))", "2"));
+        this.yale.feed("(define f (lambda () (* 2 3)))");
+        assertTrue(this.validateResult("(f)", "6"));
+        this.yale.feed("(assign * +)");
+        assertTrue(this.validateResult("(f)", "5"));
+        assertTrue(this.validateResult("(* 2 3)", "5"));
+    }
+
+    @Test
+    public void test0097() throws ParseError {
+        // errors of folded calls are raised at run-time
+        this.yale.feed("(define f (lambda (x) (if x (/ 1 0) 1)))");
+        assertTrue(this.validateResult("(f nil)", "1"));
+    }
+
+    @Test
+    public void test0098() throws ParseError {
+        // non-tail recursion deeper than the Java stack allows
+        assumeTrue(this.mode == EvalMode.MACHINE);
+        this.yale.feed("(define count (lambda (n acc) (if (> n 0) (count (- n 1) (cons n acc)) acc)))");
+        this.yale.feed("(define big (count 200000 nil))");
+        this.yale.feed("(define len (lambda (l) (if (nullp l) 0 (+ 1 (len (cdr l))))))");
+        assertTrue(this.validateResult("(len big)", "200000"));
+    }
+
+    @Test
+    public void test0099() throws ParseError, IOException {
+        Path file = Files.createTempFile("yale", ".yl");
+        try {
+            Files.write(file, "(1 2) foo 'bar".getBytes(StandardCharsets.UTF_8));
+            this.yale.feed("(define data (load-data '" + file + "))");
+            assertTrue(this.validateResult("(length data)", "3"));
+            assertTrue(this.validateResult("(car (cdr (car data)))", "2"));
+            assertTrue(this.validateResult("(car (cdr (car (cdr (cdr data)))))", "bar"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void test0100() throws ParseError {
+        int folded = this.yale.getAnalyzer().getFoldCount();
+        assertTrue(this.validateResult("(+ (car '(1 2)) (car (cdr (quote (3 4)))))", "5"));
+        assertTrue(this.mode == EvalMode.INTERPRET || this.yale.getAnalyzer().getFoldCount() == folded + 4);
+    }
+
+    @Test
+    public void test0101() throws ParseError {
+        /* the standard library is loaded lazily */
+        Symbol lessOrEqual = Symbol.intern("<=");
+        assertTrue(!this.yale.getRootEnvironment().getBindings().containsKey(lessOrEqual));
+        assertTrue(this.validateResult("(<= 1 2)", "t"));
+        assertTrue(this.yale.getRootEnvironment().getBindings().containsKey(lessOrEqual));
+        boolean errorRaised = false;
+        try {
+            this.yale.feed("(define or 1)");
+        } catch (RuntimeException e) {
+            errorRaised = true;
+        }
+        assertTrue(errorRaised);
+    }
+
+    @Test
+    public void test0102() throws ParseError {
+        this.yale.loadLazily("(define lazy-a (undefined-function)) (define lazy-b 1) (define lazy-c (+ lazy-b 1))");
+        assertTrue(this.validateResult("lazy-c", "2"));
+        boolean errorRaised = false;
+        try {
+            this.yale.feed("lazy-a");
+        } catch (RuntimeException e) {
+            errorRaised = true;
+        }
+        assertTrue(errorRaised);
+    }
+
+    @Test
+    public void test0103() throws ParseError {
+        this.yale.loadLazily("(define lazy-d 1) (assign lazy-d 2) (define lazy-e lazy-d)");
+        assertTrue(this.validateResult("lazy-e", "2"));
+    }
+
+    @Test
+    public void test0104() throws ParseError {
+        this.yale.feed("(define v (make-vector 3))");
+        assertTrue(this.validateResult("(vector-length v)", "3"));
+        assertTrue(this.validateResult("(vector-ref v 2)", "nil"));
+        assertTrue(this.validateResult("(vector-set! v 1 'a)", "a"));
+        assertTrue(this.validateResult("(tree-equal (vector->list v) '(nil a nil))", "t"));
+        assertTrue(this.validateResult("(vector-ref (vector 1 (+ 1 1) 3) 1)", "2"));
+        assertTrue(this.validateResult("(tree-equal (vector->list (list->vector '(1 2 3))) '(1 2 3))", "t"));
+        assertTrue(this.validateResult("(vectorp v)", "t"));
+        assertTrue(this.validateResult("(vectorp '(1))", "nil"));
+        assertTrue(this.validateResult("(atomp v)", "t"));
+        assertTrue(this.validateResult("(eql v v)", "t"));
+        assertTrue(this.validateResult("(eql v (make-vector 3))", "nil"));
+        assertTrue(this.yale.eval(this.yale.getParser().parse("(vector 1 'a (vector))").get(0)).toString()
+                .equals("#(1 a #())"));
+    }
+
+    @Test
+    public void test0105() throws ParseError {
+        this.yale.feed("(define lv (make-long-vector 1000 7))");
+        this.yale.feed("(define fill (lambda (v i) (if (> (vector-length v) i) "
+                + "(let ((x (vector-set! v i (* i i)))) (fill v (+ i 1))) v)))");
+        this.yale.feed("(define sum (lambda (v i acc) (if (> (vector-length v) i) "
+                + "(sum v (+ i 1) (+ acc (vector-ref v i))) acc)))");
+        assertTrue(this.validateResult("(vector-ref lv 999)", "7"));
+        this.yale.feed("(fill lv 0)");
+        assertTrue(this.validateResult("(sum lv 0 0)", "332833500"));
+        assertTrue(this.validateResult("(vector-set! lv 0 -9223372036854775808)", "-9223372036854775808"));
+        assertTrue(this.validateResult("(vector-ref lv 0)", "-9223372036854775808"));
+
+        this.yale.feed("(define dv (make-double-vector 4))");
+        assertTrue(this.validateResult("(vector-ref dv 3)", "0"));
+        this.yale.feed("(vector-set! dv 0 0.1)");
+        this.yale.feed("(vector-set! dv 1 2.5)");
+        this.yale.feed("(vector-set! dv 2 3)");
+        assertTrue(this.validateResult("(+ (vector-ref dv 0) (vector-ref dv 1) (vector-ref dv 2))", "5.6"));
+        assertTrue(this.yale.eval(this.yale.getParser().parse("dv").get(0)).toString()
+                .equals("#(0.1 2.5 3.0 0.0)"));
+    }
+
+    @Test
+    public void test0106() throws ParseError {
+        StringBuilder tooLarge = new StringBuilder("1");
+        for (int i = 0; i < 400; ++i) {
+            tooLarge.append('0');
+        }
+        String[] errors = { "(vector-ref (make-vector 2) 2)", "(vector-ref (make-vector 2) -1)",
+                "(vector-ref (make-vector 2) 'a)", "(vector-ref '(1 2) 0)", "(make-vector -1)",
+                "(make-vector 1 2 3)", "(vector-set! (make-long-vector 1) 0 1.5)",
+                "(vector-set! (make-long-vector 1) 0 'a)", "(make-double-vector 1 " + tooLarge + ")" };
+        for (String error : errors) {
+            boolean errorRaised = false;
+            try {
+                this.yale.feed(error);
+            } catch (RuntimeException e) {
+                errorRaised = true;
+            }
+            assertTrue(error, errorRaised);
+        }
+    }
+
+    @Test
+    public void test0107() throws ParseError {
+        this.yale.feed("(define h (make-hash))");
+        assertTrue(this.validateResult("(hash-put! h 'a 1)", "1"));
+        this.yale.feed("(hash-put! h 'b 2)");
+        this.yale.feed("(hash-put! h 'a 3)");
+        assertTrue(this.validateResult("(hash-get h 'a)", "3"));
+        assertTrue(this.validateResult("(hash-get h 'c)", "nil"));
+        assertTrue(this.validateResult("(hash-get h 'c 0)", "0"));
+        assertTrue(this.validateResult("(hash-count h)", "2"));
+        assertTrue(this.validateResult("(reduce + 0 (hash-values h))", "5"));
+        assertTrue(this.validateResult("(length (hash-keys h))", "2"));
+        assertTrue(this.validateResult("(hash-remove! h 'a)", "t"));
+        assertTrue(this.validateResult("(hash-remove! h 'a)", "nil"));
+        assertTrue(this.validateResult("(hash-count h)", "1"));
+        assertTrue(this.validateResult("(hashp h)", "t"));
+        assertTrue(this.validateResult("(hashp '(a))", "nil"));
+    }
+
+    @Test
+    public void test0108() throws ParseError {
+        this.yale.feed("(define h (make-hash))");
+        /* numbers are compared by value, cons pairs by structure */
+        this.yale.feed("(hash-put! h 2 'two)");
+        assertTrue(this.validateResult("(hash-get h 2.0)", "two"));
+        assertTrue(this.validateResult("(hash-get h 2.000)", "two"));
+        this.yale.feed("(hash-put! h 100000000000000000000 'big)");
+        assertTrue(this.validateResult("(hash-get h 100000000000000000000.0)", "big"));
+        this.yale.feed("(hash-put! h (cons 'a (cons '(1 2) 'b)) 'tree)");
+        assertTrue(this.validateResult("(hash-get h (cons 'a (cons (cons 1 (cons 2.0 nil)) 'b)))", "tree"));
+        assertTrue(this.validateResult("(hash-get h '(a (1 2)))", "nil"));
+        /* everything else by identity */
+        this.yale.feed("(define v (vector 1))");
+        this.yale.feed("(hash-put! h v 'v)");
+        assertTrue(this.validateResult("(hash-get h v)", "v"));
+        assertTrue(this.validateResult("(hash-get h (vector 1))", "nil"));
+        this.yale.feed("(define fill (lambda (n) (if (> n 0) (let ((x (hash-put! h n (* n n)))) (fill (- n 1))) h)))");
+        this.yale.feed("(fill 10000)");
+        assertTrue(this.validateResult("(hash-count h)", "10003"));
+        assertTrue(this.validateResult("(hash-get h 9999)", "99980001"));
+    }
+
+    @Test
+    public void test0109() throws ParseError {
+        this.yale.feed("(define v1 (pvector 1 2))");
+        this.yale.feed("(define v2 (pvector-push v1 3))");
+        this.yale.feed("(define v3 (pvector-set v2 0 'x))");
+        assertTrue(this.validateResult("(pvector-length v1)", "2"));
+        assertTrue(this.validateResult("(pvector-ref v2 2)", "3"));
+        assertTrue(this.validateResult("(pvector-ref v2 0)", "1"));
+        assertTrue(this.validateResult("(pvector-ref v3 0)", "x"));
+        assertTrue(this.validateResult("(tree-equal (pvector->list (pvector-pop v3)) '(x 2))", "t"));
+        assertTrue(this.validateResult("(pvector-length (list->pvector '(1 2 3 4)))", "4"));
+        assertTrue(this.validateResult("(pvectorp v1)", "t"));
+        assertTrue(this.validateResult("(pvectorp (vector 1))", "nil"));
+        this.yale.feed("(define grow (lambda (v n) (if (> n 0) (grow (pvector-push v n) (- n 1)) v)))");
+        this.yale.feed("(define big (grow (pvector) 5000))");
+        assertTrue(this.validateResult("(pvector-length big)", "5000"));
+        assertTrue(this.validateResult("(pvector-ref big 4999)", "1"));
+        assertTrue(this.validateResult("(pvector-ref (pvector-set big 100 0) 100)", "0"));
+        assertTrue(this.validateResult("(pvector-ref big 100)", "4900"));
+    }
+
+    @Test
+    public void test0110() throws ParseError {
+        this.yale.feed("(define m1 (pmap 'a 1 2 'two))");
+        this.yale.feed("(define m2 (pmap-put m1 '(x y) 3))");
+        this.yale.feed("(define m3 (pmap-remove m2 'a))");
+        assertTrue(this.validateResult("(pmap-count m1)", "2"));
+        assertTrue(this.validateResult("(pmap-count m2)", "3"));
+        assertTrue(this.validateResult("(pmap-count m3)", "2"));
+        assertTrue(this.validateResult("(pmap-get m1 2.0)", "two"));
+        assertTrue(this.validateResult("(pmap-get m2 (cons 'x (cons 'y nil)))", "3"));
+        assertTrue(this.validateResult("(pmap-get m1 '(x y))", "nil"));
+        assertTrue(this.validateResult("(pmap-get m3 'a 0)", "0"));
+        assertTrue(this.validateResult("(pmap-get m2 'a)", "1"));
+        assertTrue(this.validateResult("(reduce + 0 (pmap-values (pmap-remove m3 2)))", "3"));
+        assertTrue(this.validateResult("(length (pmap-keys m2))", "3"));
+        assertTrue(this.validateResult("(pmapp m1)", "t"));
+        assertTrue(this.validateResult("(pmapp (make-hash))", "nil"));
+    }
+
+    @Test
+    public void test0111() throws ParseError {
+        /* long lists are stored compactly, but behave like any other list */
+        this.yale.feed("(define xs '(0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19))");
+        assertTrue(this.validateResult("(length xs)", "20"));
+        assertTrue(this.validateResult("(nth 0 xs)", "0"));
+        assertTrue(this.validateResult("(nth 17 xs)", "17"));
+        assertTrue(this.validateResult("(nth 20 xs)", "nil"));
+        assertTrue(this.validateResult("(nth 1 '(a b))", "b"));
+        assertTrue(this.validateResult("(car (nthcdr 19 xs))", "19"));
+        assertTrue(this.validateResult("(nthcdr 20 xs)", "nil"));
+        assertTrue(this.validateResult("(eql (cdr xs) (cdr xs))", "t"));
+        assertTrue(this.validateResult("(eql (nthcdr 2 xs) (cdr (cdr xs)))", "t"));
+        assertTrue(this.validateResult("(eql (cdr xs) xs)", "nil"));
+        assertTrue(this.validateResult("(reduce + 0 xs)", "190"));
+        assertTrue(this.validateResult("(car (reverse xs))", "19"));
+        assertTrue(this.validateResult("(tree-equal (vector->list (list->vector xs)) xs)", "t"));
+        assertTrue(this.validateResult("(vector-ref (list->vector (cons 'a xs)) 20)", "19"));
+    }
+
+    @Test
+    public void test0112() throws ParseError {
+        /* the list functions run in constant stack space */
+        this.yale.feed("(define xs (range 1 300000))");
+        assertTrue(this.validateResult("(length xs)", "300000"));
+        assertTrue(this.validateResult("(reduce + 0 (map (lambda (x) (* 2 x)) xs))", "90000300000"));
+        assertTrue(this.validateResult("(car (reverse xs))", "300000"));
+        assertTrue(this.validateResult("(length (append xs xs))", "600000"));
+        assertTrue(this.validateResult("(tree-equal (append xs nil) xs)", "t"));
+        this.yale.feed("(define nest (lambda (x n) (if (> n 0) (nest (cons x nil) (- n 1)) x)))");
+        assertTrue(this.validateResult("(tree-equal (nest 1 100000) (nest 1 100000))", "t"));
+        assertTrue(this.validateResult("(tree-equal (nest 1 100000) (nest 2 100000))", "nil"));
+    }
+
+    @Test
+    public void test0113() throws ParseError {
+        assertTrue(this.validateResult("(tree-equal (range 1 3.0) '(1 2 3))", "t"));
+        assertTrue(this.validateResult("(tree-equal (range 0.5 2.5) '(0.5 1.5 2.5))", "t"));
+        assertTrue(this.validateResult("(tree-equal (range 4 4) '(4))", "t"));
+        this.yale.feed("(define ys '(3 4))");
+        assertTrue(this.validateResult("(eql (cdr (cdr (append '(1 2) ys))) ys)", "t"));
+        assertTrue(this.validateResult("(eql (append nil ys) ys)", "t"));
+        assertTrue(this.validateResult("(length nil)", "0"));
+        assertTrue(this.validateResult("(tree-equal (reduce (lambda (acc x) (cons x acc)) nil '(1 2 3)) '(3 2 1))",
+                "t"));
+        assertTrue(this.validateResult("(tree-equal '(1 (2 3)) '(1 (2 3) 4))", "nil"));
+        assertTrue(this.validateResult("(tree-equal '(1 (2 3)) '(1 (2.0 3)))", "t"));
+        assertTrue(this.validateResult("(tree-equal 'a 'a)", "t"));
+        assertTrue(this.validateResult("(tree-equal '(a) 'a)", "nil"));
+        for (String expr : new String[] { "(range 3 1)", "(range 1 2.5)", "(length (cons 1 2))", "(map 1 '(1))",
+                "(reduce + 0 'a)" }) {
+            boolean errorRaised = false;
+            try {
+                this.yale.feed(expr);
+            } catch (RuntimeException e) {
+                errorRaised = true;
+            }
+            assertTrue(errorRaised);
+        }
+    }
+
+    @Test
+    public void test0114() throws ParseError {
+        // functions passed to map and reduce recurse on the machine as well
+        assumeTrue(this.mode == EvalMode.MACHINE);
+        this.yale.feed("(define big (range 1 200000))");
+        this.yale.feed("(define len (lambda (l) (if (nullp l) 0 (+ 1 (len (cdr l))))))");
+        assertTrue(this.validateResult("(tree-equal (map len (cons big (cons nil nil))) '(200000 0))", "t"));
+        assertTrue(this.validateResult("(reduce (lambda (acc l) (+ acc (len l))) 1 (cons big (cons big nil)))",
+                "400001"));
+    }
+
+    @Test
+    public void test0115() throws ParseError {
+        // writes to other globals do not deoptimize compiled code
+        assumeTrue(this.mode == EvalMode.TIERED);
+        JitCompiler jit = this.yale.getJitCompiler();
+        this.yale.feed("(define hits 0)");
+        this.yale.feed("(define f (lambda (n) (assign hits (+ hits 1)) (* n 2)))");
+        this.yale.feed("(define loop (lambda (i) (f i) (if (> i 0) (loop (- i 1)) hits)))");
+        assertTrue(this.validateResult("(loop 1000)", "1001"));
+        this.yale.feed("(define other 1)");
+        assertTrue(this.validateResult("(loop 1000)", "2002"));
+        assertTrue(jit.getDeoptimizationCount() == 0);
+        // reassigning an inlined kernel function does
+        this.yale.feed("(assign * (lambda (a b) (+ a b)))");
+        assertTrue(this.validateResult("(f 5)", "7"));
+        assertTrue(jit.getDeoptimizationCount() == 1);
+    }
+
+    @Test
+    public void test0116() throws ParseError {
+        // a lazy definition which fails to load is loaded again on the next lookup
+        final Environment root = this.yale.getRootEnvironment();
+        final Symbol flaky = Symbol.intern("flaky");
+        final int[] attempts = { 0 };
+        root.defineLazily(flaky, new LazyDefinition() {
+            @Override
+            public void load() {
+                if (++attempts[0] == 1) {
+                    throw new RuntimeException("load failed");
+                }
+                root.defineBinding(flaky, Number.valueOf(42));
+            }
+        });
+        boolean errorRaised = false;
+        try {
+            this.yale.feed("flaky");
+        } catch (RuntimeException e) {
+            errorRaised = e.getMessage().equals("load failed");
+        }
+        assertTrue(errorRaised);
+        assertTrue(this.validateResult("flaky", "42"));
+        assertTrue(attempts[0] == 2);
+    }
+
+    @Test
+    public void test0117() throws ParseError {
+        // aliases of special forms are looked up whenever they are applied
+        this.yale.feed("(define my-if if)");
+        this.yale.feed("(define f (lambda (x) (my-if x 1 2)))");
+        assertTrue(this.validateResult("(f nil)", "2"));
+        assertTrue(this.validateResult("(f t)", "1"));
+        this.yale.feed("(assign my-if (lambda (a b c) 'called))");
+        assertTrue(this.validateResult("(f nil)", "called"));
+    }
+
     @Before
     public void setUp() throws IOException, URISyntaxException, ParseError {
-        this.yale = new Yale();
+        this.yale = new Yale(this.mode);
     }
 }
@@ -7,13 +7,20 @@ package yale.parse;
 
 import static org.junit.Assert.assertTrue;
 
-import java.util.LinkedList;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.Test;
 
+import yale.eval.Cons;
+import yale.eval.SExpr;
+import yale.eval.Symbol;
 import yale.exception.ParseError;
-import yale.parse.Token.TokenType;
 
 /**
  * Testing Yale's lexer and parser.
@@ -22,74 +29,64 @@ public class ParserTest {
 
     @Test
     public void testLexer() {
-        Parser p = new Parser();
-        List<Token> tokens = p.lex("( + 12  abc (+ 3))");
+        TokenStream tokens = new TokenStream("( + 12  abc (+ 3))");
         assertTrue(tokens.size() == 9);
     }
     
     @Test
     public void testLexerIncomplete() {
-        Parser p = new Parser();
-        List<Token> tokens = p.lex("(+ 1 foo");
+        TokenStream tokens = new TokenStream("(+ 1 foo");
         assertTrue(tokens.size() == 4);
     }
     
     @Test
     public void testLexerAtom() {
-        Parser p = new Parser();
-        List<Token> tokens = p.lex(" 123.456  ");
-        assertTrue(tokens.size() == 1 && tokens.get(0).getType() == TokenType.LITERAL);
+        TokenStream tokens = new TokenStream(" 123.456  ");
+        assertTrue(tokens.size() == 1 && tokens.kind(0) == TokenStream.LITERAL);
     }
     
     @Test
-    public void testExtractTokSExprs1SE1() throws ParseError{
+    public void testSplit1SE1() throws ParseError{
         Parser p = new Parser();
-        List<Token> tokens = p.lex("(* 12 14 (- aaa qux))");
-        assertTrue(p.extractTokSExprs(tokens).size() == 1);
+        assertTrue(p.split("(* 12 14 (- aaa qux))").size() == 1);
     }
     
     @Test
-    public void testExtractTokSExprs1SE2() throws ParseError {
+    public void testSplit1SE2() throws ParseError {
         Parser p = new Parser();
-        List<Token> tokens = p.lex("qux");
-        assertTrue(p.extractTokSExprs(tokens).size() == 1);
+        assertTrue(p.split("qux").size() == 1);
     }
     
     @Test
-    public void testExtractTokSExprs1SE3() throws ParseError {
+    public void testSplit1SE3() throws ParseError {
         Parser p = new Parser();
-        List<Token> tokens = p.lex("()");
-        assertTrue(p.extractTokSExprs(tokens).size() == 1);
+        assertTrue(p.split("()").size() == 1);
     }
     
     @Test
-    public void testExtractTokSExprs2SE() throws ParseError {
+    public void testSplit2SE() throws ParseError {
         Parser p = new Parser();
-        List<Token> tokens = p.lex("abc xyz");
-        assertTrue(p.extractTokSExprs(tokens).size() == 2);
+        assertTrue(p.split("abc xyz").size() == 2);
     }
     
     @Test
-    public void testExtractTokSExprs3SE() throws ParseError {
+    public void testSplit3SE() throws ParseError {
         Parser p = new Parser();
-        List<Token> tokens = p.lex("(*) q (bar qux)");
-        assertTrue(p.extractTokSExprs(tokens).size() == 3);
+        assertTrue(p.split("(*) q (bar qux)").size() == 3);
     }
     
     @Test
-    public void testExtractTokSExprsEmpty() throws ParseError {
+    public void testSplitEmpty() throws ParseError {
         Parser p = new Parser();
-        List<Token> tokens = p.lex("   ");
-        assertTrue(p.extractTokSExprs(tokens).size() == 0);
+        assertTrue(p.split("   ").size() == 0);
     }
 
     @Test
-    public void testExtractTokSExprsMalformedSExpr() {
+    public void testSplitMalformedSExpr() {
         Parser p = new Parser();
-        List<Token> tokens = p.lex(")a(");
         boolean parseErrorRaised = false;
         try {
-            p.extractTokSExprs(tokens);
+            p.split(")a(");
         } catch (ParseError e) {
             parseErrorRaised = true;
         }
@@ -97,31 +94,183 @@ public class ParserTest {
     }
     
     @Test
-    public void testExtractTokSExprQuote1() throws ParseError {
+    public void testSplitQuote1() throws ParseError {
         Parser p = new Parser();
-        List<Token> tokens = p.lex("'xy");
-        LinkedList<LinkedList<Token>> tokSexprs = p.extractTokSExprs(tokens);
-        assertTrue(tokSexprs.size() == 1);
-        assertTrue(tokSexprs.get(0).get(0).getType() == TokenType.QUOTE);
+        List<UnparsedForm> forms = p.split("'xy");
+        assertTrue(forms.size() == 1);
+        assertTrue(forms.get(0).parse().toString().equals("(quote xy)"));
     }
     
     @Test
-    public void testExtractTokSExprQuote2() throws ParseError {
+    public void testSplitQuote2() throws ParseError {
         Parser p = new Parser();
-        List<Token> tokens = p.lex("'(a b) 3 'q");
-        assertTrue(p.extractTokSExprs(tokens).size() == 3);
+        assertTrue(p.split("'(a b) 3 'q").size() == 3);
     }
     
     @Test
-    public void testExtractTokSExprMalformedQuote() {
+    public void testSplitMalformedQuote() {
+        Parser p = new Parser();
+        boolean parseErrorRaised = false;
+        try {
+            p.split("'");
+        } catch (ParseError e) {
+            parseErrorRaised = true;
+        }
+        assertTrue(parseErrorRaised);
+    }
+
+    @Test
+    public void testSymbolsInterned() throws ParseError {
+        Parser p = new Parser();
+        List<SExpr> exprs = p.parse("(qux nil) qux");
+        assertTrue(exprs.get(0).car() == exprs.get(1));
+        assertTrue(exprs.get(0).cdr().car() == Symbol.NIL);
+        assertTrue(Symbol.intern("qux") == exprs.get(1));
+    }
+
+    @Test
+    public void testTokenStream() {
+        TokenStream tokens = new TokenStream(" (ab 'c)d");
+        assertTrue(tokens.size() == 6);
+        assertTrue(tokens.kind(0) == TokenStream.PARENS_OPEN && tokens.start(0) == 1);
+        assertTrue(tokens.kind(1) == TokenStream.LITERAL && tokens.start(1) == 2 && tokens.end(1) == 4);
+        assertTrue(tokens.kind(2) == TokenStream.QUOTE);
+        assertTrue(tokens.kind(5) == TokenStream.LITERAL && tokens.start(5) == 8 && tokens.end(5) == 9);
+    }
+
+    @Test
+    public void testParseNumbers() throws ParseError {
         Parser p = new Parser();
-        List<Token> tokens = p.lex("'");
+        List<SExpr> exprs = p.parse("-12 007 - 1.50 12345678901234567890 1-");
+        assertTrue(exprs.get(0).equals(yale.eval.Number.valueOf(-12)));
+        assertTrue(exprs.get(1).equals(yale.eval.Number.valueOf(7)));
+        assertTrue(exprs.get(2) == Symbol.intern("-"));
+        assertTrue(exprs.get(3).equals(yale.eval.Number.valueOf(new java.math.BigDecimal("1.5"))));
+        assertTrue(exprs.get(4).toString().equals("12345678901234567890"));
+        assertTrue(exprs.get(5) == Symbol.intern("1-"));
+    }
+
+    @Test
+    public void testSExprReader() throws ParseError, IOException {
+        SExprReader reader = new SExprReader(new StringReader("(a\n 'b)  12\n) c"));
+        SExpr first = reader.read();
+        assertTrue(first.car() == Symbol.intern("a"));
+        assertTrue(first.cdr().car().car() == Symbol.intern("quote"));
+        assertTrue(reader.read().equals(yale.eval.Number.valueOf(12)));
+        boolean parseErrorRaised = false;
+        try {
+            reader.read();
+        } catch (ParseError e) {
+            parseErrorRaised = true;
+        }
+        assertTrue(parseErrorRaised);
+        assertTrue(reader.read() == Symbol.intern("c"));
+        assertTrue(reader.read() == null);
+    }
+
+    @Test
+    public void testSExprReaderIncomplete() throws IOException {
+        SExprReader reader = new SExprReader(new StringReader("(a (b)"));
         boolean parseErrorRaised = false;
         try {
-            p.extractTokSExprs(tokens);
+            reader.read();
         } catch (ParseError e) {
             parseErrorRaised = true;
         }
         assertTrue(parseErrorRaised);
     }
+
+    @Test
+    public void testParseFromFile() throws ParseError, IOException {
+        Path file = Files.createTempFile("yale", ".yl");
+        try {
+            Files.write(file, "(gr\u00f6\u00dfe 42)\n'\u00e9t\u00e9 -7".getBytes(StandardCharsets.UTF_8));
+            List<SExpr> exprs = new Parser().parseFromFile(file.toString());
+            assertTrue(exprs.size() == 3);
+            assertTrue(exprs.get(0).car() == Symbol.intern("gr\u00f6\u00dfe"));
+            assertTrue(exprs.get(1).cdr().car() == Symbol.intern("\u00e9t\u00e9"));
+            assertTrue(exprs.get(2).equals(yale.eval.Number.valueOf(-7)));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testNonAsciiWhitespace() throws ParseError, IOException {
+        /* no-break space, line separator and ideographic space are not whitespace */
+        String source = "(a\u00a0b c\u2028d)\u3000 e";
+        Path file = Files.createTempFile("yale", ".yl");
+        try {
+            Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+            MappedSource mapped = MappedSource.map(file);
+            TokenStream chars = new TokenStream(source);
+            TokenStream bytes = new TokenStream(mapped);
+            assertTrue(chars.size() == 6 && bytes.size() == chars.size());
+            for (int i = 0; i < chars.size(); ++i) {
+                assertTrue(chars.kind(i) == bytes.kind(i));
+                assertTrue(source.substring(chars.start(i), chars.end(i))
+                        .equals(mapped.subSequence(bytes.start(i), bytes.end(i)).toString()));
+            }
+            String expected = new Parser().parse(source).toString();
+            assertTrue(expected.equals(new Parser().parseFromFile(file.toString()).toString()));
+            List<SExpr> read = new ArrayList<SExpr>();
+            SExprReader reader = new SExprReader(new StringReader(source));
+            for (SExpr expr = reader.read(); expr != null; expr = reader.read()) {
+                read.add(expr);
+            }
+            assertTrue(read.size() == 3 && expected.equals(read.toString()));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testParseParallel() throws ParseError {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50000; ++i) {
+            sb.append("(define x").append(i).append(" '(").append(i).append(" (a b) c)) 'q ");
+        }
+        List<SExpr> sequential = new Parser(false).parse(sb);
+        List<SExpr> parallel = new Parser(true).parse(sb);
+        assertTrue(sequential.size() == 100000 && parallel.size() == sequential.size());
+        for (int i = 0; i < sequential.size(); ++i) {
+            assertTrue(sequential.get(i).toString().equals(parallel.get(i).toString()));
+        }
+        boolean parseErrorRaised = false;
+        try {
+            new Parser(true).parse(sb.append(")"));
+        } catch (ParseError e) {
+            parseErrorRaised = true;
+        }
+        assertTrue(parseErrorRaised);
+    }
+
+    @Test
+    public void testQuotedDataConstant() throws ParseError, IOException {
+        for (SExpr expr : new SExpr[] { new Parser().parse("(f '(a (b)) (c))").get(0),
+                new SExprReader(new StringReader("(f '(a (b)) (c))")).read() }) {
+            Cons quoted = (Cons) expr.cdr().car().cdr().car();
+            assertTrue(quoted.isConstant() && ((Cons) quoted.cdr().car()).isConstant());
+            assertTrue(!((Cons) expr).isConstant() && !((Cons) expr.cdr().cdr().car()).isConstant());
+        }
+    }
+
+    @Test
+    public void testSplit() throws ParseError {
+        Parser p = new Parser();
+        List<UnparsedForm> forms = p.split("(define x '(1 2)) 'y (define 3 4) (+ 1 2) (define z)");
+        assertTrue(forms.size() == 5);
+        assertTrue(forms.get(0).getDefinedSymbol() == Symbol.intern("x"));
+        assertTrue(forms.get(1).getDefinedSymbol() == null);
+        assertTrue(forms.get(2).getDefinedSymbol() == null);
+        assertTrue(forms.get(3).getDefinedSymbol() == null);
+        assertTrue(forms.get(4).getDefinedSymbol() == null);
+        assertTrue(forms.get(0).parse().toString().equals("(define x (quote (1 2)))"));
+        assertTrue(forms.get(1).parse().toString().equals("(quote y)"));
+    }
+
+    @Test(expected = ParseError.class)
+    public void testSplitMalformed() throws ParseError {
+        new Parser().split("(define x 1) (define y");
+    }
 }